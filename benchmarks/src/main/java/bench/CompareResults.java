@@ -0,0 +1,81 @@
+package bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Diffs two JMH result files written with -rf json, matching benchmarks by name and parameters.
+ * A change is flagged when the scores differ by more than their combined error margins.
+ * Run it with {@code java -cp benchmarks/target/benchmarks.jar bench.CompareResults <baseline.json> <current.json>}.
+ */
+public class CompareResults {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java -cp benchmarks.jar bench.CompareResults <baseline.json> <current.json>");
+            System.exit(1);
+        }
+        Map<String, JsonNode> baseline = read(args[0]);
+        Map<String, JsonNode> current = read(args[1]);
+        System.out.printf("%-90s %14s %14s %9s%n", "benchmark", "baseline", "current", "change");
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode before = baseline.get(entry.getKey());
+            JsonNode after = entry.getValue().get("primaryMetric");
+            String unit = after.get("scoreUnit").asText();
+            if (before == null) {
+                System.out.printf("%-90s %14s %14.3f %9s  %s%n", entry.getKey(), "-", after.get("score").asDouble(), "new", unit);
+                continue;
+            }
+            before = before.get("primaryMetric");
+            double old = before.get("score").asDouble();
+            double now = after.get("score").asDouble();
+            double margin = errorOf(before) + errorOf(after);
+            String flag = (Math.abs(now - old) > margin) ? "  *" : "";
+            System.out.printf("%-90s %14.3f %14.3f %+8.1f%%  %s%s%n", entry.getKey(), old, now,
+                    100 * (now - old) / old, unit, flag);
+        }
+        for (String key : baseline.keySet()) {
+            if (!current.containsKey(key)) {
+                System.out.printf("%-90s %14.3f %14s %9s%n", key,
+                        baseline.get(key).get("primaryMetric").get("score").asDouble(), "-", "removed");
+            }
+        }
+        System.out.println("* difference larger than the combined error margins");
+    }
+
+    /**
+     * The results of a file, keyed by benchmark name and parameters, e.g. "spl.lae.EngineBenchmark.run(size=128,threads=4)".
+     */
+    private static Map<String, JsonNode> read(String path) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(new File(path))) {
+            StringBuilder key = new StringBuilder(result.get("benchmark").asText());
+            JsonNode params = result.get("params");
+            if (params != null) {
+                key.append('(');
+                Iterator<Map.Entry<String, JsonNode>> fields = params.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> param = fields.next();
+                    key.append(param.getKey()).append('=').append(param.getValue().asText());
+                    if (fields.hasNext()) {
+                        key.append(',');
+                    }
+                }
+                key.append(')');
+            }
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+
+    private static double errorOf(JsonNode metric) {
+        JsonNode error = metric.get("scoreError");
+        return (error == null || !error.isNumber()) ? 0 : error.asDouble(); // "NaN" with too few iterations
+    }
+}
@@ -0,0 +1,102 @@
+package memory;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Every benchmark thread multiplies its own row by one right matrix shared by all threads, the pattern of
+ * the row-wise multiply, where all workers read the same right rows at once. Every option runs the same
+ * loop into the same buffer; only the step taken before reading each right row differs: RW_LOCK takes a
+ * ReentrantReadWriteLock read lock (what SharedVector used to take, a CAS on a shared line per row),
+ * STAMPED takes a StampedLock optimistic read and validates it after the row, and FROZEN takes nothing,
+ * as for a frozen operand (what the engine does). Run with -t 1,2,4,... to see the read-lock traffic grow
+ * with the cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@Threads(4)
+public class OperandLockingBenchmark {
+
+    public enum Locking {
+        RW_LOCK, STAMPED, FROZEN
+    }
+
+    @Param({"RW_LOCK", "STAMPED", "FROZEN"})
+    public Locking locking;
+
+    @Param({"16", "256"})
+    public int size; // square right matrix; small sizes make the locking a larger share of the work
+
+    private double[][] data;
+    private ReentrantReadWriteLock[] rowLocks;
+    private StampedLock[] rowStamps;
+
+    @State(Scope.Thread)
+    public static class Row {
+        double[] initial;
+        double[] values;
+        double[] result;
+
+        @Setup(Level.Trial)
+        public void setUp(OperandLockingBenchmark shared) {
+            initial = new double[shared.size];
+            values = new double[shared.size];
+            result = new double[shared.size];
+            Arrays.fill(initial, 0.5);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        data = new double[size][size];
+        rowLocks = new ReentrantReadWriteLock[size];
+        rowStamps = new StampedLock[size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                data[i][j] = random.nextDouble();
+            }
+            rowLocks[i] = new ReentrantReadWriteLock();
+            rowStamps[i] = new StampedLock();
+        }
+    }
+
+    @Benchmark
+    public double[] rowTimesMatrix(Row row) {
+        VectorKernels kernels = Kernels.get();
+        System.arraycopy(row.initial, 0, row.values, 0, size);
+        Arrays.fill(row.result, 0);
+        for (int r = 0; r < size; r++) {
+            switch (locking) {
+                case RW_LOCK:
+                    rowLocks[r].readLock().lock();
+                    try {
+                        kernels.axpy(row.values[r], data[r], 0, row.result, 0, size);
+                    }
+                    finally {
+                        rowLocks[r].readLock().unlock();
+                    }
+                    break;
+                case STAMPED:
+                    long stamp = rowStamps[r].tryOptimisticRead();
+                    kernels.axpy(row.values[r], data[r], 0, row.result, 0, size);
+                    if (!rowStamps[r].validate(stamp)) {
+                        throw new IllegalStateException("nothing writes the right operand, yet row " + r + " changed");
+                    }
+                    break;
+                default:
+                    kernels.axpy(row.values[r], data[r], 0, row.result, 0, size);
+            }
+        }
+        return row.result;
+    }
+}
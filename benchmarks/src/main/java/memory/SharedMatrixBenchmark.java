@@ -0,0 +1,63 @@
+package memory;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading a matrix into a SharedMatrix and reading it back row-major, for square, tall and wide shapes,
+ * both storages and both orientations. readRowMajor() of a column-major matrix is the transposing copy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SharedMatrixBenchmark {
+
+    @Param({"256x256", "4096x16", "16x4096"})
+    public String shape;
+
+    @Param({"PER_VECTOR", "CONTIGUOUS"})
+    public MatrixStorage storage;
+
+    @Param({"ROW_MAJOR", "COLUMN_MAJOR"})
+    public VectorOrientation orientation;
+
+    private double[][] data;
+    private SharedMatrix matrix;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] dims = shape.split("x");
+        int rows = Integer.parseInt(dims[0]);
+        int cols = Integer.parseInt(dims[1]);
+        Random random = new Random(42);
+        data = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                data[i][j] = random.nextDouble();
+            }
+        }
+        matrix = new SharedMatrix(storage);
+        load();
+    }
+
+    @Benchmark
+    public SharedMatrix load() {
+        if (orientation == VectorOrientation.ROW_MAJOR) {
+            matrix.loadRowMajor(data);
+        }
+        else {
+            matrix.loadColumnMajor(data);
+        }
+        return matrix;
+    }
+
+    @Benchmark
+    public double[][] readRowMajor() {
+        return matrix.readRowMajor();
+    }
+}
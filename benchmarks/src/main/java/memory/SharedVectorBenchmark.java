@@ -0,0 +1,136 @@
+package memory;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The SharedVector kernels for each kernel set, against a reference that reads every element through get()
+ * under its own ReentrantReadWriteLock read lock, taken and released per element as the hot loops used to.
+ * get() itself no longer locks, so the reference takes the locks explicitly.
+ * vecMatMul multiplies by a size x size matrix, so it is the kernel whose cost grows quadratically.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SharedVectorBenchmark {
+
+    @Param({"64", "512", "2048"})
+    public int size;
+
+    @Param({"SCALAR", "SIMD"})
+    public KernelSet kernels;
+
+    private double[] row;
+    private SharedVector rowVector;
+    private SharedVector target;
+    private SharedVector other;
+    private SharedVector column;
+    private SharedMatrix matrix;
+    private double[] sum;
+    private double[] product;
+    private ReentrantReadWriteLock rowLock;
+    private ReentrantReadWriteLock targetLock;
+    private ReentrantReadWriteLock otherLock;
+    private ReentrantReadWriteLock columnLock;
+    private ReentrantReadWriteLock[] matrixLocks;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (kernels == KernelSet.SIMD && !Kernels.isSimdAvailable()) {
+            throw new IllegalStateException("SIMD kernels need --add-modules jdk.incubator.vector");
+        }
+        Kernels.select(kernels);
+        Random random = new Random(42);
+        row = randomVector(random, size);
+        rowVector = new SharedVector(row.clone(), VectorOrientation.ROW_MAJOR);
+        target = new SharedVector(row.clone(), VectorOrientation.ROW_MAJOR);
+        other = new SharedVector(randomVector(random, size), VectorOrientation.ROW_MAJOR);
+        column = new SharedVector(randomVector(random, size), VectorOrientation.COLUMN_MAJOR);
+        double[][] data = new double[size][];
+        matrixLocks = new ReentrantReadWriteLock[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = randomVector(random, size);
+            matrixLocks[i] = new ReentrantReadWriteLock();
+        }
+        matrix = new SharedMatrix(data);
+        sum = new double[size];
+        product = new double[size];
+        rowLock = new ReentrantReadWriteLock();
+        targetLock = new ReentrantReadWriteLock();
+        otherLock = new ReentrantReadWriteLock();
+        columnLock = new ReentrantReadWriteLock();
+    }
+
+    @Benchmark
+    public void add() {
+        target.add(other); // the values drift, but the cost of an add does not depend on them
+    }
+
+    @Benchmark
+    public double[] addPerElement() {
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] = lockedGet(targetLock, target, i) + lockedGet(otherLock, other, i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double dot() {
+        return target.dot(column);
+    }
+
+    @Benchmark
+    public double dotPerElement() {
+        double result = 0.0;
+        for (int i = 0; i < target.length(); i++) {
+            result += lockedGet(targetLock, target, i) * lockedGet(columnLock, column, i);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public void vecMatMul(Blackhole blackhole) {
+        SharedVector v = new SharedVector(row, VectorOrientation.ROW_MAJOR); // vecMatMul replaces the array
+        v.vecMatMul(matrix);
+        blackhole.consume(v);
+    }
+
+    @Benchmark
+    public double[] vecMatMulPerElement() {
+        Arrays.fill(product, 0);
+        for (int r = 0; r < size; r++) {
+            double scalar = lockedGet(rowLock, rowVector, r);
+            SharedVector matrixRow = matrix.get(r);
+            for (int c = 0; c < size; c++) {
+                product[c] += scalar * lockedGet(matrixLocks[r], matrixRow, c);
+            }
+        }
+        return product;
+    }
+
+    private static double lockedGet(ReentrantReadWriteLock lock, SharedVector vector, int index) {
+        lock.readLock().lock();
+        try {
+            return vector.get(index);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static double[] randomVector(Random random, int length) {
+        double[] vector = new double[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = random.nextDouble() * 2 - 1;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,50 @@
+package scheduling;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raw dispatch rate of HANDOFF submit() with empty tasks: every submit takes an idle worker and every
+ * finished task files its worker as idle again, so the score is the idle set's throughput. With one
+ * submitter it shows the cost per dispatch; with several (submitContended) they race each other and the
+ * returning workers for the idle set. The score should grow with workers until submitters are the limit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class DispatchContentionBenchmark {
+
+    private static final Runnable EMPTY = () -> {};
+
+    @Param({"1", "2", "4", "8"})
+    public int workers;
+
+    private TiredExecutor executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executor = new TiredExecutor(workers, SchedulingMode.HANDOFF);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        executor.awaitAll();
+        executor.shutdown();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void submit() {
+        executor.submit(EMPTY);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void submitContended() {
+        executor.submit(EMPTY);
+    }
+}
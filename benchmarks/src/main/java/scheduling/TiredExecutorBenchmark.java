@@ -0,0 +1,64 @@
+package scheduling;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of a batch through submitAll(): dispatching it and waiting for the last task.
+ * With work = 0 the tasks are empty and the score is pure dispatch overhead; with more work per task
+ * the scores over threads form the executor's scaling curve. Pass -p threads=1,2,...,N for other core counts.
+ * VIRTUAL against HANDOFF over work is the virtual-thread mode's trade: a thread start per task and no
+ * blocked submitter, against a parked platform worker per thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class TiredExecutorBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"HANDOFF", "WORK_STEALING", "VIRTUAL"})
+    public SchedulingMode mode;
+
+    @Param({"1", "64", "4096"})
+    public int tasks;
+
+    @Param({"0", "1000", "100000"})
+    public int work; // Blackhole.consumeCPU() tokens per task
+
+    private TiredExecutor executor;
+    private List<Runnable> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executor = new TiredExecutor(threads, mode);
+        batch = new ArrayList<>(tasks);
+        long tokens = work;
+        for (int i = 0; i < tasks; i++) {
+            batch.add(() -> Blackhole.consumeCPU(tokens));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public void submitAll() {
+        executor.submitAll(batch);
+    }
+
+    @Benchmark
+    public void submitAllChunked() {
+        executor.submitAll(batch, work + 1.0);
+    }
+}
@@ -0,0 +1,114 @@
+package spl.lae;
+
+import org.openjdk.jmh.annotations.*;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end LinearAlgebraEngine.run() on a few operation mixes of size x size matrices.
+ * run() mutates the tree and shuts the engine down, so both are rebuilt before every call, outside the
+ * measurement. Over threads the scores are the engine's scaling curve; pass -p threads=1,2,...,N
+ * for other core counts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class EngineBenchmark {
+
+    /**
+     * ADD: A + B. MULTIPLY: A * B. MIXED: -(A * B) + T(C). CHAIN: A * B * C * D.
+     * WIDE: the sum of four independent products, which only parallelTree evaluates side by side.
+     */
+    public enum Mix { ADD, MULTIPLY, MIXED, CHAIN, WIDE }
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"128", "512"})
+    public int size;
+
+    @Param({"ADD", "MULTIPLY", "MIXED", "CHAIN", "WIDE"})
+    public Mix mix;
+
+    @Param({"ROWS", "TILED"})
+    public MultiplyMode multiplyMode;
+
+    @Param({"false", "true"})
+    public boolean parallelTree;
+
+    private double[][][] leaves;
+    private ComputationNode root;
+    private LinearAlgebraEngine engine;
+
+    @Setup(Level.Trial)
+    public void createLeaves() {
+        Random random = new Random(42);
+        leaves = new double[8][size][size];
+        for (double[][] leaf : leaves) {
+            for (double[] row : leaf) {
+                for (int j = 0; j < size; j++) {
+                    row[j] = random.nextDouble() * 2 - 1;
+                }
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createRun() {
+        root = tree();
+        engine = new LinearAlgebraEngine(threads, new EngineConfig()
+                .setMultiplyMode(multiplyMode).setParallelTree(parallelTree));
+    }
+
+    @Benchmark
+    public ComputationNode run() {
+        return engine.run(root);
+    }
+
+    private ComputationNode tree() {
+        switch (mix) {
+            case ADD:
+                return op(ComputationNodeType.ADD, leaf(0), leaf(1));
+            case MULTIPLY:
+                return op(ComputationNodeType.MULTIPLY, leaf(0), leaf(1));
+            case MIXED:
+                return op(ComputationNodeType.ADD,
+                        op(ComputationNodeType.NEGATE, op(ComputationNodeType.MULTIPLY, leaf(0), leaf(1))),
+                        op(ComputationNodeType.TRANSPOSE, leaf(2)));
+            case CHAIN:
+                return op(ComputationNodeType.MULTIPLY, leaf(0), leaf(1), leaf(2), leaf(3));
+            case WIDE: {
+                ComputationNode[] products = new ComputationNode[4];
+                for (int i = 0; i < 4; i++) {
+                    products[i] = op(ComputationNodeType.MULTIPLY, leaf(2 * i), leaf(2 * i + 1));
+                }
+                return op(ComputationNodeType.ADD, products);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown mix: " + mix);
+        }
+    }
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(List.of(children)));
+    }
+
+    /**
+     * A copy of leaf i; the engine computes in place.
+     */
+    private ComputationNode leaf(int i) {
+        double[][] copy = new double[size][];
+        for (int r = 0; r < size; r++) {
+            copy[r] = leaves[i][r].clone();
+        }
+        return new ComputationNode(copy);
+    }
+}
@@ -0,0 +1,133 @@
+package memory;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Recycles the double[] rows of intermediate results. Buffers are kept per size class, one class per
+ * exact length, so a recycled row can be handed out as a row of a result matrix without a copy.
+ * Only buffers that this pool handed out can be released to it; release() ignores any other array,
+ * so input matrices that callers still hold are never reused. Lent buffers are tracked weakly, so rows that
+ * are never released (e.g. the rows of the final result, handed to the caller) stay collectable.
+ * The counters tell how many buffers had to be allocated and how many were served from the pool.
+ */
+public final class BufferPool {
+
+    private final long maxRetainedBytes;
+    private final Map<Integer, ArrayDeque<double[]>> free = new HashMap<>();
+    private final Set<double[]> lent = Collections.newSetFromMap(new WeakHashMap<>()); // arrays hash by identity
+    private long retainedBytes = 0;
+    private long allocations = 0;
+    private long allocatedBytes = 0;
+    private long reuses = 0;
+    private long releases = 0;
+    private long dropped = 0;
+
+    /**
+     * A pool that keeps at most maxRetainedBytes of released buffers; beyond that they are left to the GC.
+     * With 0 every buffer is allocated, as without a pool, but the counters still work.
+     */
+    public BufferPool(long maxRetainedBytes) {
+        if (maxRetainedBytes < 0) {
+            throw new IllegalArgumentException("Retained bytes must be positive (or 0)");
+        }
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * A zero-filled buffer of exactly length elements.
+     */
+    public double[] acquire(int length) {
+        double[] buffer;
+        synchronized (this) {
+            ArrayDeque<double[]> sizeClass = free.get(length);
+            buffer = (sizeClass == null) ? null : sizeClass.poll();
+            if (buffer != null) {
+                retainedBytes -= bytes(buffer);
+                reuses++;
+            }
+            else {
+                allocations++;
+                allocatedBytes += (long) length * Double.BYTES;
+            }
+        }
+        if (buffer == null) {
+            buffer = new double[length];
+        }
+        else {
+            Arrays.fill(buffer, 0.0); // outside the lock
+        }
+        synchronized (this) {
+            lent.add(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer from acquire() to the pool. The caller must not use it afterwards.
+     * Returns false, and does nothing, for an array this pool did not hand out (or that was already released).
+     */
+    public synchronized boolean release(double[] buffer) {
+        if (buffer == null || !lent.remove(buffer)) {
+            return false;
+        }
+        releases++;
+        if (retainedBytes + bytes(buffer) > maxRetainedBytes) {
+            dropped++;
+            return true;
+        }
+        free.computeIfAbsent(buffer.length, length -> new ArrayDeque<>()).push(buffer);
+        retainedBytes += bytes(buffer);
+        return true;
+    }
+
+    /**
+     * Releases every row of matrix that came from this pool.
+     */
+    public void releaseRows(double[][] matrix) {
+        for (double[] row : matrix) {
+            release(row);
+        }
+    }
+
+    /** Buffers that had to be allocated because no buffer of their size was free. */
+    public synchronized long getAllocations() {
+        return allocations;
+    }
+
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /** Buffers served from the pool instead of being allocated. */
+    public synchronized long getReuses() {
+        return reuses;
+    }
+
+    public synchronized long getReleases() {
+        return releases;
+    }
+
+    /** Released buffers that were left to the GC because the pool was full. */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public synchronized long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    public synchronized String getReport() {
+        return String.format("Buffers: %d allocated (%d bytes), %d reused, %d released, %d dropped, %d bytes retained",
+                allocations, allocatedBytes, reuses, releases, dropped, retainedBytes);
+    }
+
+    private static long bytes(double[] buffer) {
+        return (long) buffer.length * Double.BYTES;
+    }
+}
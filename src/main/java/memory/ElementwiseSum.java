@@ -0,0 +1,165 @@
+package memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A fused element-wise expression: a sum of signed terms, each an input matrix (read directly or
+ * transposed) or a nested sum. Any tree of additions, subtractions, negations and transposes has this
+ * form once negations are folded into the signs and transposes into the inputs' indexing.
+ * createRowTasks() evaluates it one result row at a time, so every input is read once and the result
+ * written once, whatever the number of operations. Terms are added in the order they were given, and a
+ * nested sum is completed in a row buffer before it is added, so the rounding matches evaluating the
+ * operations one by one.
+ */
+public final class ElementwiseSum {
+
+    private final List<Term> terms = new ArrayList<>();
+    private int depth = 0; // nesting below this sum, i.e. the row buffers a task needs
+
+    private abstract static class Term {
+        final double sign;
+
+        Term(double sign) {
+            this.sign = sign;
+        }
+    }
+
+    private static final class DenseTerm extends Term {
+        final double[][] stored;
+        final boolean transposed; // row i of the term is column i of stored
+
+        DenseTerm(double[][] stored, boolean transposed, double sign) {
+            super(sign);
+            this.stored = stored;
+            this.transposed = transposed;
+        }
+    }
+
+    private static final class SparseTerm extends Term {
+        final SparseMatrix rows;
+
+        SparseTerm(SparseMatrix rows, double sign) {
+            super(sign);
+            this.rows = rows;
+        }
+    }
+
+    private static final class SumTerm extends Term {
+        final ElementwiseSum sum;
+
+        SumTerm(ElementwiseSum sum) {
+            super(1.0);
+            this.sum = sum;
+        }
+    }
+
+    /**
+     * Adds sign * stored, or sign * T(stored) when transposed.
+     */
+    public ElementwiseSum add(double[][] stored, boolean transposed, double sign) {
+        terms.add(new DenseTerm(stored, transposed, sign));
+        return this;
+    }
+
+    /**
+     * Adds sign * stored, or sign * T(stored) when transposed (converted to CSR here, in O(nnz)).
+     */
+    public ElementwiseSum add(SparseMatrix stored, boolean transposed, double sign) {
+        terms.add(new SparseTerm(transposed ? stored.transpose() : stored, sign));
+        return this;
+    }
+
+    /**
+     * Adds a nested sum, whose signs already include any negation applied to it. A nested sum that is
+     * the first term, or has a single term, is inlined, which is the same arithmetic.
+     */
+    public ElementwiseSum add(ElementwiseSum sum) {
+        if (terms.isEmpty() || sum.terms.size() == 1) {
+            terms.addAll(sum.terms);
+            depth = Math.max(depth, sum.depth);
+        }
+        else {
+            terms.add(new SumTerm(sum));
+            depth = Math.max(depth, sum.depth + 1);
+        }
+        return this;
+    }
+
+    public int termCount() {
+        return terms.size();
+    }
+
+    /**
+     * One task per row of result, which must be allocated with rows of the expression's width.
+     */
+    public List<Runnable> createRowTasks(double[][] result) {
+        VectorKernels kernels = Kernels.get();
+        List<Runnable> tasks = new ArrayList<>(result.length);
+        for (int i = 0; i < result.length; i++) {
+            int row = i;
+            tasks.add(() -> {
+                double[][] buffers = (depth > 0) ? new double[depth][result[row].length] : null;
+                evaluateRow(row, result[row], buffers, 0, kernels);
+            });
+        }
+        return tasks;
+    }
+
+    private void evaluateRow(int row, double[] dest, double[][] buffers, int level, VectorKernels kernels) {
+        for (int t = 0; t < terms.size(); t++) {
+            Term term = terms.get(t);
+            if (t == 0) {
+                assign(term, row, dest);
+            }
+            else if (term instanceof SumTerm) {
+                double[] buffer = buffers[level];
+                ((SumTerm) term).sum.evaluateRow(row, buffer, buffers, level + 1, kernels);
+                kernels.add(dest, 0, buffer, 0, dest.length);
+            }
+            else {
+                accumulate(term, row, dest, kernels);
+            }
+        }
+    }
+
+    /**
+     * dest = row of the first term; never a nested sum, since those are inlined.
+     */
+    private static void assign(Term term, int row, double[] dest) {
+        if (term instanceof SparseTerm) {
+            Arrays.fill(dest, 0.0);
+            ((SparseTerm) term).rows.scatterRow(row, term.sign, dest);
+            return;
+        }
+        DenseTerm dense = (DenseTerm) term;
+        if (dense.transposed) {
+            for (int j = 0; j < dest.length; j++) {
+                dest[j] = term.sign * dense.stored[j][row];
+            }
+        }
+        else {
+            double[] source = dense.stored[row];
+            for (int j = 0; j < dest.length; j++) {
+                dest[j] = term.sign * source[j];
+            }
+        }
+    }
+
+    private static void accumulate(Term term, int row, double[] dest, VectorKernels kernels) {
+        if (term instanceof SparseTerm) {
+            ((SparseTerm) term).rows.scatterRow(row, term.sign, dest);
+            return;
+        }
+        DenseTerm dense = (DenseTerm) term;
+        if (dense.transposed) {
+            for (int j = 0; j < dest.length; j++) {
+                dest[j] += term.sign * dense.stored[j][row];
+            }
+        }
+        else {
+            kernels.axpy(term.sign, dense.stored[row], 0, dest, 0, dest.length);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package memory;
+/**
+ * The implementations available for the inner loops of SharedVector.
+ * SCALAR uses plain Java loops; SIMD uses the incubating JDK Vector API
+ * (the JVM must be started with --add-modules jdk.incubator.vector).
+ * AUTO picks SIMD when the module is present and SCALAR otherwise.
+ */
+public enum KernelSet {
+    AUTO,
+    SCALAR,
+    SIMD
+}
@@ -0,0 +1,63 @@
+package memory;
+
+/**
+ * Chooses the kernel set used by every SharedVector operation in this JVM.
+ * Until select() is called, AUTO is in effect.
+ */
+public final class Kernels {
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private static volatile VectorKernels active = create(KernelSet.AUTO);
+    private static volatile KernelSet activeSet = resolve(KernelSet.AUTO);
+
+    private Kernels() {}
+
+    static VectorKernels get() {
+        return active;
+    }
+
+    /**
+     * Switches all SharedVector operations to the requested kernel set.
+     * Throws IllegalArgumentException when SIMD is requested but the Vector API module is not loaded.
+     */
+    public static synchronized KernelSet select(KernelSet requested) {
+        KernelSet resolved = resolve(requested);
+        if (resolved == KernelSet.SIMD && !isSimdAvailable()) {
+            throw new IllegalArgumentException("SIMD kernels need the JVM flag --add-modules " + VECTOR_MODULE);
+        }
+        active = create(resolved);
+        activeSet = resolved;
+        return resolved;
+    }
+
+    public static KernelSet getActive() {
+        return activeSet;
+    }
+
+    /**
+     * A human readable description of the active kernels, e.g. "simd (256-bit, 4 lanes)".
+     */
+    public static String describe() {
+        return active.describe();
+    }
+
+    public static boolean isSimdAvailable() {
+        return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent();
+    }
+
+    private static KernelSet resolve(KernelSet requested) {
+        if (requested == KernelSet.AUTO) {
+            return isSimdAvailable() ? KernelSet.SIMD : KernelSet.SCALAR;
+        }
+        return requested;
+    }
+
+    private static VectorKernels create(KernelSet requested) {
+        // SimdKernels is only loaded when the Vector API module is present
+        if (resolve(requested) == KernelSet.SIMD && isSimdAvailable()) {
+            return new SimdKernels();
+        }
+        return new ScalarKernels();
+    }
+}
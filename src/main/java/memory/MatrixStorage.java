@@ -0,0 +1,10 @@
+package memory;
+/**
+ * Backing storage used by a SharedMatrix.
+ * PER_VECTOR wraps every loaded row (or column) in its own SharedVector and array.
+ * CONTIGUOUS copies the whole matrix into a single array, and every SharedVector is a view into it.
+ */
+public enum MatrixStorage {
+    PER_VECTOR,
+    CONTIGUOUS
+}
@@ -0,0 +1,143 @@
+package memory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tasks that stream blocks of PagedMatrix operands through the heap. Every task reads its operand blocks
+ * into buffers of at most block x block elements, computes one block x block block of the result and
+ * writes it back, so a task never holds more than three such buffers, whatever the matrix size.
+ * Result blocks never overlap, so the tasks can run concurrently.
+ */
+public final class PagedKernels {
+
+    private static final int BUFFERS_PER_TASK = 3; // the multiply holds two operand blocks and an accumulator
+
+    private PagedKernels() {}
+
+    /**
+     * The largest block edge for which concurrentTasks tasks stay within budgetBytes of heap buffers.
+     */
+    public static int blockSizeFor(long budgetBytes, int concurrentTasks) {
+        double elements = (double) budgetBytes / ((long) BUFFERS_PER_TASK * Double.BYTES * Math.max(1, concurrentTasks));
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.floor(Math.sqrt(elements))));
+    }
+
+    /**
+     * out = a + b, or a - b with subtract; the block is negated before it is written when negate is set.
+     */
+    public static List<Runnable> createAddTasks(PagedMatrix a, PagedMatrix b, PagedMatrix out,
+                                                boolean subtract, boolean negate, int block) {
+        requireSameShape(a, b);
+        return forEachBlock(out, block, (row, rows, col, cols) -> {
+            double[] x = new double[rows * cols];
+            double[] y = new double[rows * cols];
+            a.readBlock(row, rows, col, cols, x);
+            b.readBlock(row, rows, col, cols, y);
+            if (subtract) {
+                Kernels.get().subtract(x, 0, y, 0, x.length);
+            }
+            else {
+                Kernels.get().add(x, 0, y, 0, x.length);
+            }
+            if (negate) {
+                Kernels.get().negate(x, 0, x.length);
+            }
+            out.writeBlock(row, rows, col, cols, x);
+        });
+    }
+
+    /**
+     * out = -a.
+     */
+    public static List<Runnable> createNegateTasks(PagedMatrix a, PagedMatrix out, int block) {
+        requireSameShape(a, out);
+        return forEachBlock(out, block, (row, rows, col, cols) -> {
+            double[] x = new double[rows * cols];
+            a.readBlock(row, rows, col, cols, x);
+            Kernels.get().negate(x, 0, x.length);
+            out.writeBlock(row, rows, col, cols, x);
+        });
+    }
+
+    /**
+     * out = T(a); each task reads the block of a that lands on its block of out and transposes it in the heap.
+     */
+    public static List<Runnable> createTransposeTasks(PagedMatrix a, PagedMatrix out, int block) {
+        if (a.rowCount() != out.columnCount() || a.columnCount() != out.rowCount()) {
+            throw new IllegalArgumentException("Dimension mismatch: transpose target must be "
+                    + a.columnCount() + " x " + a.rowCount());
+        }
+        return forEachBlock(out, block, (row, rows, col, cols) -> {
+            double[] source = new double[cols * rows]; // a's block is cols x rows
+            double[] target = new double[rows * cols];
+            a.readBlock(col, cols, row, rows, source);
+            for (int i = 0; i < cols; i++) {
+                for (int j = 0; j < rows; j++) {
+                    target[j * cols + i] = source[i * rows + j];
+                }
+            }
+            out.writeBlock(row, rows, col, cols, target);
+        });
+    }
+
+    /**
+     * out = a * b, negated when negate is set. Each task owns one block of out and walks the inner
+     * dimension block by block, accumulating with the same axpy kernel as SharedVector.vecMatMul.
+     */
+    public static List<Runnable> createMultiplyTasks(PagedMatrix a, PagedMatrix b, PagedMatrix out,
+                                                     boolean negate, int block) {
+        if (a.columnCount() != b.rowCount()) {
+            throw new IllegalArgumentException("Illegal operation: dimensions mismatch");
+        }
+        int inner = a.columnCount();
+        return forEachBlock(out, block, (row, rows, col, cols) -> {
+            VectorKernels kernels = Kernels.get();
+            double[] sum = new double[rows * cols];
+            double[] left = new double[rows * Math.min(block, inner)];
+            double[] right = new double[Math.min(block, inner) * cols];
+            for (int k0 = 0; k0 < inner; k0 += block) {
+                int depth = Math.min(block, inner - k0);
+                a.readBlock(row, rows, k0, depth, left);
+                b.readBlock(k0, depth, col, cols, right);
+                for (int i = 0; i < rows; i++) {
+                    for (int k = 0; k < depth; k++) {
+                        double scalar = left[i * depth + k];
+                        if (scalar != 0.0) {
+                            kernels.axpy(scalar, right, k * cols, sum, i * cols, cols);
+                        }
+                    }
+                }
+            }
+            if (negate) {
+                kernels.negate(sum, 0, sum.length);
+            }
+            out.writeBlock(row, rows, col, cols, sum);
+        });
+    }
+
+    private interface BlockTask {
+        void run(int row, int rows, int col, int cols);
+    }
+
+    private static List<Runnable> forEachBlock(PagedMatrix out, int block, BlockTask task) {
+        if (block <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        List<Runnable> tasks = new ArrayList<>();
+        for (int row = 0; row < out.rowCount(); row += block) {
+            for (int col = 0; col < out.columnCount(); col += block) {
+                int r0 = row;
+                int c0 = col;
+                tasks.add(() -> task.run(r0, Math.min(block, out.rowCount() - r0), c0, Math.min(block, out.columnCount() - c0)));
+            }
+        }
+        return tasks;
+    }
+
+    private static void requireSameShape(PagedMatrix a, PagedMatrix b) {
+        if (a.rowCount() != b.rowCount() || a.columnCount() != b.columnCount()) {
+            throw new IllegalArgumentException("Illegal operation: dimensions mismatch");
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package memory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A row-major rows x cols matrix that lives in a file instead of on the heap.
+ * Blocks are copied between the file and small heap buffers through short-lived memory mappings,
+ * so the heap only ever holds the blocks that tasks are working on; the rest is left to the OS page cache.
+ * Blocks that do not overlap can be read and written concurrently.
+ */
+public class PagedMatrix implements AutoCloseable {
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long dataOffset; // byte offset of element (0, 0)
+    private final int rows;
+    private final int cols;
+    private final boolean scratch; // deleted on close
+
+    private PagedMatrix(Path path, FileChannel channel, long dataOffset, int rows, int cols, boolean scratch) {
+        this.path = path;
+        this.channel = channel;
+        this.dataOffset = dataOffset;
+        this.rows = rows;
+        this.cols = cols;
+        this.scratch = scratch;
+    }
+
+    /**
+     * Opens an existing file whose data starts at dataOffset, e.g. the data region of a binary matrix file.
+     * The file is neither modified nor deleted.
+     */
+    public static PagedMatrix open(Path path, long dataOffset, int rows, int cols) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        return new PagedMatrix(path, channel, dataOffset, rows, cols, false);
+    }
+
+    /**
+     * Opens a file that the caller has already sized, for reading and writing. The file is kept on close().
+     */
+    public static PagedMatrix openWritable(Path path, long dataOffset, int rows, int cols) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new PagedMatrix(path, channel, dataOffset, rows, cols, false);
+    }
+
+    /**
+     * Creates a zero-filled scratch matrix in directory, deleted on close().
+     */
+    public static PagedMatrix createScratch(Path directory, int rows, int cols) throws IOException {
+        Path file = Files.createTempFile(directory, "lga-panel", ".bin");
+        file.toFile().deleteOnExit();
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = (long) rows * cols * Double.BYTES;
+        if (size > 0) {
+            channel.write(ByteBuffer.allocate(1), size - 1); // sizes the file; the rest reads as zeros
+        }
+        return new PagedMatrix(file, channel, 0, rows, cols, true);
+    }
+
+    public int rowCount() {
+        return rows;
+    }
+
+    public int columnCount() {
+        return cols;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Copies the block of rowCount x colCount elements at (row, col) into dst, row-major.
+     */
+    public void readBlock(int row, int rowCount, int col, int colCount, double[] dst) {
+        transfer(row, rowCount, col, colCount, dst, false);
+    }
+
+    /**
+     * Copies src, a row-major rowCount x colCount block, into the matrix at (row, col).
+     */
+    public void writeBlock(int row, int rowCount, int col, int colCount, double[] src) {
+        transfer(row, rowCount, col, colCount, src, true);
+    }
+
+    /**
+     * Maps the span from (row, col) to the end of the block once, or one block row at a time when that span
+     * is too large for a single mapping, and copies between it and buffer.
+     */
+    private void transfer(int row, int rowCount, int col, int colCount, double[] buffer, boolean write) {
+        if (rowCount == 0 || colCount == 0) {
+            return;
+        }
+        FileChannel.MapMode mode = write ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+        long span = (long) (rowCount - 1) * cols + colCount;
+        boolean whole = span * Double.BYTES <= Integer.MAX_VALUE;
+        DoubleBuffer window = whole ? map(row, col, span, mode) : null;
+        for (int r = 0; r < rowCount; r++) {
+            DoubleBuffer target = whole ? window : map(row + r, col, colCount, mode);
+            int index = whole ? r * cols : 0;
+            if (write) {
+                target.put(index, buffer, r * colCount, colCount);
+            }
+            else {
+                target.get(index, buffer, r * colCount, colCount);
+            }
+        }
+    }
+
+    private DoubleBuffer map(int row, int col, long elements, FileChannel.MapMode mode) {
+        long position = dataOffset + ((long) row * cols + col) * Double.BYTES;
+        try {
+            return channel.map(mode, position, elements * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed to map " + path, e);
+        }
+    }
+
+    /**
+     * Closes the file, and deletes it if it is a scratch file.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        if (scratch) {
+            Files.deleteIfExists(path);
+        }
+    }
+}
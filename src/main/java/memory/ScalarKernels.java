@@ -0,0 +1,46 @@
+package memory;
+
+final class ScalarKernels implements VectorKernels {
+
+    @Override
+    public void add(double[] dst, int d, double[] src, int s, int n) {
+        for (int k = 0; k < n; k++) {
+            dst[d + k] += src[s + k];
+        }
+    }
+
+    @Override
+    public void subtract(double[] dst, int d, double[] src, int s, int n) {
+        for (int k = 0; k < n; k++) {
+            dst[d + k] -= src[s + k];
+        }
+    }
+
+    @Override
+    public void negate(double[] dst, int d, int n) {
+        for (int k = 0; k < n; k++) {
+            dst[d + k] = -dst[d + k];
+        }
+    }
+
+    @Override
+    public double dot(double[] a, int i, double[] b, int j, int n) {
+        double result = 0.0;
+        for (int k = 0; k < n; k++) {
+            result += a[i + k] * b[j + k];
+        }
+        return result;
+    }
+
+    @Override
+    public void axpy(double scalar, double[] x, int i, double[] y, int j, int n) {
+        for (int k = 0; k < n; k++) {
+            y[j + k] += scalar * x[i + k];
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "scalar";
+    }
+}
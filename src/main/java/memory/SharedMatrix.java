@@ -1,37 +1,69 @@
 package memory;
 
+import java.util.function.Supplier;
+
 public class SharedMatrix {
 
+    private final MatrixStorage storage;
     private volatile SharedVector[] vectors = {}; // underlying vectors
 
     public SharedMatrix() {
+        this(MatrixStorage.PER_VECTOR);
+    }
 
+    public SharedMatrix(MatrixStorage storage) {
+        this.storage = storage;
     }
 
     public SharedMatrix(double[][] matrix) {
+        this(matrix, MatrixStorage.PER_VECTOR);
+    }
+
+    public SharedMatrix(double[][] matrix, MatrixStorage storage) {
+        this(storage);
         loadRowMajor(matrix);
     }
 
     public void loadRowMajor(double[][] matrix) {
+        this.vectors = wrap(matrix, VectorOrientation.ROW_MAJOR);
+    }
+
+    public void loadColumnMajor(double[][] matrix) {
+        this.vectors = wrap(matrix, VectorOrientation.COLUMN_MAJOR);
+    }
+
+    private SharedVector[] wrap(double[][] matrix, VectorOrientation orientation) {
+        if (storage == MatrixStorage.CONTIGUOUS) {
+            return slice(matrix, orientation);
+        }
         SharedVector[] newVectors = new SharedVector[matrix.length];
         for (int i = 0; i < newVectors.length; i++) {
-            newVectors[i] = new SharedVector(matrix[i], VectorOrientation.ROW_MAJOR);
-        } 
-        this.vectors = newVectors;
+            newVectors[i] = new SharedVector(matrix[i], orientation);
+        }
+        return newVectors;
     }
 
-    public void loadColumnMajor(double[][] matrix) {
+    /**
+     * Copies matrix into one contiguous array and returns a view per row (or column).
+     * Vector i starts at i * stride, where stride is the length of every vector.
+     */
+    private static SharedVector[] slice(double[][] matrix, VectorOrientation orientation) {
+        int stride = (matrix.length > 0) ? matrix[0].length : 0;
+        double[] data = new double[Math.multiplyExact(matrix.length, stride)];
         SharedVector[] newVectors = new SharedVector[matrix.length];
         for (int i = 0; i < newVectors.length; i++) {
-            newVectors[i] = new SharedVector(matrix[i], VectorOrientation.COLUMN_MAJOR);
-        } 
-        this.vectors = newVectors;
+            if (matrix[i].length != stride) {
+                throw new IllegalArgumentException("Inconsistent row sizes in matrix.");
+            }
+            System.arraycopy(matrix[i], 0, data, i * stride, stride);
+            newVectors[i] = new SharedVector(data, i * stride, stride, orientation);
+        }
+        return newVectors;
     }
 
     public double[][] readRowMajor() {
         SharedVector[] currentVectors = this.vectors;
-        acquireAllVectorReadLocks(currentVectors);
-        try{
+        return readAll(currentVectors, () -> {
             int row = 0;
             int col = 0;
             if (currentVectors.length > 0) {
@@ -45,21 +77,145 @@ public class SharedMatrix {
                 }
             }
             double matrix[][] = new double[row][col];
-            for (int i = 0; i < row; i++) {
+            if (currentVectors.length > 0 && currentVectors[0].getOrientation() == VectorOrientation.ROW_MAJOR) {
+                for (int i = 0; i < row; i++) {
+                    currentVectors[i].copyTo(matrix[i], 0);
+                }
+            }
+            else {
                 for (int j = 0; j < col; j++) {
-                    if (currentVectors.length > 0 && currentVectors[0].getOrientation() == VectorOrientation.ROW_MAJOR){
-                        matrix[i][j] = currentVectors[i].get(j);
-                    }
-                    else {
-                        matrix[i][j] = currentVectors[j].get(i);
-                    }
+                    currentVectors[j].copyToColumn(matrix, j);
                 }
             }
             return matrix;
+        });
+    }
+
+    /**
+     * The rows without a copy when every vector is a row that owns its whole array, which is the case for
+     * PER_VECTOR storage loaded row-major; otherwise a copy, as readRowMajor(). Either way the matrix is
+     * left empty, so the returned rows are no longer reachable through it. Only call this once every task
+     * working on the matrix has finished.
+     */
+    public double[][] takeRowMajor() {
+        SharedVector[] currentVectors = this.vectors;
+        for (SharedVector vector : currentVectors) {
+            if (vector.getOrientation() != VectorOrientation.ROW_MAJOR || vector.isView()) {
+                double[][] copy = readRowMajor();
+                this.vectors = new SharedVector[0];
+                return copy;
+            }
         }
-        finally{
-            releaseAllVectorReadLocks(currentVectors);
+        double[][] rows = new double[currentVectors.length][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = currentVectors[i].array();
         }
+        this.vectors = new SharedVector[0];
+        return rows;
+    }
+
+    /**
+     * Copies the matrix into a single row-major array of rows * cols elements.
+     * rows and cols are the logical dimensions, i.e. those of readRowMajor().
+     */
+    double[] packRowMajor(int rows, int cols) {
+        return packRowMajor(rows, cols, null);
+    }
+
+    /**
+     * Like packRowMajor(int, int), packing into a buffer taken from pool unless it is null.
+     */
+    double[] packRowMajor(int rows, int cols, BufferPool pool) {
+        SharedVector[] currentVectors = this.vectors;
+        int size = Math.multiplyExact(rows, cols);
+        double[] packed = (pool != null) ? pool.acquire(size) : new double[size];
+        return readAll(currentVectors, () -> {
+            if (currentVectors.length > 0 && currentVectors[0].getOrientation() == VectorOrientation.COLUMN_MAJOR) {
+                for (int j = 0; j < currentVectors.length; j++) {
+                    currentVectors[j].copyToStrided(packed, j, cols);
+                }
+            }
+            else {
+                for (int i = 0; i < currentVectors.length; i++) {
+                    currentVectors[i].copyTo(packed, i * cols);
+                }
+            }
+            return packed;
+        });
+    }
+
+    /**
+     * Freezes every vector (see SharedVector.freeze()): the matrix becomes a read-only operand whose rows
+     * all workers can read at once without touching a lock. Loading new content unfreezes the matrix,
+     * since it brings new vectors.
+     */
+    public void freeze() {
+        for (SharedVector vector : vectors) {
+            vector.freeze();
+        }
+    }
+
+    /**
+     * Runs copy over every vector of vecs as one consistent read without taking their N read locks:
+     * an optimistic read of each is validated after the copy (nothing to validate once they are frozen).
+     * Only when a write was in progress or got in between is the copy redone under all the read locks.
+     */
+    private <T> T readAll(SharedVector[] vecs, Supplier<T> copy) {
+        long[] stamps = new long[vecs.length];
+        boolean optimistic = true;
+        for (int i = 0; i < vecs.length && optimistic; i++) {
+            stamps[i] = vecs[i].tryOptimisticRead();
+            optimistic = stamps[i] != 0;
+        }
+        if (optimistic) {
+            try {
+                T result = copy.get();
+                if (validateAll(vecs, stamps)) {
+                    return result;
+                }
+            }
+            catch (IndexOutOfBoundsException torn) {
+                // a vector was swapped for a longer or shorter one mid-copy: retried under the locks
+            }
+        }
+        acquireAllVectorReadLocks(vecs);
+        try {
+            return copy.get();
+        }
+        finally {
+            releaseAllVectorReadLocks(vecs);
+        }
+    }
+
+    private static boolean validateAll(SharedVector[] vecs, long[] stamps) {
+        for (int i = 0; i < vecs.length; i++) {
+            if (!vecs[i].validate(stamps[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Number of rows of the matrix as read by readRowMajor().
+     */
+    public int rowCount() {
+        SharedVector[] currentVectors = this.vectors;
+        if (currentVectors.length == 0) {
+            return 0;
+        }
+        return (currentVectors[0].getOrientation() == VectorOrientation.ROW_MAJOR) ? currentVectors.length : currentVectors[0].length();
+    }
+
+    /**
+     * Number of columns of the matrix as read by readRowMajor().
+     */
+    public int columnCount() {
+        SharedVector[] currentVectors = this.vectors;
+        if (currentVectors.length == 0) {
+            return 0;
+        }
+        return (currentVectors[0].getOrientation() == VectorOrientation.ROW_MAJOR) ? currentVectors[0].length() : currentVectors.length;
     }
 
     public SharedVector get(int index) {
@@ -70,6 +226,10 @@ public class SharedMatrix {
         return vectors.length;
     }
 
+    public MatrixStorage getStorage() {
+        return storage;
+    }
+
     public VectorOrientation getOrientation() {
         if (vectors.length > 0) {
             return vectors[0].getOrientation();
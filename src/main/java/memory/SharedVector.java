@@ -1,22 +1,51 @@
 package memory;
 
-import java.util.concurrent.locks.ReadWriteLock;
+import metrics.LockWaits;
+
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.StampedLock;
 
 public class SharedVector {
 
     private double[] vector;
+    private int offset; // start of this vector inside the backing array (non-zero for views into a contiguous matrix)
+    private int length;
     private VectorOrientation orientation;
-    private ReadWriteLock lock = new java.util.concurrent.locks.ReentrantReadWriteLock();
+    // not reentrant: a thread holding one of its locks must not take it again (see add() for other == this)
+    private final StampedLock lock = new StampedLock();
+    private volatile boolean frozen = false; // read-only: reads take no lock, writes throw (see freeze())
 
     public SharedVector(double[] vector, VectorOrientation orientation) {
-        this.vector = vector;
+        this(vector, 0, vector.length, orientation);
+    }
+
+    /**
+     * Creates a view over {@code length} consecutive elements of {@code storage} starting at {@code offset}.
+     * Used by contiguous SharedMatrix storage, where every vector is a slice of one shared array.
+     */
+    SharedVector(double[] storage, int offset, int length, VectorOrientation orientation) {
+        this.vector = storage;
+        this.offset = offset;
+        this.length = length;
         this.orientation = orientation;
     }
 
     public double get(int index) {
+        Objects.checkIndex(index, length);
+        if (frozen) {
+            return vector[offset + index];
+        }
+        long stamp = lock.tryOptimisticRead();
+        double[] array = vector;
+        int at = offset + index;
+        double value = (at < array.length) ? array[at] : 0; // a torn read is caught by validate()
+        if (stamp != 0 && lock.validate(stamp)) {
+            return value;
+        }
         readLock();
         try {
-            return vector[index];
+            return vector[offset + index];
         } 
         finally {
             readUnlock();
@@ -24,27 +53,120 @@ public class SharedVector {
     }
 
     public int length() {
-        return vector.length;
+        return length;
     }
 
     public VectorOrientation getOrientation() {
         return orientation;
     }
 
+    /**
+     * The backing array; only meaningful when the vector is not a view.
+     * The caller must make sure no task is still using the vector.
+     */
+    double[] array() {
+        return vector;
+    }
+
+    boolean isView() {
+        return offset != 0 || length != vector.length;
+    }
+
+    /**
+     * Makes the vector read-only for good: reads stop locking and every write throws IllegalStateException.
+     * For an operand that nothing writes once it is loaded, e.g. the right side of a product, whose rows
+     * every worker reads at once. Call it before any task uses the vector (submitting the tasks publishes it).
+     */
+    public void freeze() {
+        frozen = true;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * A stamp for an optimistic read of the whole vector, checked by validate(); 0 while it is write-locked.
+     */
+    long tryOptimisticRead() {
+        return frozen ? 1 : lock.tryOptimisticRead();
+    }
+
+    /**
+     * Whether no write happened since stamp was taken, so what was read under it is consistent.
+     */
+    boolean validate(long stamp) {
+        return frozen || lock.validate(stamp);
+    }
+
+    /**
+     * Bulk-copies this vector into dest starting at destPos.
+     * The caller must hold this vector's read lock, or validate an optimistic read afterwards.
+     */
+    void copyTo(double[] dest, int destPos) {
+        System.arraycopy(vector, offset, dest, destPos, length);
+    }
+
+    /**
+     * Writes this vector into dest at destPos, destPos + stride, destPos + 2 * stride, ...
+     * The caller must hold this vector's read lock, or validate an optimistic read afterwards.
+     */
+    void copyToStrided(double[] dest, int destPos, int stride) {
+        for (int i = 0; i < length; i++) {
+            dest[destPos + i * stride] = vector[offset + i];
+        }
+    }
+
+    /**
+     * Writes this vector as column {@code column} of dest.
+     * The caller must hold this vector's read lock, or validate an optimistic read afterwards.
+     */
+    void copyToColumn(double[][] dest, int column) {
+        for (int i = 0; i < length; i++) {
+            dest[i][column] = vector[offset + i];
+        }
+    }
+
     public void writeLock() {
-        lock.writeLock().lock();
+        if (frozen) {
+            throw new IllegalStateException("Cannot write a frozen vector");
+        }
+        acquire(lock.asWriteLock());
     }
 
     public void writeUnlock() {
-        lock.writeLock().unlock();
+        lock.asWriteLock().unlock();
     }
 
+    /**
+     * Takes the read lock, unless the vector is frozen: then there is nothing to exclude.
+     */
     public void readLock() {
-        lock.readLock().lock();
+        if (!frozen) {
+            acquire(lock.asReadLock());
+        }
     }
 
     public void readUnlock() {
-        lock.readLock().unlock();
+        if (!frozen) {
+            lock.asReadLock().unlock();
+        }
+    }
+
+    /**
+     * Locks, timing the wait for metrics.LockWaits only when the lock is not free right away
+     * and timing is enabled.
+     */
+    private static void acquire(Lock lock) {
+        if (!lock.tryLock()) {
+            if (!LockWaits.isEnabled()) {
+                lock.lock();
+                return;
+            }
+            long start = System.nanoTime();
+            lock.lock();
+            LockWaits.record(System.nanoTime() - start);
+        }
     }
 
     public void transpose() {
@@ -63,25 +185,53 @@ public class SharedVector {
         if (this.getOrientation() != other.getOrientation()) { 
              throw new IllegalArgumentException("Vectors must be of the same orientation to compute.");
         }
+        boolean self = other == this; // the write lock already covers the read
         writeLock();
-        other.readLock(); 
+        if (!self) {
+            other.readLock();
+        }
         try {
-            for (int i = 0; i < vector.length; i++) {
-                vector[i] += other.get(i);
-            }
+            // both locks are held for the whole kernel, so it reads other's array directly
+            Kernels.get().add(vector, offset, other.vector, other.offset, length);
         } 
         finally {
-            other.readUnlock();
+            if (!self) {
+                other.readUnlock();
+            }
             writeUnlock();
         }
     }
 
-    public void negate() {
+    /**
+     * this -= other, in a single pass (used for A + (-B) rewritten by the optimizer).
+     */
+    public void subtract(SharedVector other) {
+        if (this.length() != other.length()) {
+            throw new IllegalArgumentException("Dimensions mismatch"); 
+        }
+        if (this.getOrientation() != other.getOrientation()) { 
+             throw new IllegalArgumentException("Vectors must be of the same orientation to compute.");
+        }
+        boolean self = other == this;
         writeLock();
+        if (!self) {
+            other.readLock();
+        }
         try {
-            for (int i = 0; i < vector.length; i++) {
-                vector[i] = -vector[i];
+            Kernels.get().subtract(vector, offset, other.vector, other.offset, length);
+        }
+        finally {
+            if (!self) {
+                other.readUnlock();
             }
+            writeUnlock();
+        }
+    }
+
+    public void negate() {
+        writeLock();
+        try {
+            Kernels.get().negate(vector, offset, length);
         } 
         finally {
             writeUnlock();
@@ -97,20 +247,25 @@ public class SharedVector {
         }
         readLock();
         other.readLock();
-        double result = 0.0;
         try {
-            for (int i = 0; i < vector.length; i++) {
-                result += vector[i] * other.get(i);
-            }
-            return result;
+            return Kernels.get().dot(vector, offset, other.vector, other.offset, length);
         }
         finally {
-            readLock();
             other.readUnlock();
+            readUnlock();
         }
     }
 
     public void vecMatMul(SharedMatrix matrix) {
+        vecMatMul(matrix, null);
+    }
+
+    /**
+     * Like vecMatMul(SharedMatrix), with the result row taken from pool (if not null) instead of allocated.
+     * A view copies the result into its storage and gives the row straight back. The array this vector held
+     * before is not released here: other tasks may still be reading it (see BufferPool).
+     */
+    public void vecMatMul(SharedMatrix matrix, BufferPool pool) {
        // שלב 1: בדיקת מימדים בסיסית ללא נעילות כבדות
         int matRows = matrix.length(); // SharedMatrix חושף את האורך ללא נעילה (מערך ג'אווה)
         
@@ -123,12 +278,13 @@ public class SharedVector {
         }
 
         // המערך החדש שיצבור את התוצאה (מאותחל ל-0.0)
-        double[] newVector = new double[matCols];
+        double[] newVector = (pool != null) ? pool.acquire(matCols) : new double[matCols];
+        VectorKernels kernels = Kernels.get();
 
         // שלב 2: חישוב תחת נעילת קריאה של הוקטור *שלנו* בלבד
         readLock();
         try {
-            if (this.vector.length != matRows) {
+            if (this.length != matRows) {
                  throw new IllegalArgumentException("Dimension mismatch detected under lock");
             }
 
@@ -137,7 +293,7 @@ public class SharedVector {
             // זה נקרא Linear Combination of Rows.
             
             for (int r = 0; r < matRows; r++) {
-                double scalar = this.vector[r]; // הערך מהוקטור שלנו (למשל x)
+                double scalar = this.vector[offset + r]; // הערך מהוקטור שלנו (למשל x)
                 
                 // אם הסקלר הוא 0, אין טעם לחשב את כל השורה (שיפור ביצועים)
                 if (scalar == 0.0) continue;
@@ -145,11 +301,17 @@ public class SharedVector {
                 // גישה לוקטור השורה הספציפי מתוך המטריצה המשותפת
                 SharedVector matrixRow = matrix.get(r); 
 
-                for (int c = 0; c < matCols; c++) {
-                    // כאן אנחנו משתמשים ב-matrixRow.get(c).
-                    // יתרון: זה נועל רק את השורה הספציפית הזו לזמן קצר מאוד, 
-                    // ולא את כל המטריצה. זה מאפשר לתהליכונים אחרים לעבוד על שורות אחרות במקביל.
-                    newVector[c] += scalar * matrixRow.get(c);
+                // The row's read lock is taken once for the whole inner loop rather than once per element
+                // via matrixRow.get(c). Other threads can still work on other rows in parallel.
+                matrixRow.readLock();
+                try {
+                    if (matrixRow.length != matCols) {
+                        throw new IllegalArgumentException("Inconsistent row sizes in matrix.");
+                    }
+                    kernels.axpy(scalar, matrixRow.vector, matrixRow.offset, newVector, 0, matCols);
+                }
+                finally {
+                    matrixRow.readUnlock();
                 }
             }
         } finally {
@@ -159,7 +321,18 @@ public class SharedVector {
         // שלב 3: עדכון הפוינטר (פעולה אטומית מהירה)
         writeLock();
         try {
-            this.vector = newVector;
+            if (isView() && newVector.length == length) {
+                // a view keeps living inside the contiguous matrix storage
+                System.arraycopy(newVector, 0, vector, offset, length);
+                if (pool != null) {
+                    pool.release(newVector);
+                }
+            }
+            else {
+                this.vector = newVector;
+                this.offset = 0;
+                this.length = newVector.length;
+            }
         } finally {
             writeUnlock();
         }
@@ -0,0 +1,85 @@
+package memory;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API kernels. Every loop runs over full lanes first and finishes the tail with scalar code.
+ * add, subtract, negate and axpy do the same per-element arithmetic as ScalarKernels (no fused multiply-add),
+ * so they give bit-identical results; dot sums in lane order and may differ in the last bits.
+ */
+final class SimdKernels implements VectorKernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void add(double[] dst, int d, double[] src, int s, int n) {
+        int k = 0;
+        for (int upper = SPECIES.loopBound(n); k < upper; k += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, dst, d + k)
+                    .add(DoubleVector.fromArray(SPECIES, src, s + k))
+                    .intoArray(dst, d + k);
+        }
+        for (; k < n; k++) {
+            dst[d + k] += src[s + k];
+        }
+    }
+
+    @Override
+    public void subtract(double[] dst, int d, double[] src, int s, int n) {
+        int k = 0;
+        for (int upper = SPECIES.loopBound(n); k < upper; k += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, dst, d + k)
+                    .sub(DoubleVector.fromArray(SPECIES, src, s + k))
+                    .intoArray(dst, d + k);
+        }
+        for (; k < n; k++) {
+            dst[d + k] -= src[s + k];
+        }
+    }
+
+    @Override
+    public void negate(double[] dst, int d, int n) {
+        int k = 0;
+        for (int upper = SPECIES.loopBound(n); k < upper; k += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, dst, d + k).neg().intoArray(dst, d + k);
+        }
+        for (; k < n; k++) {
+            dst[d + k] = -dst[d + k];
+        }
+    }
+
+    @Override
+    public double dot(double[] a, int i, double[] b, int j, int n) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int k = 0;
+        for (int upper = SPECIES.loopBound(n); k < upper; k += SPECIES.length()) {
+            sum = sum.add(DoubleVector.fromArray(SPECIES, a, i + k).mul(DoubleVector.fromArray(SPECIES, b, j + k)));
+        }
+        double result = sum.reduceLanes(VectorOperators.ADD);
+        for (; k < n; k++) {
+            result += a[i + k] * b[j + k];
+        }
+        return result;
+    }
+
+    @Override
+    public void axpy(double scalar, double[] x, int i, double[] y, int j, int n) {
+        DoubleVector factor = DoubleVector.broadcast(SPECIES, scalar);
+        int k = 0;
+        for (int upper = SPECIES.loopBound(n); k < upper; k += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, y, j + k)
+                    .add(DoubleVector.fromArray(SPECIES, x, i + k).mul(factor))
+                    .intoArray(y, j + k);
+        }
+        for (; k < n; k++) {
+            y[j + k] += scalar * x[i + k];
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "simd (" + SPECIES.vectorBitSize() + "-bit, " + SPECIES.length() + " lanes)";
+    }
+}
@@ -0,0 +1,302 @@
+package memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Row-parallel kernels with at least one sparse (CSR) operand. Each returns a Job: one task per result row,
+ * and the result once every task has run. Operands are never modified.
+ * Signs replace separate negation passes: a result such as -(A - B) is computed as (-1)A + (+1)B.
+ * Whether a result is sparse or dense is decided up front from its estimated fill (see SparseMatrix).
+ */
+public final class SparseKernels {
+
+    private SparseKernels() {}
+
+    /**
+     * The tasks of one kernel and its result, which is either sparse or dense.
+     */
+    public static final class Job {
+        private final List<Runnable> tasks;
+        private final double costPerTask;
+        private final Supplier<SparseMatrix> sparse;
+        private final Supplier<double[][]> dense;
+
+        private Job(List<Runnable> tasks, double costPerTask, Supplier<SparseMatrix> sparse, Supplier<double[][]> dense) {
+            this.tasks = tasks;
+            this.costPerTask = costPerTask;
+            this.sparse = sparse;
+            this.dense = dense;
+        }
+
+        public List<Runnable> getTasks() {
+            return tasks;
+        }
+
+        /** Element operations per task, for TiredExecutor.chunk(). */
+        public double getCostPerTask() {
+            return costPerTask;
+        }
+
+        public boolean isSparse() {
+            return sparse != null;
+        }
+
+        public SparseMatrix getSparse() {
+            return sparse.get();
+        }
+
+        public double[][] getDense() {
+            return dense.get();
+        }
+    }
+
+    /**
+     * sign * a, keeping a's structure.
+     */
+    public static Job scale(SparseMatrix a, double sign) {
+        double[] values = new double[a.values.length];
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < a.rowCount(); i++) {
+            int from = a.rowStart[i];
+            int to = a.rowStart[i + 1];
+            tasks.add(() -> {
+                for (int p = from; p < to; p++) {
+                    values[p] = sign * a.values[p];
+                }
+            });
+        }
+        SparseMatrix result = new SparseMatrix(a.rowCount(), a.columnCount(), a.rowStart, a.columns, values);
+        return new Job(tasks, averageRowCost(a), () -> result, null);
+    }
+
+    /**
+     * signA * a + signB * b, both sparse. Rows are merged when the sum is expected to stay sparse,
+     * and scattered into dense rows otherwise.
+     */
+    public static Job add(SparseMatrix a, double signA, SparseMatrix b, double signB) {
+        requireSameShape(a.rowCount(), a.columnCount(), b.rowCount(), b.columnCount());
+        double density = a.density() + b.density() - a.density() * b.density();
+        int rows = a.rowCount();
+        int cols = a.columnCount();
+        if (!SparseMatrix.prefersSparse((long) rows * cols, density)) {
+            double[][] result = new double[rows][cols];
+            List<Runnable> tasks = new ArrayList<>();
+            for (int i = 0; i < rows; i++) {
+                int row = i;
+                tasks.add(() -> {
+                    a.scatterRow(row, signA, result[row]);
+                    b.scatterRow(row, signB, result[row]);
+                });
+            }
+            return new Job(tasks, cols, null, () -> result);
+        }
+        SparseRows result = new SparseRows(rows, cols);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            int row = i;
+            tasks.add(() -> {
+                int p = a.rowStart[row];
+                int pEnd = a.rowStart[row + 1];
+                int q = b.rowStart[row];
+                int qEnd = b.rowStart[row + 1];
+                int[] columns = new int[(pEnd - p) + (qEnd - q)];
+                double[] values = new double[columns.length];
+                int n = 0;
+                while (p < pEnd || q < qEnd) {
+                    int ca = (p < pEnd) ? a.columns[p] : Integer.MAX_VALUE;
+                    int cb = (q < qEnd) ? b.columns[q] : Integer.MAX_VALUE;
+                    double value;
+                    int column;
+                    if (ca == cb) {
+                        column = ca;
+                        value = signA * a.values[p++] + signB * b.values[q++];
+                    }
+                    else if (ca < cb) {
+                        column = ca;
+                        value = signA * a.values[p++];
+                    }
+                    else {
+                        column = cb;
+                        value = signB * b.values[q++];
+                    }
+                    if (value != 0.0) { // cancellation
+                        columns[n] = column;
+                        values[n] = value;
+                        n++;
+                    }
+                }
+                result.set(row, columns, values, n);
+            });
+        }
+        return new Job(tasks, averageRowCost(a) + averageRowCost(b), result::build, null);
+    }
+
+    /**
+     * signDense * dense + signSparse * sparse, a dense result.
+     */
+    public static Job add(double[][] dense, double signDense, SparseMatrix sparse, double signSparse) {
+        int cols = (dense.length > 0) ? dense[0].length : 0;
+        requireSameShape(dense.length, cols, sparse.rowCount(), sparse.columnCount());
+        double[][] result = new double[dense.length][];
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < dense.length; i++) {
+            int row = i;
+            tasks.add(() -> {
+                double[] out = dense[row].clone();
+                if (signDense != 1.0) {
+                    for (int j = 0; j < out.length; j++) {
+                        out[j] = signDense * out[j];
+                    }
+                }
+                sparse.scatterRow(row, signSparse, out);
+                result[row] = out;
+            });
+        }
+        return new Job(tasks, cols, null, () -> result);
+    }
+
+    /**
+     * sign * a * b for sparse a and dense b (SpMM): every non-zero a[i][k] adds a scaled row k of b to row i.
+     */
+    public static Job multiply(SparseMatrix a, double[][] b, double sign) {
+        int cols = (b.length > 0) ? b[0].length : 0;
+        requireInner(a.columnCount(), b.length);
+        VectorKernels kernels = Kernels.get();
+        double[][] result = new double[a.rowCount()][cols];
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < a.rowCount(); i++) {
+            int row = i;
+            tasks.add(() -> {
+                for (int p = a.rowStart[row]; p < a.rowStart[row + 1]; p++) {
+                    kernels.axpy(sign * a.values[p], b[a.columns[p]], 0, result[row], 0, cols);
+                }
+            });
+        }
+        return new Job(tasks, averageRowCost(a) * cols, null, () -> result);
+    }
+
+    /**
+     * sign * a * b for dense a and sparse b: every non-zero a[i][k] scatters a scaled row k of b into row i.
+     */
+    public static Job multiply(double[][] a, SparseMatrix b, double sign) {
+        int inner = (a.length > 0) ? a[0].length : 0;
+        requireInner(inner, b.rowCount());
+        double[][] result = new double[a.length][b.columnCount()];
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < a.length; i++) {
+            int row = i;
+            tasks.add(() -> {
+                for (int k = 0; k < inner; k++) {
+                    double scalar = a[row][k];
+                    if (scalar != 0.0) {
+                        b.scatterRow(k, sign * scalar, result[row]);
+                    }
+                }
+            });
+        }
+        return new Job(tasks, inner * (1 + averageRowCost(b)), null, () -> result);
+    }
+
+    /**
+     * sign * a * b for sparse a and b (SpGEMM, Gustavson's row-by-row algorithm). Each task accumulates
+     * its row in a dense buffer; the row is compressed unless the product is expected to be dense.
+     */
+    public static Job multiply(SparseMatrix a, SparseMatrix b, double sign) {
+        requireInner(a.columnCount(), b.rowCount());
+        int rows = a.rowCount();
+        int cols = b.columnCount();
+        // chance that a given product element has at least one contributing pair
+        double density = 1 - Math.pow(1 - a.density() * b.density(), a.columnCount());
+        boolean sparseResult = SparseMatrix.prefersSparse((long) rows * cols, density);
+        double[][] dense = sparseResult ? null : new double[rows][];
+        SparseRows compressed = sparseResult ? new SparseRows(rows, cols) : null;
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            int row = i;
+            tasks.add(() -> {
+                double[] accumulator = new double[cols];
+                for (int p = a.rowStart[row]; p < a.rowStart[row + 1]; p++) {
+                    b.scatterRow(a.columns[p], sign * a.values[p], accumulator);
+                }
+                if (!sparseResult) {
+                    dense[row] = accumulator;
+                    return;
+                }
+                int n = 0;
+                for (double value : accumulator) {
+                    if (value != 0.0) {
+                        n++;
+                    }
+                }
+                int[] columns = new int[n];
+                double[] values = new double[n];
+                n = 0;
+                for (int j = 0; j < cols; j++) {
+                    if (accumulator[j] != 0.0) {
+                        columns[n] = j;
+                        values[n] = accumulator[j];
+                        n++;
+                    }
+                }
+                compressed.set(row, columns, values, n);
+            });
+        }
+        double cost = averageRowCost(a) * (1 + averageRowCost(b)) + cols;
+        return sparseResult ? new Job(tasks, cost, compressed::build, null) : new Job(tasks, cost, null, () -> dense);
+    }
+
+    private static double averageRowCost(SparseMatrix matrix) {
+        return (matrix.rowCount() == 0) ? 0 : (double) matrix.nonZeroCount() / matrix.rowCount();
+    }
+
+    private static void requireSameShape(int rowsA, int colsA, int rowsB, int colsB) {
+        if (rowsA != rowsB || colsA != colsB) {
+            throw new IllegalArgumentException("Illegal operation: dimensions mismatch");
+        }
+    }
+
+    private static void requireInner(int colsA, int rowsB) {
+        if (colsA != rowsB) {
+            throw new IllegalArgumentException("Illegal operation: dimensions mismatch");
+        }
+    }
+
+    /**
+     * Rows written independently by tasks, concatenated into a SparseMatrix at the end.
+     */
+    private static final class SparseRows {
+        private final int rows;
+        private final int cols;
+        private final int[][] columns;
+        private final double[][] values;
+
+        SparseRows(int rows, int cols) {
+            this.rows = rows;
+            this.cols = cols;
+            this.columns = new int[rows][];
+            this.values = new double[rows][];
+        }
+
+        void set(int row, int[] rowColumns, double[] rowValues, int count) {
+            columns[row] = (count == rowColumns.length) ? rowColumns : Arrays.copyOf(rowColumns, count);
+            values[row] = (count == rowValues.length) ? rowValues : Arrays.copyOf(rowValues, count);
+        }
+
+        SparseMatrix build() {
+            int[] rowStart = new int[rows + 1];
+            for (int i = 0; i < rows; i++) {
+                rowStart[i + 1] = Math.addExact(rowStart[i], columns[i].length);
+            }
+            int[] allColumns = new int[rowStart[rows]];
+            double[] allValues = new double[rowStart[rows]];
+            for (int i = 0; i < rows; i++) {
+                System.arraycopy(columns[i], 0, allColumns, rowStart[i], columns[i].length);
+                System.arraycopy(values[i], 0, allValues, rowStart[i], values[i].length);
+            }
+            return new SparseMatrix(rows, cols, rowStart, allColumns, allValues);
+        }
+    }
+}
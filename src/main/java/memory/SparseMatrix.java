@@ -0,0 +1,173 @@
+package memory;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable matrix in compressed sparse row (CSR) form: the non-zeros of row i are
+ * columns[rowStart[i] .. rowStart[i + 1]) with the matching values, in increasing column order.
+ * The same arrays read as compressed sparse columns (CSC) describe the transpose, which is how a
+ * transposed node keeps a sparse matrix without moving it (see parser.ComputationNode.isTransposed()).
+ */
+public final class SparseMatrix {
+
+    /** Fill below which sparse storage is smaller and faster than dense. */
+    public static final double MAX_SPARSE_DENSITY = 0.1;
+    /** Matrices with fewer elements are kept dense; the index arrays would not pay off. */
+    public static final int MIN_SPARSE_ELEMENTS = 1024;
+
+    private final int rows;
+    private final int cols;
+    final int[] rowStart; // rows + 1 entries
+    final int[] columns;
+    final double[] values;
+
+    SparseMatrix(int rows, int cols, int[] rowStart, int[] columns, double[] values) {
+        this.rows = rows;
+        this.cols = cols;
+        this.rowStart = rowStart;
+        this.columns = columns;
+        this.values = values;
+    }
+
+    public static SparseMatrix fromDense(double[][] matrix) {
+        int rows = matrix.length;
+        int cols = (rows > 0) ? matrix[0].length : 0;
+        long nonZeros = countNonZeros(matrix);
+        if (nonZeros > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many non-zeros for sparse storage: " + nonZeros);
+        }
+        int[] rowStart = new int[rows + 1];
+        int[] columns = new int[(int) nonZeros];
+        double[] values = new double[(int) nonZeros];
+        int next = 0;
+        for (int i = 0; i < rows; i++) {
+            if (matrix[i].length != cols) {
+                throw new IllegalArgumentException("Inconsistent row sizes in matrix.");
+            }
+            for (int j = 0; j < cols; j++) {
+                if (matrix[i][j] != 0.0) {
+                    columns[next] = j;
+                    values[next] = matrix[i][j];
+                    next++;
+                }
+            }
+            rowStart[i + 1] = next;
+        }
+        return new SparseMatrix(rows, cols, rowStart, columns, values);
+    }
+
+    public static long countNonZeros(double[][] matrix) {
+        long count = 0;
+        for (double[] row : matrix) {
+            for (double value : row) {
+                if (value != 0.0) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Whether a matrix of this size and fill should be stored sparse.
+     */
+    public static boolean prefersSparse(long elements, double density) {
+        return elements >= MIN_SPARSE_ELEMENTS && density < MAX_SPARSE_DENSITY;
+    }
+
+    /**
+     * Whether matrix is large and empty enough to be stored sparse; counts its non-zeros.
+     */
+    public static boolean prefersSparse(double[][] matrix) {
+        long elements = (matrix.length > 0) ? (long) matrix.length * matrix[0].length : 0;
+        if (elements < MIN_SPARSE_ELEMENTS) {
+            return false;
+        }
+        return prefersSparse(elements, (double) countNonZeros(matrix) / elements);
+    }
+
+    public int rowCount() {
+        return rows;
+    }
+
+    public int columnCount() {
+        return cols;
+    }
+
+    public int nonZeroCount() {
+        return rowStart[rows];
+    }
+
+    public double density() {
+        long elements = (long) rows * cols;
+        return (elements == 0) ? 0 : (double) nonZeroCount() / elements;
+    }
+
+    /**
+     * The transpose in CSR form, i.e. these arrays converted to CSC, in O(nnz + cols).
+     */
+    public SparseMatrix transpose() {
+        int[] start = new int[cols + 1];
+        for (int p = 0; p < nonZeroCount(); p++) {
+            start[columns[p] + 1]++;
+        }
+        for (int j = 0; j < cols; j++) {
+            start[j + 1] += start[j];
+        }
+        int[] next = Arrays.copyOf(start, cols);
+        int[] tColumns = new int[nonZeroCount()];
+        double[] tValues = new double[nonZeroCount()];
+        for (int i = 0; i < rows; i++) {
+            for (int p = rowStart[i]; p < rowStart[i + 1]; p++) {
+                int q = next[columns[p]]++;
+                tColumns[q] = i;
+                tValues[q] = values[p];
+            }
+        }
+        return new SparseMatrix(cols, rows, start, tColumns, tValues);
+    }
+
+    public double[][] toDense() {
+        double[][] dense = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            scatterRow(i, 1.0, dense[i]);
+        }
+        return dense;
+    }
+
+    /**
+     * The rows, densified one at a time into a reused buffer that is only valid until the next call to next().
+     */
+    public Iterator<double[]> denseRows() {
+        double[] buffer = new double[cols];
+        return new Iterator<>() {
+            private int row = 0;
+
+            @Override
+            public boolean hasNext() {
+                return row < rows;
+            }
+
+            @Override
+            public double[] next() {
+                if (row >= rows) {
+                    throw new NoSuchElementException();
+                }
+                Arrays.fill(buffer, 0.0);
+                scatterRow(row++, 1.0, buffer);
+                return buffer;
+            }
+        };
+    }
+
+    /**
+     * dest += scale * row i.
+     */
+    void scatterRow(int i, double scale, double[] dest) {
+        for (int p = rowStart[i]; p < rowStart[i + 1]; p++) {
+            dest[columns[p]] += scale * values[p];
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package memory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Cache-blocked matrix product: result = left * right.
+ * Both operands are packed once into row-major arrays. The result is split into
+ * tileSize x tileSize blocks, and each block is one task. Inside a block the inner dimension
+ * is also walked in tileSize steps, so the slices of left and right being used stay in cache.
+ */
+public class TiledMultiply {
+
+    public static final int DEFAULT_TILE_SIZE = 64;
+    private static final int[] TILE_CANDIDATES = {16, 32, 64, 128, 256};
+    private static final int TUNING_SIZE = 256;
+
+    private static volatile int tunedTileSize = 0; // 0 until autoTune() has run
+
+    private final double[] left; // rows x inner, row-major
+    private final double[] right; // inner x cols, row-major
+    private final double[][] result;
+    private final int rows;
+    private final int inner;
+    private final int cols;
+    private final int tileSize;
+    private final boolean negateResult;
+    private final BufferPool pool; // null when every buffer is allocated
+
+    public TiledMultiply(SharedMatrix left, SharedMatrix right, int tileSize) {
+        this(left, right, tileSize, false);
+    }
+
+    public TiledMultiply(SharedMatrix left, SharedMatrix right, int tileSize, boolean negateResult) {
+        this(left, right, tileSize, negateResult, null);
+    }
+
+    /**
+     * With negateResult set, every tile negates its block while it is still in cache,
+     * so -(left * right) costs no extra pass.
+     * With a pool, the packed operands and the result rows are taken from it (see release()).
+     */
+    public TiledMultiply(SharedMatrix left, SharedMatrix right, int tileSize, boolean negateResult, BufferPool pool) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive");
+        }
+        if (left.columnCount() != right.rowCount()) {
+            throw new IllegalArgumentException("Dimension mismatch: left columns (" + left.columnCount()
+                    + ") != right rows (" + right.rowCount() + ")");
+        }
+        this.rows = left.rowCount();
+        this.inner = left.columnCount();
+        this.cols = right.columnCount();
+        this.tileSize = tileSize;
+        this.negateResult = negateResult;
+        this.pool = pool;
+        this.left = left.packRowMajor(rows, inner, pool);
+        this.right = right.packRowMajor(inner, cols, pool);
+        this.result = new double[rows][];
+        for (int i = 0; i < rows; i++) {
+            result[i] = (pool != null) ? pool.acquire(cols) : new double[cols];
+        }
+    }
+
+    private TiledMultiply(double[] left, double[] right, int rows, int inner, int cols, int tileSize) {
+        this.left = left;
+        this.right = right;
+        this.rows = rows;
+        this.inner = inner;
+        this.cols = cols;
+        this.tileSize = tileSize;
+        this.negateResult = false;
+        this.pool = null;
+        this.result = new double[rows][cols];
+    }
+
+    /**
+     * Returns one task per result tile. Tiles never overlap, so the tasks can run concurrently.
+     */
+    public List<Runnable> createTileTasks() {
+        List<Runnable> tasks = new ArrayList<>();
+        for (int rowStart = 0; rowStart < rows; rowStart += tileSize) {
+            for (int colStart = 0; colStart < cols; colStart += tileSize) {
+                int r0 = rowStart;
+                int c0 = colStart;
+                tasks.add(() -> computeTile(r0, Math.min(r0 + tileSize, rows), c0, Math.min(c0 + tileSize, cols)));
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * The product; complete once every tile task has finished.
+     */
+    public double[][] getResult() {
+        return result;
+    }
+
+    /**
+     * Gives the packed operands back to the pool; call it once every tile task has finished.
+     * The result rows stay with the caller.
+     */
+    public void release() {
+        if (pool != null) {
+            pool.release(left);
+            pool.release(right);
+        }
+    }
+
+    void computeTile(int rowStart, int rowEnd, int colStart, int colEnd) {
+        for (int kStart = 0; kStart < inner; kStart += tileSize) {
+            int kEnd = Math.min(kStart + tileSize, inner);
+            int i = rowStart;
+            for (; i + 4 <= rowEnd; i += 4) {
+                microKernel4(i, kStart, kEnd, colStart, colEnd);
+            }
+            for (; i < rowEnd; i++) {
+                microKernel1(i, kStart, kEnd, colStart, colEnd);
+            }
+        }
+        if (negateResult) {
+            for (int i = rowStart; i < rowEnd; i++) {
+                Kernels.get().negate(result[i], colStart, colEnd - colStart);
+            }
+        }
+    }
+
+    /**
+     * Updates four result rows at once: every element of right that is loaded is used four times,
+     * and the four left values stay in registers for the whole inner loop.
+     */
+    private void microKernel4(int i, int kStart, int kEnd, int colStart, int colEnd) {
+        double[] c0 = result[i];
+        double[] c1 = result[i + 1];
+        double[] c2 = result[i + 2];
+        double[] c3 = result[i + 3];
+        for (int k = kStart; k < kEnd; k++) {
+            double a0 = left[i * inner + k];
+            double a1 = left[(i + 1) * inner + k];
+            double a2 = left[(i + 2) * inner + k];
+            double a3 = left[(i + 3) * inner + k];
+            int rightRow = k * cols;
+            for (int j = colStart; j < colEnd; j++) {
+                double b = right[rightRow + j];
+                c0[j] += a0 * b;
+                c1[j] += a1 * b;
+                c2[j] += a2 * b;
+                c3[j] += a3 * b;
+            }
+        }
+    }
+
+    private void microKernel1(int i, int kStart, int kEnd, int colStart, int colEnd) {
+        double[] c = result[i];
+        for (int k = kStart; k < kEnd; k++) {
+            double a = left[i * inner + k];
+            if (a == 0.0) continue;
+            int rightRow = k * cols;
+            for (int j = colStart; j < colEnd; j++) {
+                c[j] += a * right[rightRow + j];
+            }
+        }
+    }
+
+    /**
+     * Picks the fastest tile size for this machine by timing a single-threaded
+     * TUNING_SIZE x TUNING_SIZE product with every candidate. The result is computed once per JVM.
+     */
+    public static int autoTune() {
+        int tuned = tunedTileSize;
+        if (tuned > 0) {
+            return tuned;
+        }
+        synchronized (TiledMultiply.class) {
+            if (tunedTileSize > 0) {
+                return tunedTileSize;
+            }
+            Random random = new Random(0);
+            double[] a = new double[TUNING_SIZE * TUNING_SIZE];
+            double[] b = new double[TUNING_SIZE * TUNING_SIZE];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = random.nextDouble();
+                b[i] = random.nextDouble();
+            }
+            int best = DEFAULT_TILE_SIZE;
+            long bestTime = Long.MAX_VALUE;
+            for (int round = 0; round < 3; round++) { // the first round mostly warms up the JIT
+                for (int candidate : TILE_CANDIDATES) {
+                    TiledMultiply trial = new TiledMultiply(a, b, TUNING_SIZE, TUNING_SIZE, TUNING_SIZE, candidate);
+                    long start = System.nanoTime();
+                    for (Runnable task : trial.createTileTasks()) {
+                        task.run();
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    if (round > 0 && elapsed < bestTime) {
+                        bestTime = elapsed;
+                        best = candidate;
+                    }
+                }
+            }
+            tunedTileSize = best;
+            return best;
+        }
+    }
+}
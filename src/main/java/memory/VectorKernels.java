@@ -0,0 +1,25 @@
+package memory;
+
+/**
+ * Inner loops of the SharedVector operations, over raw array slices.
+ * Callers are responsible for bounds and for holding the right locks.
+ */
+interface VectorKernels {
+
+    /** dst[d..d+n) += src[s..s+n) */
+    void add(double[] dst, int d, double[] src, int s, int n);
+
+    /** dst[d..d+n) -= src[s..s+n) */
+    void subtract(double[] dst, int d, double[] src, int s, int n);
+
+    /** dst[d..d+n) = -dst[d..d+n) */
+    void negate(double[] dst, int d, int n);
+
+    /** sum of a[i..i+n) * b[j..j+n) */
+    double dot(double[] a, int i, double[] b, int j, int n);
+
+    /** y[j..j+n) += scalar * x[i..i+n), the inner loop of vecMatMul */
+    void axpy(double scalar, double[] x, int i, double[] y, int j, int n);
+
+    String describe();
+}
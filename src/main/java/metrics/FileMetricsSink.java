@@ -0,0 +1,127 @@
+package metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the metrics of every run and writes them to a file on close().
+ * JSON holds one object per run, with its totals, dispatch latency buckets, workers and nodes.
+ * CSV holds one line per node, with the run's index in the first column.
+ */
+public class FileMetricsSink implements MetricsSink {
+
+    public enum Format {
+        JSON, CSV
+    }
+
+    private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final Path path;
+    private final Format format;
+    private final List<Map<String, Object>> runs = new ArrayList<>();
+    private List<Map<String, Object>> nodes = new ArrayList<>();
+
+    public FileMetricsSink(Path path, Format format) {
+        this.path = path;
+        this.format = format;
+    }
+
+    /**
+     * A sink whose format follows the file name: CSV for a .csv file, JSON otherwise.
+     */
+    public static FileMetricsSink forPath(Path path) {
+        boolean csv = path.getFileName().toString().toLowerCase().endsWith(".csv");
+        return new FileMetricsSink(path, csv ? Format.CSV : Format.JSON);
+    }
+
+    @Override
+    public synchronized void nodeResolved(NodeMetrics node) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", node.getId());
+        row.put("type", node.getType());
+        row.put("inputs", node.getInputs());
+        row.put("tasks", node.getTasks());
+        row.put("rows", node.getRows());
+        row.put("columns", node.getColumns());
+        row.put("latencyNanos", node.getLatencyNanos());
+        row.put("busyNanos", node.getBusyNanos());
+        row.put("queueWaitNanos", node.getQueueWaitNanos());
+        row.put("maxQueueWaitNanos", node.getMaxQueueWaitNanos());
+        row.put("lockWaitNanos", node.getLockWaitNanos());
+        row.put("rowsPerSecond", node.getRowsPerSecond());
+        row.put("flops", node.getFlops());
+        row.put("bytesMoved", node.getBytesMoved());
+        row.put("allocatedBytes", node.getAllocatedBytes());
+        row.put("bound", node.bound().name());
+        nodes.add(row);
+    }
+
+    @Override
+    public synchronized void runFinished(RunMetrics run) {
+        Map<String, Object> totals = new LinkedHashMap<>();
+        totals.put("wallNanos", run.getWallNanos());
+        totals.put("nodes", run.getNodes());
+        totals.put("lockWaitNanos", run.getLockWaitNanos());
+        totals.put("pooledBytesAllocated", run.getPooledBytesAllocated());
+        Map<String, Long> buckets = new LinkedHashMap<>(); // lower bound in ns -> count
+        for (int b = 0; b < LatencyHistogram.BUCKETS; b++) {
+            long count = run.getDispatchLatency().getBucketCount(b);
+            if (count > 0) {
+                buckets.put(Long.toString((b == 0) ? 0 : 1L << b), count);
+            }
+        }
+        totals.put("dispatchLatencyBuckets", buckets);
+        List<Map<String, Object>> workers = new ArrayList<>();
+        for (WorkerMetrics worker : run.getWorkers()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("id", worker.getId());
+            entry.put("fatigue", worker.getFatigue());
+            entry.put("timeUsedNanos", worker.getTimeUsedNanos());
+            entry.put("timeIdleNanos", worker.getTimeIdleNanos());
+            workers.add(entry);
+        }
+        totals.put("workers", workers);
+        totals.put("nodeMetrics", nodes);
+        runs.add(totals);
+        nodes = new ArrayList<>();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (format == Format.JSON) {
+            mapper.writeValue(path.toFile(), runs);
+            return;
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(path)) {
+            boolean header = true;
+            for (int r = 0; r < runs.size(); r++) {
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> rows = (List<Map<String, Object>>) runs.get(r).get("nodeMetrics");
+                for (Map<String, Object> row : rows) {
+                    if (header) {
+                        out.write("run," + String.join(",", row.keySet()));
+                        out.newLine();
+                        header = false;
+                    }
+                    StringBuilder line = new StringBuilder(Integer.toString(r));
+                    for (Object value : row.values()) {
+                        line.append(',');
+                        // the inputs list is the only value with commas in it
+                        line.append((value instanceof List) ? "\"" + value.toString().replace(" ", "") + "\"" : value);
+                    }
+                    out.write(line.toString());
+                    out.newLine();
+                }
+            }
+        }
+    }
+}
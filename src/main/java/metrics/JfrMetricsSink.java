@@ -0,0 +1,119 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Emits the metrics as JDK Flight Recorder events, lga.Node and lga.Run, so they line up with the
+ * JVM's own events (GC, lock contention, allocation samples) in a recording, e.g. one started with
+ * java -XX:StartFlightRecording=filename=run.jfr. Events that the recording does not enable cost nothing.
+ */
+public class JfrMetricsSink implements MetricsSink {
+
+    @Name("lga.Node")
+    @Label("Computation Node")
+    @Description("One node computed by the linear algebra engine")
+    @Category("LGA")
+    @StackTrace(false)
+    static final class NodeEvent extends Event {
+        @Label("Id")
+        int id;
+        @Label("Type")
+        String type;
+        @Label("Tasks")
+        int tasks;
+        @Label("Rows")
+        long rows;
+        @Label("Columns")
+        long columns;
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+        @Label("Busy")
+        @Timespan(Timespan.NANOSECONDS)
+        long busy;
+        @Label("Queue Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long queueWait;
+        @Label("Lock Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long lockWait;
+        @Label("Flops")
+        double flops;
+        @Label("Bytes Moved")
+        @DataAmount
+        long bytesMoved;
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+        @Label("Bound")
+        String bound;
+    }
+
+    @Name("lga.Run")
+    @Label("Engine Run")
+    @Category("LGA")
+    @StackTrace(false)
+    static final class RunEvent extends Event {
+        @Label("Wall Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long wall;
+        @Label("Nodes")
+        int nodes;
+        @Label("Dispatch Latency p50 Upper Bound")
+        @Timespan(Timespan.NANOSECONDS)
+        long dispatchP50;
+        @Label("Dispatch Latency p99 Upper Bound")
+        @Timespan(Timespan.NANOSECONDS)
+        long dispatchP99;
+        @Label("Lock Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long lockWait;
+        @Label("Pooled Bytes Allocated")
+        @DataAmount
+        long pooledBytesAllocated;
+    }
+
+    @Override
+    public void nodeResolved(NodeMetrics node) {
+        NodeEvent event = new NodeEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.id = node.getId();
+        event.type = node.getType();
+        event.tasks = node.getTasks();
+        event.rows = node.getRows();
+        event.columns = node.getColumns();
+        event.latency = node.getLatencyNanos();
+        event.busy = node.getBusyNanos();
+        event.queueWait = node.getQueueWaitNanos();
+        event.lockWait = node.getLockWaitNanos();
+        event.flops = node.getFlops();
+        event.bytesMoved = node.getBytesMoved();
+        event.allocated = node.getAllocatedBytes();
+        event.bound = node.bound().name();
+        event.commit();
+    }
+
+    @Override
+    public void runFinished(RunMetrics run) {
+        RunEvent event = new RunEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.wall = run.getWallNanos();
+        event.nodes = run.getNodes();
+        event.dispatchP50 = run.getDispatchLatency().quantileUpperBound(0.5);
+        event.dispatchP99 = run.getDispatchLatency().quantileUpperBound(0.99);
+        event.lockWait = run.getLockWaitNanos();
+        event.pooledBytesAllocated = run.getPooledBytesAllocated();
+        event.commit();
+    }
+}
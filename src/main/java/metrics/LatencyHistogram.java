@@ -0,0 +1,90 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations in nanoseconds, with one bucket per power of two: bucket b counts
+ * the durations in [2^b, 2^(b+1)), and bucket 0 also counts 0. Coarse, but recording is a single
+ * atomic increment, so it can sit on the path of every task.
+ */
+public final class LatencyHistogram {
+
+    static final int BUCKETS = 63; // the last one starts at 2^62 and holds everything above
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(nanos));
+    }
+
+    static int bucket(long nanos) {
+        return (nanos <= 0) ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            count += counts.get(b);
+        }
+        return count;
+    }
+
+    /**
+     * Number of durations in bucket b, i.e. in [2^b, 2^(b+1)) nanoseconds.
+     */
+    public long getBucketCount(int b) {
+        return counts.get(b);
+    }
+
+    /**
+     * The upper end of the bucket holding the q-quantile (0 < q <= 1), so the true quantile is at most
+     * this and more than half of it. 0 for an empty histogram.
+     */
+    public long quantileUpperBound(double q) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(q * count);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts.get(b);
+            if (seen >= rank) {
+                return (b >= 62) ? Long.MAX_VALUE : (1L << (b + 1));
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * The non-empty buckets, e.g. "[1us, 2us): 12, [2us, 4us): 3".
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int b = 0; b < BUCKETS; b++) {
+            long count = counts.get(b);
+            if (count > 0) {
+                if (text.length() > 0) {
+                    text.append(", ");
+                }
+                text.append('[').append(format(b == 0 ? 0 : 1L << b)).append(", ")
+                        .append(format((b >= 62) ? Long.MAX_VALUE : 1L << (b + 1))).append("): ").append(count);
+            }
+        }
+        return text.toString();
+    }
+
+    private static String format(long nanos) {
+        if (nanos >= 1_000_000_000L) {
+            return (nanos / 1_000_000_000L) + "s";
+        }
+        if (nanos >= 1_000_000L) {
+            return (nanos / 1_000_000L) + "ms";
+        }
+        if (nanos >= 1_000L) {
+            return (nanos / 1_000L) + "us";
+        }
+        return nanos + "ns";
+    }
+}
@@ -0,0 +1,53 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time threads spent blocked on the locks of memory.SharedVector. Only contended acquisitions are
+ * timed: the vector first tries the lock and reads the clock only when that fails, so uncontended
+ * locking costs nothing extra. Waits are timed only while some run that records metrics has enabled
+ * timing (see enable()), so without a MetricsSink a contended lock is a plain lock() as well.
+ * Kept per thread, so a task can tell its own wait, and in total.
+ */
+public final class LockWaits {
+
+    private static final LongAdder total = new LongAdder();
+    private static final ThreadLocal<long[]> perThread = ThreadLocal.withInitial(() -> new long[1]);
+    private static final AtomicInteger enabled = new AtomicInteger(0); // runs that currently want waits timed
+
+    private LockWaits() {
+    }
+
+    /**
+     * Starts timing waits for the caller; every call must be matched by one disable(). Concurrent runs
+     * (e.g. batch jobs) each enable timing, and it stays on until the last of them is done.
+     */
+    public static void enable() {
+        enabled.incrementAndGet();
+    }
+
+    public static void disable() {
+        enabled.decrementAndGet();
+    }
+
+    /** Whether waits should be timed and recorded. */
+    public static boolean isEnabled() {
+        return enabled.get() > 0;
+    }
+
+    public static void record(long nanos) {
+        total.add(nanos);
+        perThread.get()[0] += nanos;
+    }
+
+    /** Nanoseconds the calling thread has waited so far. */
+    public static long currentThread() {
+        return perThread.get()[0];
+    }
+
+    /** Nanoseconds all threads have waited so far. */
+    public static long total() {
+        return total.sum();
+    }
+}
@@ -0,0 +1,109 @@
+package metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-process sink: keeps the metrics of the last finished run for inspection, e.g. by tests or a
+ * long-running caller, and summarizes them in getReport().
+ */
+public class MetricsRegistry implements MetricsSink {
+
+    private static final int REPORTED_NODES = 5;
+
+    private List<NodeMetrics> pending = new ArrayList<>();
+    private List<NodeMetrics> nodes = List.of();
+    private RunMetrics run = null;
+    private int runs = 0;
+
+    @Override
+    public synchronized void nodeResolved(NodeMetrics node) {
+        pending.add(node);
+    }
+
+    @Override
+    public synchronized void runFinished(RunMetrics run) {
+        this.nodes = List.copyOf(pending);
+        this.pending = new ArrayList<>();
+        this.run = run;
+        runs++;
+    }
+
+    /** The nodes of the last finished run, in the order they were resolved. */
+    public synchronized List<NodeMetrics> getNodes() {
+        return nodes;
+    }
+
+    /** The totals of the last finished run, or null before the first one. */
+    public synchronized RunMetrics getRun() {
+        return run;
+    }
+
+    public synchronized int getRunCount() {
+        return runs;
+    }
+
+    /**
+     * Busy time of the node with the given id and of every node computed for it, each counted once.
+     */
+    public synchronized long getSubtreeBusyNanos(int id) {
+        Map<Integer, NodeMetrics> byId = index();
+        return subtreeBusy(byId.get(id), byId, new HashSet<>());
+    }
+
+    private static long subtreeBusy(NodeMetrics node, Map<Integer, NodeMetrics> byId, Set<Integer> counted) {
+        if (node == null || !counted.add(node.getId())) {
+            return 0;
+        }
+        long busy = node.getBusyNanos();
+        for (int input : node.getInputs()) {
+            busy += subtreeBusy(byId.get(input), byId, counted);
+        }
+        return busy;
+    }
+
+    /**
+     * The run's totals, then its slowest nodes with what they were bound by.
+     */
+    public synchronized String getReport() {
+        if (run == null) {
+            return "Metrics: no run finished";
+        }
+        StringBuilder report = new StringBuilder(String.format(
+                "Metrics: %d node(s) in %.3f ms, dispatch latency p50 < %s, p99 < %s, lock wait %.3f ms,"
+                        + " %d pooled byte(s) allocated%n",
+                run.getNodes(), run.getWallNanos() / 1e6,
+                micros(run.getDispatchLatency().quantileUpperBound(0.5)),
+                micros(run.getDispatchLatency().quantileUpperBound(0.99)),
+                run.getLockWaitNanos() / 1e6, run.getPooledBytesAllocated()));
+        Map<Integer, NodeMetrics> byId = index();
+        List<NodeMetrics> slowest = new ArrayList<>(nodes);
+        slowest.sort(Comparator.comparingLong(NodeMetrics::getLatencyNanos).reversed());
+        for (NodeMetrics node : slowest.subList(0, Math.min(REPORTED_NODES, slowest.size()))) {
+            report.append(String.format("  %s#%d: %.3f ms (subtree busy %.3f ms), %d task(s), %.3g rows/s,"
+                            + " %.3g flops, %d byte(s) moved, %d allocated, queue wait %.3f ms, lock wait %.3f ms -> %s%n",
+                    node.getType(), node.getId(), node.getLatencyNanos() / 1e6,
+                    subtreeBusy(node, byId, new HashSet<>()) / 1e6, node.getTasks(), node.getRowsPerSecond(),
+                    node.getFlops(), node.getBytesMoved(), node.getAllocatedBytes(),
+                    node.getQueueWaitNanos() / 1e6, node.getLockWaitNanos() / 1e6, node.bound()));
+        }
+        return report.toString();
+    }
+
+    private Map<Integer, NodeMetrics> index() {
+        Map<Integer, NodeMetrics> byId = new HashMap<>();
+        for (NodeMetrics node : nodes) {
+            byId.put(node.getId(), node);
+        }
+        return byId;
+    }
+
+    private static String micros(long nanos) {
+        return (nanos == Long.MAX_VALUE) ? "inf" : String.format("%.1fus", nanos / 1e3);
+    }
+}
@@ -0,0 +1,81 @@
+package metrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Receives the metrics of an engine run: one NodeMetrics per computed node, as soon as the node is
+ * resolved, and one RunMetrics when the run ends. Implementations: MetricsRegistry (kept in memory),
+ * FileMetricsSink (JSON or CSV file) and JfrMetricsSink (JDK Flight Recorder events).
+ * Both methods are called by the thread running the engine, never concurrently for one run.
+ * Engines running at once should each send to their own wholeRuns() wrapper of a shared sink.
+ */
+public interface MetricsSink {
+
+    void nodeResolved(NodeMetrics node);
+
+    void runFinished(RunMetrics run);
+
+    /**
+     * Flushes whatever the sink buffers, e.g. writes its file. The engine never calls this, since a sink
+     * may outlive one run; whoever created the sink closes it.
+     */
+    default void close() throws IOException {
+    }
+
+    /**
+     * A sink for one of several engines running at once: it holds back the nodes of a run and passes
+     * the whole run on to sink in one go, so the runs of different engines do not interleave there.
+     * Closing it does nothing; sink is closed by whoever created it.
+     */
+    static MetricsSink wholeRuns(MetricsSink sink) {
+        List<NodeMetrics> nodes = new ArrayList<>();
+        return new MetricsSink() {
+            @Override
+            public void nodeResolved(NodeMetrics node) {
+                nodes.add(node);
+            }
+
+            @Override
+            public void runFinished(RunMetrics run) {
+                synchronized (sink) {
+                    for (NodeMetrics node : nodes) {
+                        sink.nodeResolved(node);
+                    }
+                    sink.runFinished(run);
+                }
+                nodes.clear();
+            }
+        };
+    }
+
+    /**
+     * A sink that passes everything on to each of sinks, in order.
+     */
+    static MetricsSink all(List<MetricsSink> sinks) {
+        List<MetricsSink> targets = List.copyOf(sinks);
+        return new MetricsSink() {
+            @Override
+            public void nodeResolved(NodeMetrics node) {
+                for (MetricsSink sink : targets) {
+                    sink.nodeResolved(node);
+                }
+            }
+
+            @Override
+            public void runFinished(RunMetrics run) {
+                for (MetricsSink sink : targets) {
+                    sink.runFinished(run);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                for (MetricsSink sink : targets) {
+                    sink.close();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,150 @@
+package metrics;
+
+import java.util.List;
+
+/**
+ * What one computed node cost. Times are in nanoseconds:
+ * latency runs from planning the node to resolving it, busy is the time its tasks ran (summed over
+ * workers), queueWait the time they waited between dispatch and their start, and lockWait the part of
+ * busy spent blocked on SharedVector locks. flops and bytesMoved are estimated from the shapes, and
+ * allocatedBytes is measured on the threads that planned and ran the node.
+ * Nodes are identified by id, unique within a run, and inputs lists the ids of the operands that
+ * were computed in the same run, so subtrees can be added up (see MetricsRegistry.getSubtreeBusyNanos()).
+ */
+public final class NodeMetrics {
+
+    /**
+     * What a node's time mostly went to, by bound().
+     */
+    public enum Bound {
+        LOCKS, DISPATCH, MEMORY, COMPUTE
+    }
+
+    // below this many flops per byte moved a kernel is taken to be limited by memory bandwidth
+    static final double MEMORY_BOUND_INTENSITY = 1.0;
+
+    private final int id;
+    private final String type;
+    private final List<Integer> inputs;
+    private final int tasks;
+    private final int threads;
+    private final long rows;
+    private final long columns;
+    private final long latencyNanos;
+    private final long busyNanos;
+    private final long queueWaitNanos;
+    private final long maxQueueWaitNanos;
+    private final long lockWaitNanos;
+    private final double flops;
+    private final long bytesMoved;
+    private final long allocatedBytes;
+
+    public NodeMetrics(int id, String type, List<Integer> inputs, int tasks, int threads, long rows, long columns,
+                       long latencyNanos, long busyNanos, long queueWaitNanos, long maxQueueWaitNanos,
+                       long lockWaitNanos, double flops, long bytesMoved, long allocatedBytes) {
+        this.id = id;
+        this.type = type;
+        this.inputs = List.copyOf(inputs);
+        this.tasks = tasks;
+        this.threads = threads;
+        this.rows = rows;
+        this.columns = columns;
+        this.latencyNanos = latencyNanos;
+        this.busyNanos = busyNanos;
+        this.queueWaitNanos = queueWaitNanos;
+        this.maxQueueWaitNanos = maxQueueWaitNanos;
+        this.lockWaitNanos = lockWaitNanos;
+        this.flops = flops;
+        this.bytesMoved = bytesMoved;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /** The node's ComputationNodeType, e.g. MULTIPLY or FUSED. */
+    public String getType() {
+        return type;
+    }
+
+    public List<Integer> getInputs() {
+        return inputs;
+    }
+
+    /** Dispatched tasks, i.e. chunks when chunking is on. */
+    public int getTasks() {
+        return tasks;
+    }
+
+    /** Workers of the executor that ran the tasks. */
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getColumns() {
+        return columns;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    public long getBusyNanos() {
+        return busyNanos;
+    }
+
+    public long getQueueWaitNanos() {
+        return queueWaitNanos;
+    }
+
+    public long getMaxQueueWaitNanos() {
+        return maxQueueWaitNanos;
+    }
+
+    public long getLockWaitNanos() {
+        return lockWaitNanos;
+    }
+
+    public double getFlops() {
+        return flops;
+    }
+
+    public long getBytesMoved() {
+        return bytesMoved;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public double getRowsPerSecond() {
+        return (latencyNanos > 0) ? rows * 1e9 / latencyNanos : 0;
+    }
+
+    /**
+     * A rough diagnosis: LOCKS when a quarter of the busy time was spent waiting for locks; DISPATCH
+     * when the workers that could have run the tasks were busy with them for less than half of the
+     * latency, i.e. the time went to planning, handing off and waking up; MEMORY when the kernel does
+     * less than MEMORY_BOUND_INTENSITY flops per byte moved; COMPUTE otherwise (also for a node
+     * without tasks, like a zero-copy TRANSPOSE). With whole-tree
+     * evaluation nodes share the workers, so a node that waited behind others also shows as DISPATCH.
+     */
+    public Bound bound() {
+        if (busyNanos > 0 && lockWaitNanos * 4 >= busyNanos) {
+            return Bound.LOCKS;
+        }
+        int usable = Math.max(1, Math.min(tasks, threads));
+        if (tasks > 0 && busyNanos * 2 < latencyNanos * usable) {
+            return Bound.DISPATCH;
+        }
+        if (bytesMoved > 0 && flops / bytesMoved < MEMORY_BOUND_INTENSITY) {
+            return Bound.MEMORY;
+        }
+        return Bound.COMPUTE;
+    }
+}
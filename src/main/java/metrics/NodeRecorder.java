@@ -0,0 +1,97 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the metrics of one node while it is computed. The engine creates it when it starts planning
+ * the node, calls planned() once the tasks exist, runs the tasks returned by wrap() instead of its own,
+ * and calls finish() once the node is resolved.
+ */
+public final class NodeRecorder {
+
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    private final LatencyHistogram dispatchLatency;
+    private final long start = System.nanoTime();
+    private final long allocatedAtStart = allocatedBytes();
+    private final AtomicInteger tasks = new AtomicInteger();
+    private final LongAdder busy = new LongAdder();
+    private final LongAdder queueWait = new LongAdder();
+    private final LongAccumulator maxQueueWait = new LongAccumulator(Math::max, 0);
+    private final LongAdder lockWait = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+
+    /**
+     * Starts recording a node; the dispatch latency of its tasks is also added to dispatchLatency,
+     * which is shared by the run.
+     */
+    public NodeRecorder(LatencyHistogram dispatchLatency) {
+        this.dispatchLatency = dispatchLatency;
+    }
+
+    /**
+     * Counts what the calling thread allocated since the recorder was created, i.e. while planning.
+     */
+    public void planned() {
+        allocated.add(allocatedBytes() - allocatedAtStart);
+    }
+
+    /**
+     * The tasks, each timed from now (their dispatch) to its start and through its run.
+     */
+    public List<Runnable> wrap(List<Runnable> nodeTasks) {
+        long dispatched = System.nanoTime();
+        List<Runnable> wrapped = new ArrayList<>(nodeTasks.size());
+        for (Runnable task : nodeTasks) {
+            wrapped.add(() -> {
+                long started = System.nanoTime();
+                long waited = started - dispatched;
+                queueWait.add(waited);
+                maxQueueWait.accumulate(waited);
+                dispatchLatency.record(waited);
+                long locksBefore = LockWaits.currentThread();
+                long allocatedBefore = allocatedBytes();
+                try {
+                    task.run();
+                }
+                finally {
+                    busy.add(System.nanoTime() - started);
+                    lockWait.add(LockWaits.currentThread() - locksBefore);
+                    allocated.add(allocatedBytes() - allocatedBefore);
+                }
+            });
+        }
+        tasks.addAndGet(nodeTasks.size());
+        return wrapped;
+    }
+
+    /**
+     * The node's metrics, with its latency ending now. The shape-derived values come from the engine.
+     */
+    public NodeMetrics finish(int id, String type, List<Integer> inputs, int threads, long rows, long columns,
+                              double flops, long bytesMoved) {
+        return new NodeMetrics(id, type, inputs, tasks.get(), threads, rows, columns, System.nanoTime() - start,
+                busy.sum(), queueWait.sum(), maxQueueWait.get(), lockWait.sum(), flops, bytesMoved, allocated.sum());
+    }
+
+    private static long allocatedBytes() {
+        return (THREADS != null) ? THREADS.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return null; // not a HotSpot-like JVM: allocations read as 0
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+}
@@ -0,0 +1,53 @@
+package metrics;
+
+import java.util.List;
+
+/**
+ * Totals of one engine run: its wall time, the number of computed nodes, the dispatch latency of every
+ * task (from dispatch to start), the time spent waiting for locks, the bytes the buffer pool had to
+ * allocate, and the workers' state at the end.
+ */
+public final class RunMetrics {
+
+    private final long wallNanos;
+    private final int nodes;
+    private final LatencyHistogram dispatchLatency;
+    private final long lockWaitNanos;
+    private final long pooledBytesAllocated;
+    private final List<WorkerMetrics> workers;
+
+    public RunMetrics(long wallNanos, int nodes, LatencyHistogram dispatchLatency, long lockWaitNanos,
+                      long pooledBytesAllocated, List<WorkerMetrics> workers) {
+        this.wallNanos = wallNanos;
+        this.nodes = nodes;
+        this.dispatchLatency = dispatchLatency;
+        this.lockWaitNanos = lockWaitNanos;
+        this.pooledBytesAllocated = pooledBytesAllocated;
+        this.workers = List.copyOf(workers);
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    public LatencyHistogram getDispatchLatency() {
+        return dispatchLatency;
+    }
+
+    /** Lock waits of all threads during the run, including those of other engines running at the same time. */
+    public long getLockWaitNanos() {
+        return lockWaitNanos;
+    }
+
+    public long getPooledBytesAllocated() {
+        return pooledBytesAllocated;
+    }
+
+    public List<WorkerMetrics> getWorkers() {
+        return workers;
+    }
+}
@@ -0,0 +1,36 @@
+package metrics;
+
+/**
+ * One worker of a scheduling.TiredExecutor, as in its worker report: fatigue and nanoseconds spent
+ * running tasks and idle.
+ */
+public final class WorkerMetrics {
+
+    private final int id;
+    private final double fatigue;
+    private final long timeUsedNanos;
+    private final long timeIdleNanos;
+
+    public WorkerMetrics(int id, double fatigue, long timeUsedNanos, long timeIdleNanos) {
+        this.id = id;
+        this.fatigue = fatigue;
+        this.timeUsedNanos = timeUsedNanos;
+        this.timeIdleNanos = timeIdleNanos;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public double getFatigue() {
+        return fatigue;
+    }
+
+    public long getTimeUsedNanos() {
+        return timeUsedNanos;
+    }
+
+    public long getTimeIdleNanos() {
+        return timeIdleNanos;
+    }
+}
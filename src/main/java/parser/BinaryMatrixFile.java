@@ -0,0 +1,231 @@
+package parser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Binary container for a single matrix, read and written through memory-mapped FileChannels.
+ * <pre>
+ *   offset 0   int    magic "LGAM"
+ *   offset 4   short  format version (1)
+ *   offset 6   short  layout: 0 = row-major, 1 = column-major
+ *   offset 8   int    rows
+ *   offset 12  int    cols
+ *   offset 16  double[rows * cols], little-endian, in the given layout
+ * </pre>
+ * A column-major file holds the columns one after another, so a transposed result is written
+ * as it is stored and read back as a transposed node (see ComputationNode.isTransposed()).
+ * An instance describes a file whose header has been validated; the data is only read on demand.
+ */
+public final class BinaryMatrixFile {
+
+    public static final int MAGIC = 0x4C47414D; // "LGAM"
+    public static final short VERSION = 1;
+    public static final short ROW_MAJOR = 0;
+    public static final short COLUMN_MAJOR = 1;
+    public static final int HEADER_BYTES = 16;
+
+    // a single mapping is limited to 2 GB, so larger matrices are mapped in windows of whole vectors
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    private final Path path;
+    private final short layout;
+    private final int rows;
+    private final int cols;
+
+    private BinaryMatrixFile(Path path, short layout, int rows, int cols) {
+        this.path = path;
+        this.layout = layout;
+        this.rows = rows;
+        this.cols = cols;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public boolean isColumnMajor() {
+        return layout == COLUMN_MAJOR;
+    }
+
+    /**
+     * Validates the header and the file size, without reading the data.
+     */
+    public static BinaryMatrixFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a binary matrix file (too short): " + path);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a binary matrix file (bad magic): " + path);
+            }
+            if (header.getShort(4) != VERSION) {
+                throw new IOException("Unsupported binary matrix version " + header.getShort(4) + ": " + path);
+            }
+            short layout = header.getShort(6);
+            int rows = header.getInt(8);
+            int cols = header.getInt(12);
+            if (rows < 0 || cols < 0 || (layout != ROW_MAJOR && layout != COLUMN_MAJOR)) {
+                throw new IOException("Corrupt binary matrix header: " + path);
+            }
+            long expected = HEADER_BYTES + (long) rows * cols * Double.BYTES;
+            if (channel.size() != expected) {
+                throw new IOException("Binary matrix file has " + channel.size() + " bytes, expected " + expected + ": " + path);
+            }
+            return new BinaryMatrixFile(path, layout, rows, cols);
+        }
+    }
+
+    /**
+     * Creates (or truncates) a row-major file of rows x cols zeros, to be filled through a mapping
+     * of its data region.
+     */
+    public static BinaryMatrixFile create(Path path, int rows, int cols) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(channel, ROW_MAJOR, rows, cols);
+            long size = HEADER_BYTES + (long) rows * cols * Double.BYTES;
+            if (size > HEADER_BYTES) {
+                channel.write(ByteBuffer.allocate(1), size - 1); // sizes the file; the rest reads as zeros
+            }
+        }
+        return new BinaryMatrixFile(path, ROW_MAJOR, rows, cols);
+    }
+
+    /**
+     * Reads the file into a MATRIX node. The data itself is loaded on first use (see ComputationNode).
+     */
+    public static ComputationNode read(Path path) throws IOException {
+        return new ComputationNode(open(path));
+    }
+
+    /**
+     * Reads the data as stored: rows for a row-major file, columns for a column-major one.
+     * The doubles are bulk-copied out of the mapping, never parsed.
+     */
+    double[][] readStored() throws IOException {
+        int vectors = isColumnMajor() ? cols : rows;
+        int vectorLength = isColumnMajor() ? rows : cols;
+        double[][] stored = new double[vectors][vectorLength];
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int perWindow = vectorsPerWindow(vectorLength);
+            for (int first = 0; first < vectors; first += perWindow) {
+                int count = Math.min(perWindow, vectors - first);
+                DoubleBuffer doubles = map(channel, FileChannel.MapMode.READ_ONLY, first, count, vectorLength);
+                for (int v = first; v < first + count; v++) {
+                    doubles.get(stored[v]);
+                }
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * The rows of a row-major file, each read from the mapping when next() is called.
+     * The returned array is reused, and is only valid until the next call to next().
+     */
+    Iterator<double[]> rowIterator() throws IOException {
+        if (isColumnMajor()) {
+            throw new IllegalStateException("Rows of a column-major file are not contiguous: " + path);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        if (rows == 0) {
+            channel.close();
+        }
+        int perWindow = vectorsPerWindow(cols);
+        double[] row = new double[cols];
+        return new Iterator<>() {
+            private int next = 0;
+            private DoubleBuffer window = null;
+
+            @Override
+            public boolean hasNext() {
+                return next < rows;
+            }
+
+            @Override
+            public double[] next() {
+                if (next >= rows) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    if (next % perWindow == 0) {
+                        window = map(channel, FileChannel.MapMode.READ_ONLY, next, Math.min(perWindow, rows - next), cols);
+                    }
+                    window.get(row);
+                    next++;
+                    if (next == rows) {
+                        channel.close(); // the mappings stay valid after the channel is closed
+                    }
+                    return row;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Writes the node's matrix. A transposed node is written column-major, straight from its stored matrix.
+     */
+    public static void write(ComputationNode node, Path path) throws IOException {
+        double[][] stored = node.getStoredMatrix();
+        short layout = node.isTransposed() ? COLUMN_MAJOR : ROW_MAJOR;
+        int vectorLength = (stored.length > 0) ? stored[0].length : 0;
+        int rows = node.isTransposed() ? vectorLength : stored.length;
+        int cols = node.isTransposed() ? stored.length : vectorLength;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(channel, layout, rows, cols);
+            int perWindow = vectorsPerWindow(vectorLength);
+            for (int first = 0; first < stored.length; first += perWindow) {
+                int count = Math.min(perWindow, stored.length - first);
+                DoubleBuffer doubles = map(channel, FileChannel.MapMode.READ_WRITE, first, count, vectorLength);
+                for (int v = first; v < first + count; v++) {
+                    if (stored[v].length != vectorLength) {
+                        throw new IllegalArgumentException("Inconsistent row sizes in matrix.");
+                    }
+                    doubles.put(stored[v]);
+                }
+            }
+        }
+    }
+
+    private static void writeHeader(FileChannel channel, short layout, int rows, int cols) throws IOException {
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putShort(VERSION).putShort(layout).putInt(rows).putInt(cols);
+    }
+
+    /**
+     * Maps count vectors of vectorLength doubles, starting at vector first.
+     */
+    private static DoubleBuffer map(FileChannel channel, FileChannel.MapMode mode, int first, int count, int vectorLength)
+            throws IOException {
+        MappedByteBuffer window = channel.map(mode, HEADER_BYTES + (long) first * vectorLength * Double.BYTES,
+                (long) count * vectorLength * Double.BYTES);
+        return window.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+
+    private static int vectorsPerWindow(int vectorLength) {
+        long vectorBytes = Math.max(1, (long) vectorLength * Double.BYTES);
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, WINDOW_BYTES / vectorBytes));
+    }
+}
@@ -0,0 +1,119 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Planning pass that merges identical subtrees, found by their Fingerprint, into one node that every
+ * parent of the copies reads, which turns the tree into a DAG. Afterwards each node knows how many parents
+ * read it (see ComputationNode.isShared()), so the engine computes a merged subtree once and does not
+ * overwrite or recycle its result before the last reader has run.
+ * Fingerprints are memoized per node, like shapes in ShapeInference, so the tree must not be changed
+ * in between.
+ */
+public class CommonSubexpressions {
+
+    private final Map<ComputationNode, Fingerprint> fingerprints = new IdentityHashMap<>();
+    private int subtreesMerged = 0;
+    private int nodesRemoved = 0;
+
+    /**
+     * Merges the duplicate subtrees of the tree rooted at root and counts the readers of every node.
+     */
+    public void eliminate(ComputationNode root) {
+        canonical(root, new HashMap<>());
+        Map<ComputationNode, Integer> readers = new IdentityHashMap<>();
+        countReaders(root, readers);
+        for (Map.Entry<ComputationNode, Integer> entry : readers.entrySet()) {
+            entry.getKey().setReaders(entry.getValue());
+        }
+    }
+
+    /**
+     * The fingerprint of the subtree rooted at node. Leaves are hashed by content, so the first call
+     * reads every matrix once.
+     */
+    public Fingerprint fingerprint(ComputationNode node) {
+        Fingerprint fingerprint = fingerprints.get(node);
+        if (fingerprint == null) {
+            if (node.getNodeType() == ComputationNodeType.MATRIX) {
+                fingerprint = Fingerprint.ofMatrix(node);
+            }
+            else {
+                List<Fingerprint> operands = new ArrayList<>(node.getChildren().size());
+                for (ComputationNode child : node.getChildren()) {
+                    operands.add(fingerprint(child));
+                }
+                fingerprint = Fingerprint.ofOperation(node, operands);
+            }
+            fingerprints.put(node, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    public int getSubtreesMerged() {
+        return subtreesMerged;
+    }
+
+    public int getNodesRemoved() {
+        return nodesRemoved;
+    }
+
+    public String getReport() {
+        return String.format("Common subexpressions: %d duplicate subtree(s) merged, %d node(s) removed",
+                subtreesMerged, nodesRemoved);
+    }
+
+    /**
+     * The node that stands for node's subtree: the first one seen with the same fingerprint, or node
+     * itself, whose children are replaced by theirs.
+     */
+    private ComputationNode canonical(ComputationNode node, Map<Fingerprint, ComputationNode> seen) {
+        Fingerprint fingerprint = fingerprint(node);
+        ComputationNode first = seen.get(fingerprint);
+        if (first != null) {
+            subtreesMerged++;
+            nodesRemoved += size(node);
+            return first;
+        }
+        List<ComputationNode> children = node.getChildren();
+        if (children != null) {
+            List<ComputationNode> merged = new ArrayList<>(children.size());
+            boolean changed = false;
+            for (ComputationNode child : children) {
+                ComputationNode replacement = canonical(child, seen);
+                merged.add(replacement);
+                changed |= replacement != child;
+            }
+            if (changed) {
+                node.setChildren(merged);
+            }
+        }
+        seen.put(fingerprint, node);
+        return node;
+    }
+
+    private static void countReaders(ComputationNode node, Map<ComputationNode, Integer> readers) {
+        if (node.getChildren() == null) {
+            return;
+        }
+        for (ComputationNode child : node.getChildren()) {
+            if (readers.merge(child, 1, Integer::sum) == 1) {
+                countReaders(child, readers);
+            }
+        }
+    }
+
+    private static int size(ComputationNode node) {
+        int size = 1;
+        if (node.getChildren() != null) {
+            for (ComputationNode child : node.getChildren()) {
+                size += size(child);
+            }
+        }
+        return size;
+    }
+}
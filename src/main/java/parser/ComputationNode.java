@@ -1,5 +1,10 @@
 package parser;
 
+import memory.SharedMatrix;
+import memory.SparseMatrix;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 public class ComputationNode {
@@ -7,6 +12,13 @@ public class ComputationNode {
     private ComputationNodeType nodeType;
     private List<ComputationNode> children = null;
     private double[][] matrix = null; // only used for MATRIX nodes
+    private boolean negated = false; // result is negated by the operation's own kernel (set by TreeOptimizer)
+    private boolean transposed = false; // matrix holds the transpose of this node's value (a zero-copy TRANSPOSE result)
+    private BinaryMatrixFile file = null; // MATRIX nodes read from a binary file; matrix is loaded on first use
+    private SparseMatrix sparse = null; // MATRIX nodes stored sparse; matrix is densified on first use
+    private SharedMatrix shared = null; // results handed over by the engine; matrix takes its rows on first use
+    private ComputationNode fusedExpression = null; // FUSED nodes: the element-wise subtree whose inputs are the children
+    private int readers = 1; // parents reading this node's result, more than one once CommonSubexpressions merged it
 
     public ComputationNode(String operatorStr, List<ComputationNode> children) throws IllegalArgumentException {
         this.nodeType = mapOperator(operatorStr);
@@ -33,11 +45,38 @@ public class ComputationNode {
         this.children = children;
     }
 
+    /**
+     * A FUSED node computing expression, an element-wise subtree whose frontier nodes are inputs
+     * (see ElementwiseFusion).
+     */
+    ComputationNode(ComputationNode expression, List<ComputationNode> inputs) {
+        this.nodeType = ComputationNodeType.FUSED;
+        this.fusedExpression = expression;
+        this.children = inputs;
+    }
+
     public ComputationNode(double[][] matrix) {
         this.nodeType = ComputationNodeType.MATRIX;
         this.matrix = matrix;
     }
 
+    /**
+     * A MATRIX node whose data stays in the file until getStoredMatrix() or getMatrix() first needs it.
+     */
+    public ComputationNode(BinaryMatrixFile file) {
+        this.nodeType = ComputationNodeType.MATRIX;
+        this.file = file;
+        this.transposed = file.isColumnMajor(); // a column-major file stores the columns, i.e. the transpose
+    }
+
+    /**
+     * A MATRIX node stored sparse, until getStoredMatrix() or getMatrix() first needs it dense.
+     */
+    public ComputationNode(SparseMatrix sparse) {
+        this.nodeType = ComputationNodeType.MATRIX;
+        this.sparse = sparse;
+    }
+
     public ComputationNodeType getNodeType() {
         return nodeType;
     }
@@ -46,6 +85,75 @@ public class ComputationNode {
         return children;
     }
 
+    void setChildren(List<ComputationNode> children) {
+        this.children = children;
+    }
+
+    /**
+     * For a FUSED node, the element-wise subtree it computes. Its frontier nodes, the first nodes
+     * on every path that are not ADD, SUBTRACT, NEGATE or TRANSPOSE, are the same objects as the children,
+     * so once the children are resolved the expression reads their matrices.
+     */
+    public ComputationNode getFusedExpression() {
+        return fusedExpression;
+    }
+
+    /**
+     * Whether the operation must negate its result as part of its own kernel,
+     * e.g. a MULTIPLY that absorbed the NEGATE above it.
+     */
+    public boolean isNegated() {
+        return negated;
+    }
+
+    void setNegated(boolean negated) {
+        this.negated = negated;
+    }
+
+    /**
+     * Whether more than one node reads this node's result (see CommonSubexpressions), or something outside
+     * the tree holds on to it (see retain()). The result of a shared node must not be overwritten or recycled.
+     */
+    public boolean isShared() {
+        return readers > 1;
+    }
+
+    void setReaders(int readers) {
+        this.readers = readers;
+    }
+
+    /**
+     * Adds a reader from outside the tree, e.g. a cache whose matrix this node holds, which is never removed.
+     */
+    public void retain() {
+        readers++;
+    }
+
+    /**
+     * Called once by each reader after it has been computed. Returns true when no reader is left,
+     * i.e. when the result may be recycled.
+     */
+    public boolean removeReader() {
+        readers--;
+        return readers <= 0;
+    }
+
+    /**
+     * Turns this node into a copy of other, so a rewrite can replace the root in place.
+     * The number of readers is not copied: it belongs to the node's place in the tree.
+     */
+    void become(ComputationNode other) {
+        this.nodeType = other.nodeType;
+        this.children = other.children;
+        this.matrix = other.matrix;
+        this.negated = other.negated;
+        this.transposed = other.transposed;
+        this.file = other.file;
+        this.sparse = other.sparse;
+        this.shared = other.shared;
+        this.fusedExpression = other.fusedExpression;
+    }
+
     /**
      * Recursively finds the first resolvable node in the tree.
      * A resolvable node is defined as a node that is not of type MATRIX,
@@ -71,9 +179,10 @@ public class ComputationNode {
      * are nested in a left-associative manner.
      * For example, A + B + C becomes (A + B) + C.
      * Effectively, this converts n-ary operations (n > 2) into binary operations.
+     * FUSED nodes keep all their inputs.
      */
     public void associativeNesting() {
-        if (children != null && children.size() > 2) {
+        if (children != null && children.size() > 2 && nodeType != ComputationNodeType.FUSED) {
             ComputationNode lastChild = children.remove(children.size() - 1);
             ComputationNode newNode = new ComputationNode(nodeType, children);
             children = List.of(newNode, lastChild);
@@ -88,12 +197,137 @@ public class ComputationNode {
         this.nodeType = ComputationNodeType.MATRIX;
         this.children = null;
         this.matrix = matrix;
+        this.negated = false;
+        this.transposed = false;
+        this.file = null;
+        this.sparse = null;
+        this.shared = null;
+        this.fusedExpression = null;
+    }
+
+    /**
+     * Resolves this node to the matrix held in file, without reading it.
+     */
+    public void resolveToFile(BinaryMatrixFile file) {
+        resolve(null);
+        this.file = file;
+        this.transposed = file.isColumnMajor();
+    }
+
+    /**
+     * The binary file this MATRIX node's value comes from, or null for a node built from an in-memory matrix.
+     * Once the node has been used as an operand its loaded matrix may have been overwritten, so only
+     * the file is authoritative.
+     */
+    public BinaryMatrixFile getFile() {
+        return file;
+    }
+
+    /**
+     * Resolves this node to the transpose of stored without moving any data:
+     * stored is kept as is and only read (or copied) in the other layout when needed.
+     */
+    public void resolveTransposed(double[][] stored) {
+        resolve(stored);
+        this.transposed = true;
+    }
+
+    /**
+     * Resolves this node to a sparse matrix; with transposed, sparse holds the transpose of the value,
+     * as for resolveTransposed().
+     */
+    public void resolveSparse(SparseMatrix sparse, boolean transposed) {
+        resolve(null);
+        this.sparse = sparse;
+        this.transposed = transposed;
     }
 
+    /**
+     * The sparse matrix this MATRIX node holds, or null for a dense node. A sparse node becomes dense
+     * (and this returns null) once getStoredMatrix() or getMatrix() has been called on it.
+     */
+    public SparseMatrix getSparse() {
+        return sparse;
+    }
+
+    /**
+     * Resolves this node to the rows held by shared, a row-major SharedMatrix, so the next operation can
+     * keep working on them without loading them again. With transposed, the rows are those of the
+     * transpose, as for resolveTransposed(). A shared node (see isShared()) takes the rows out right
+     * away, since its readers may run at the same time.
+     */
+    public void resolveShared(SharedMatrix shared, boolean transposed) {
+        resolve(null);
+        this.shared = shared;
+        this.transposed = transposed;
+        if (isShared()) {
+            load();
+        }
+    }
+
+    /**
+     * The SharedMatrix holding this MATRIX node's stored rows, or null. The node gives it up (and this
+     * returns null) once getStoredMatrix() or getMatrix() has taken the rows out of it, without a copy.
+     */
+    public SharedMatrix getSharedMatrix() {
+        return shared;
+    }
+
+    /**
+     * Whether getStoredMatrix() (or getSparse(), or getSharedMatrix()) holds the transpose of this node's value.
+     */
+    public boolean isTransposed() {
+        return transposed;
+    }
+
+    /**
+     * The matrix as stored, without materializing a pending transpose (see isTransposed()).
+     */
+    public double[][] getStoredMatrix() {
+        load();
+        if (matrix == null) {
+            throw new IllegalStateException("This node does not contain a matrix.");
+        }
+        return matrix;
+    }
+
+    private void load() {
+        if (matrix == null && shared != null) {
+            matrix = shared.takeRowMajor();
+            shared = null;
+        }
+        if (matrix == null && sparse != null) {
+            matrix = sparse.toDense();
+            sparse = null;
+        }
+        if (matrix == null && file != null) {
+            try {
+                matrix = file.readStored();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read " + file.getPath(), e);
+            }
+        }
+    }
+
+    /**
+     * The node's value. A pending transpose is materialized here, once.
+     */
     public double[][] getMatrix() {
+        load();
         if (matrix == null) {
             throw new IllegalStateException("This node does not contain a matrix.");
         }
+        if (transposed) {
+            int rows = (matrix.length > 0) ? matrix[0].length : 0;
+            double[][] value = new double[rows][matrix.length];
+            for (int i = 0; i < matrix.length; i++) {
+                for (int j = 0; j < rows; j++) {
+                    value[j][i] = matrix[i][j];
+                }
+            }
+            matrix = value;
+            transposed = false;
+        }
         return matrix;
     }
 
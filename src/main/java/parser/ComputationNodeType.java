@@ -3,11 +3,15 @@ package parser;
 /**
  * Computation nodes hold either an operation to be applied, or a matrix (2D array).
  * Matrices are always leaf nodes, while operation nodes have children.
+ * SUBTRACT has no operator in the input format; it is only produced by TreeOptimizer,
+ * and FUSED only by ElementwiseFusion.
  */
 public enum ComputationNodeType {
     ADD,
     MULTIPLY,
     NEGATE,
     TRANSPOSE,
+    SUBTRACT,
+    FUSED,
     MATRIX,
 }
\ No newline at end of file
@@ -0,0 +1,103 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Planning pass that collapses every maximal element-wise subtree (ADD, SUBTRACT, NEGATE and TRANSPOSE)
+ * with at least two additions, subtractions or negations into one FUSED node. The engine computes a
+ * FUSED node with a single kernel that reads each input once and writes the result once, instead of
+ * one pass and one barrier per operation. Transposes only change how an input is indexed.
+ * The inputs of a FUSED node are the subtree's frontier nodes, e.g. matrices and products, which are
+ * fused on their own. Subtrees with a single arithmetic operation are left to the regular kernels.
+ */
+public class ElementwiseFusion {
+
+    private static final int MIN_OPERATIONS = 2;
+
+    private int subtreesFused = 0;
+    private int operationsFused = 0;
+
+    /**
+     * Fuses the element-wise subtrees of the tree rooted at root, replacing their roots in place.
+     */
+    public void fuse(ComputationNode root) {
+        if (root.getNodeType() == ComputationNodeType.MATRIX) {
+            return;
+        }
+        if (!isElementwise(root)) {
+            for (ComputationNode child : root.getChildren()) {
+                fuse(child);
+            }
+            return;
+        }
+        List<ComputationNode> inputs = new ArrayList<>();
+        int operations = operations(root);
+        for (ComputationNode child : root.getChildren()) {
+            operations += collect(child, inputs);
+        }
+        for (ComputationNode input : inputs) {
+            fuse(input);
+        }
+        if (operations >= MIN_OPERATIONS) {
+            ComputationNode expression = new ComputationNode(root.getNodeType(), root.getChildren());
+            expression.become(root); // a copy of the subtree's root, sharing its children
+            root.become(new ComputationNode(expression, inputs));
+            subtreesFused++;
+            operationsFused += operations;
+        }
+    }
+
+    public int getSubtreesFused() {
+        return subtreesFused;
+    }
+
+    public int getOperationsFused() {
+        return operationsFused;
+    }
+
+    public String getReport() {
+        return String.format("Element-wise fusion: %d operation(s) in %d subtree(s) fused into single-pass kernels",
+                operationsFused, subtreesFused);
+    }
+
+    /**
+     * Adds the frontier nodes below node to inputs, left to right, and returns the number of
+     * arithmetic operations in between. A node that several parents read (see CommonSubexpressions)
+     * is an input too, so that it is still computed once.
+     */
+    private static int collect(ComputationNode node, List<ComputationNode> inputs) {
+        if (!isElementwise(node) || node.isShared()) {
+            inputs.add(node);
+            return 0;
+        }
+        int operations = operations(node);
+        for (ComputationNode child : node.getChildren()) {
+            operations += collect(child, inputs);
+        }
+        return operations;
+    }
+
+    private static int operations(ComputationNode node) {
+        switch (node.getNodeType()) {
+            case ADD:
+                return node.getChildren().size() - 1;
+            case TRANSPOSE:
+                return 0;
+            default:
+                return 1;
+        }
+    }
+
+    private static boolean isElementwise(ComputationNode node) {
+        switch (node.getNodeType()) {
+            case ADD:
+            case SUBTRACT:
+            case NEGATE:
+            case TRANSPOSE:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
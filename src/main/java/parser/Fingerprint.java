@@ -0,0 +1,99 @@
+package parser;
+
+import memory.SparseMatrix;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A SHA-256 digest of what a subtree computes: its operations and the contents of its leaf matrices.
+ * Equal fingerprints are taken to mean equal results, within one tree or across runs, so it can be used
+ * as a key without keeping the subtree. Computed by CommonSubexpressions.fingerprint().
+ */
+public final class Fingerprint {
+
+    private final byte[] digest;
+    private final int hash;
+
+    private Fingerprint(byte[] digest) {
+        this.digest = digest;
+        this.hash = ByteBuffer.wrap(digest).getInt();
+    }
+
+    /**
+     * A MATRIX node, by its stored dimensions and values, bit for bit, and whether they are stored transposed.
+     */
+    static Fingerprint ofMatrix(ComputationNode node) {
+        MessageDigest sha = sha256();
+        sha.update((byte) 'M');
+        sha.update((byte) (node.isTransposed() ? 1 : 0));
+        SparseMatrix sparse = node.getSparse();
+        if (sparse != null) {
+            // the same values as the dense form, so a sparse and a dense copy have the same fingerprint
+            update(sha, sparse.rowCount(), sparse.columnCount(), sparse.denseRows());
+        }
+        else {
+            double[][] stored = node.getStoredMatrix();
+            int cols = (stored.length > 0) ? stored[0].length : 0;
+            update(sha, stored.length, cols, Arrays.asList(stored).iterator());
+        }
+        return new Fingerprint(sha.digest());
+    }
+
+    /**
+     * An operation node, by its type, its negation flag and the fingerprints of its operands, in order.
+     */
+    static Fingerprint ofOperation(ComputationNode node, List<Fingerprint> operands) {
+        MessageDigest sha = sha256();
+        sha.update((byte) 'O');
+        sha.update((byte) node.getNodeType().ordinal());
+        sha.update((byte) (node.isNegated() ? 1 : 0));
+        sha.update(ByteBuffer.allocate(Integer.BYTES).putInt(operands.size()).array());
+        for (Fingerprint operand : operands) {
+            sha.update(operand.digest);
+        }
+        return new Fingerprint(sha.digest());
+    }
+
+    private static void update(MessageDigest sha, int rows, int cols, Iterator<double[]> values) {
+        sha.update(ByteBuffer.allocate(2 * Integer.BYTES).putInt(rows).putInt(cols).array());
+        ByteBuffer bytes = ByteBuffer.allocate(cols * Double.BYTES);
+        while (values.hasNext()) {
+            bytes.clear();
+            bytes.asDoubleBuffer().put(values.next(), 0, cols);
+            sha.update(bytes.array());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // every JDK has it
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Fingerprint && Arrays.equals(digest, ((Fingerprint) other).digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            hex.append(String.format("%02x", digest[i]));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,12 @@
+package parser;
+
+/**
+ * How InputParser reads the input file.
+ * TREE reads the whole document into a Jackson JsonNode tree and then copies the numbers into matrices.
+ * STREAMING walks the tokens with a JsonParser and writes every number straight into its matrix row,
+ * so the peak heap stays close to the size of the matrices themselves.
+ */
+public enum InputMode {
+    TREE,
+    STREAMING
+}
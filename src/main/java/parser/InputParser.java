@@ -1,9 +1,14 @@
 package parser;
 
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 
+import memory.SparseMatrix;
+
 import java.io.File;
 import java.io.IOException;
 import java.text.ParseException;
@@ -11,11 +16,40 @@ import java.util.*;
 
 public class InputParser {
 
+    private static final int INITIAL_ROW_CAPACITY = 16;
+
     private final ObjectMapper mapper = new ObjectMapper();
+    private final InputMode mode;
+    private final boolean detectSparse;
+    private File baseDirectory; // directory of the file being parsed, for relative binary operand paths
+
+    public InputParser() {
+        this(InputMode.STREAMING);
+    }
+
+    public InputParser(InputMode mode) {
+        this(mode, true);
+    }
+
+    /**
+     * With detectSparse, matrices that are large and mostly zero are stored sparse
+     * (see SparseMatrix.prefersSparse()); otherwise every matrix is stored dense.
+     */
+    public InputParser(InputMode mode, boolean detectSparse) {
+        this.mode = mode;
+        this.detectSparse = detectSparse;
+    }
 
     public ComputationNode parse(String inputPath) throws ParseException {
         try {
             File inputFile = new File(inputPath);
+            baseDirectory = inputFile.getAbsoluteFile().getParentFile();
+            if (mode == InputMode.STREAMING) {
+                try (JsonParser parser = mapper.createParser(inputFile)) {
+                    parser.nextToken();
+                    return parseStreamingNode(parser);
+                }
+            }
             JsonNode rootJsonNode = mapper.readTree(inputFile);
             ComputationNode root = parseJsonNode(rootJsonNode);
             return root;
@@ -25,6 +59,9 @@ public class InputParser {
     }
 
     private ComputationNode parseJsonNode(JsonNode jsonNode) throws ParseException {
+        if (jsonNode.has("file") && !jsonNode.has("operator")) {
+            return readBinaryOperand(jsonNode.get("file").asText(), 0);
+        }
         if (jsonNode.has("operator") && jsonNode.has("operands")) {
             String operatorStr = jsonNode.get("operator").asText();
             ArrayNode operandJsonNodes = (ArrayNode) jsonNode.get("operands");
@@ -59,10 +96,154 @@ public class InputParser {
                         matrix[i][j] = rowJsonNode.get(j).asDouble();
                     }
                 }
-                return new ComputationNode(matrix);
+                return matrixNode(matrix);
             }
         }
         else { throw new ParseException("Invalid node structure: " + jsonNode.toString(), 0); }
     }
 
+    private ComputationNode matrixNode(double[][] matrix) {
+        if (detectSparse && SparseMatrix.prefersSparse(matrix)) {
+            return new ComputationNode(SparseMatrix.fromDense(matrix));
+        }
+        return new ComputationNode(matrix);
+    }
+
+    /**
+     * An operand written as {"file": "path"}, backed by a BinaryMatrixFile. Relative paths are resolved
+     * against the directory of the input file. Only the header is read here; the data is read on first use.
+     */
+    private ComputationNode readBinaryOperand(String path, int offset) throws ParseException {
+        File file = new File(path);
+        if (!file.isAbsolute()) {
+            file = new File(baseDirectory, path);
+        }
+        try {
+            return BinaryMatrixFile.read(file.toPath());
+        } catch (IOException e) {
+            throw new ParseException("Failed to read binary operand " + path + ": " + e.getMessage(), offset);
+        }
+    }
+
+    // ---- InputMode.STREAMING ----
+
+    /**
+     * Parses the node whose first token is the parser's current token, leaving the parser on its last token.
+     * Accepts the same documents as parseJsonNode(), with the same error messages; the offset of a
+     * ParseException is the offset of the offending token.
+     */
+    private ComputationNode parseStreamingNode(JsonParser parser) throws IOException, ParseException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            return parseStreamingOperation(parser);
+        }
+        if (token == JsonToken.START_ARRAY) {
+            return matrixNode(parseStreamingMatrix(parser));
+        }
+        throw new ParseException("Invalid node structure: " + parser.getText(), offset(parser));
+    }
+
+    private ComputationNode parseStreamingOperation(JsonParser parser) throws IOException, ParseException {
+        int start = offset(parser);
+        String operatorStr = null;
+        String file = null;
+        List<ComputationNode> operands = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals("operator")) {
+                operatorStr = value.isScalarValue() ? parser.getText() : ""; // as JsonNode.asText() reads it
+                parser.skipChildren();
+            }
+            else if (field.equals("file") && value.isScalarValue()) {
+                file = parser.getText();
+            }
+            else if (field.equals("operands") && value == JsonToken.START_ARRAY) {
+                operands = new ArrayList<>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    operands.add(parseStreamingNode(parser));
+                }
+            }
+            else {
+                parser.skipChildren();
+            }
+        }
+        if (operatorStr == null && file != null) {
+            return readBinaryOperand(file, start);
+        }
+        if (operatorStr == null || operands == null) {
+            throw new ParseException("Invalid node structure: object without operator and operands", start);
+        }
+        return new ComputationNode(operatorStr, operands);
+    }
+
+    /**
+     * Reads a 2D array row by row. The first row grows until it ends and fixes the width;
+     * every later row is allocated at exactly that width.
+     */
+    private double[][] parseStreamingMatrix(JsonParser parser) throws IOException, ParseException {
+        List<double[]> rows = new ArrayList<>();
+        int width = -1;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (rows.isEmpty() && token.isNumeric()) {
+                throw new ParseException("Vectors (1D arrays) are not supported as standalone nodes.", offset(parser));
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new ParseException("Invalid matrix row: " + parser.getText(), offset(parser));
+            }
+            double[] row = (width < 0) ? parseFirstRow(parser) : parseRow(parser, width);
+            width = row.length;
+            rows.add(row);
+        }
+        if (rows.isEmpty()) {
+            throw new ParseException("Empty array cannot be parsed as DataNode.", offset(parser));
+        }
+        return rows.toArray(new double[0][]);
+    }
+
+    private double[] parseFirstRow(JsonParser parser) throws IOException, ParseException {
+        double[] row = new double[INITIAL_ROW_CAPACITY];
+        int size = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (size == row.length) {
+                row = Arrays.copyOf(row, row.length * 2);
+            }
+            row[size++] = element(parser);
+        }
+        return Arrays.copyOf(row, size);
+    }
+
+    private double[] parseRow(JsonParser parser, int width) throws IOException, ParseException {
+        double[] row = new double[width];
+        int size = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (size == width) {
+                throw new ParseException("Inconsistent row sizes in matrix.", offset(parser));
+            }
+            row[size++] = element(parser);
+        }
+        if (size != width) {
+            throw new ParseException("Inconsistent row sizes in matrix.", offset(parser));
+        }
+        return row;
+    }
+
+    /**
+     * The current token as a matrix element, converted like JsonNode.asDouble() does.
+     */
+    private static double element(JsonParser parser) throws IOException, ParseException {
+        if (parser.currentToken().isStructStart()) {
+            throw new ParseException("Invalid matrix element: nested " + parser.getText(), offset(parser));
+        }
+        return parser.getValueAsDouble();
+    }
+
+    private static int offset(JsonParser parser) {
+        JsonLocation location = parser.currentTokenLocation();
+        // parsers over a file count bytes, not chars
+        long offset = (location.getCharOffset() >= 0) ? location.getCharOffset() : location.getByteOffset();
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, offset));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,127 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Planning pass that picks the cheapest parenthesization of n-ary MULTIPLY nodes.
+ * Operand shapes are inferred from the tree, and the classic matrix-chain dynamic program
+ * (O(n^3) in the chain length) chooses where to split. The chain is rebuilt as nested binary
+ * MULTIPLY nodes, so associativeNesting() leaves it alone afterwards.
+ * Chains whose shapes cannot be inferred or do not line up are left untouched; the engine
+ * reports the dimension error when it reaches them. ADD nodes are not reordered.
+ */
+public class MatrixChainPlanner {
+
+    private final ShapeInference shapes = new ShapeInference();
+    private int chainsPlanned = 0;
+    private int chainsReordered = 0;
+    private double leftAssociativeFlops = 0;
+    private double plannedFlops = 0;
+
+    /**
+     * Reorders every n-ary MULTIPLY node in the tree rooted at root.
+     */
+    public void plan(ComputationNode root) {
+        if (root.getNodeType() == ComputationNodeType.MATRIX) {
+            return;
+        }
+        for (ComputationNode child : root.getChildren()) {
+            plan(child);
+        }
+        if (root.getNodeType() == ComputationNodeType.MULTIPLY && root.getChildren().size() > 2) {
+            planChain(root);
+        }
+    }
+
+    public int getChainsPlanned() {
+        return chainsPlanned;
+    }
+
+    public int getChainsReordered() {
+        return chainsReordered;
+    }
+
+    /**
+     * Estimated flops of the planned chains if they had been nested left-associatively.
+     */
+    public double getLeftAssociativeFlops() {
+        return leftAssociativeFlops;
+    }
+
+    /**
+     * Estimated flops of the planned chains in the chosen order.
+     */
+    public double getPlannedFlops() {
+        return plannedFlops;
+    }
+
+    public String getReport() {
+        double saved = leftAssociativeFlops - plannedFlops;
+        return String.format("Matrix-chain ordering: %d of %d chain(s) reordered, estimated %.3g -> %.3g flops (saved %.3g, %.1f%%)",
+                chainsReordered, chainsPlanned, leftAssociativeFlops, plannedFlops, saved,
+                (leftAssociativeFlops > 0) ? 100.0 * saved / leftAssociativeFlops : 0.0);
+    }
+
+    private void planChain(ComputationNode node) {
+        List<ComputationNode> operands = node.getChildren();
+        int n = operands.size();
+        // operand k is dims[k] x dims[k + 1]
+        long[] dims = new long[n + 1];
+        for (int k = 0; k < n; k++) {
+            long[] shape = shapes.shapeOf(operands.get(k));
+            if (shape == null || (k > 0 && shape[0] != dims[k])) {
+                return;
+            }
+            dims[k] = shape[0];
+            dims[k + 1] = shape[1];
+        }
+
+        // cost[i][j]: cheapest flops for operands i..j, split[i][j]: last multiplication is (i..s) * (s+1..j)
+        double[][] cost = new double[n][n];
+        int[][] split = new int[n][n];
+        for (int length = 2; length <= n; length++) {
+            for (int i = 0; i + length - 1 < n; i++) {
+                int j = i + length - 1;
+                cost[i][j] = Double.POSITIVE_INFINITY;
+                for (int s = i; s < j; s++) {
+                    double candidate = cost[i][s] + cost[s + 1][j] + flops(dims[i], dims[s + 1], dims[j + 1]);
+                    if (candidate < cost[i][j]) {
+                        cost[i][j] = candidate;
+                        split[i][j] = s;
+                    }
+                }
+            }
+        }
+
+        double leftAssociative = 0;
+        for (int k = 1; k < n; k++) {
+            leftAssociative += flops(dims[0], dims[k], dims[k + 1]);
+        }
+        chainsPlanned++;
+        leftAssociativeFlops += leftAssociative;
+        plannedFlops += cost[0][n - 1];
+        if (cost[0][n - 1] < leftAssociative) {
+            chainsReordered++;
+        }
+        ComputationNode nested = build(operands, split, 0, n - 1);
+        node.setChildren(nested.getChildren());
+    }
+
+    private static ComputationNode build(List<ComputationNode> operands, int[][] split, int i, int j) {
+        if (i == j) {
+            return operands.get(i);
+        }
+        List<ComputationNode> pair = new ArrayList<>();
+        pair.add(build(operands, split, i, split[i][j]));
+        pair.add(build(operands, split, split[i][j] + 1, j));
+        return new ComputationNode(ComputationNodeType.MULTIPLY, pair);
+    }
+
+    /**
+     * Multiply-add count of a (p x q) * (q x r) product, counted as two flops each.
+     */
+    private static double flops(long p, long q, long r) {
+        return 2.0 * p * q * r;
+    }
+}
@@ -0,0 +1,16 @@
+package parser;
+
+/**
+ * How OutputWriter writes a result matrix.
+ * PRETTY serializes the whole ResultMatrix with the ObjectMapper's pretty printer.
+ * STREAMING produces the same pretty layout, but writes row by row through a buffered JsonGenerator.
+ * COMPACT streams like STREAMING without any whitespace.
+ * The streaming modes format doubles with Jackson's fast shortest round-trip writer.
+ * BINARY writes a BinaryMatrixFile instead of JSON (error messages are still written as JSON).
+ */
+public enum OutputMode {
+    PRETTY,
+    STREAMING,
+    COMPACT,
+    BINARY
+}
@@ -1,13 +1,32 @@
 package parser;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 
+import memory.SparseMatrix;
+
 public class OutputWriter {
 
     private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private static final JsonFactory streamingFactory = JsonFactory.builder()
+            .enable(StreamWriteFeature.USE_FAST_DOUBLE_WRITER)
+            .build();
+    private static final int BUFFER_SIZE = 1 << 16;
 
     public static class ResultMatrix {
         public double[][] result;
@@ -26,6 +45,93 @@ public class OutputWriter {
         mapper.writerWithDefaultPrettyPrinter().writeValue(file, new ResultMatrix(matrix));
     }
 
+    /**
+     * Writes the node's matrix in the given mode. The streaming modes write a transposed node
+     * (see ComputationNode.isTransposed()) straight from its stored matrix, one row at a time,
+     * instead of materializing the transpose first.
+     */
+    public static void write(ComputationNode result, String filePath, OutputMode mode) throws IOException {
+        if (mode == OutputMode.PRETTY) {
+            write(result.getMatrix(), filePath);
+        }
+        else if (mode == OutputMode.BINARY) {
+            BinaryMatrixFile source = result.getFile();
+            if (source != null) {
+                // the result is already in a binary file, e.g. from out-of-core execution
+                Files.copy(source.getPath(), Path.of(filePath), StandardCopyOption.REPLACE_EXISTING);
+            }
+            else {
+                BinaryMatrixFile.write(result, Path.of(filePath));
+            }
+        }
+        else {
+            writeRows(rowsOf(result), filePath, mode == OutputMode.COMPACT);
+        }
+    }
+
+    /**
+     * Streams {"result": [row, row, ...]} to the file, pulling each row from rows only when it is written,
+     * so rows can still be produced while earlier ones are being written.
+     */
+    public static void writeRows(Iterator<double[]> rows, String filePath, boolean compact) throws IOException {
+        try (JsonGenerator generator = streamingFactory.createGenerator(
+                new BufferedOutputStream(new FileOutputStream(filePath), BUFFER_SIZE))) {
+            if (!compact) {
+                generator.setPrettyPrinter(new DefaultPrettyPrinter());
+            }
+            generator.writeStartObject();
+            generator.writeFieldName("result");
+            generator.writeStartArray();
+            while (rows.hasNext()) {
+                double[] row = rows.next();
+                generator.writeArray(row, 0, row.length);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * The logical rows of the node's matrix. Rows of a file-backed node are read from the file, rows of a
+     * sparse node are expanded one at a time, and rows of a transposed node are gathered from a column of
+     * the stored matrix; all of them reuse one buffer, which is only valid until the next call to next().
+     */
+    private static Iterator<double[]> rowsOf(ComputationNode node) throws IOException {
+        if (node.getFile() != null && !node.isTransposed()) {
+            return node.getFile().rowIterator(); // never holds more than one row
+        }
+        SparseMatrix sparse = node.getSparse();
+        if (sparse != null) {
+            return (node.isTransposed() ? sparse.transpose() : sparse).denseRows();
+        }
+        double[][] stored = node.getStoredMatrix();
+        if (!node.isTransposed()) {
+            return Arrays.asList(stored).iterator();
+        }
+        int rows = (stored.length > 0) ? stored[0].length : 0;
+        double[] buffer = new double[stored.length];
+        return new Iterator<>() {
+            private int row = 0;
+
+            @Override
+            public boolean hasNext() {
+                return row < rows;
+            }
+
+            @Override
+            public double[] next() {
+                if (row >= rows) {
+                    throw new NoSuchElementException();
+                }
+                for (int i = 0; i < stored.length; i++) {
+                    buffer[i] = stored[i][row];
+                }
+                row++;
+                return buffer;
+            }
+        };
+    }
+
     public static void write(String error, String filePath) throws IOException {
         File file = new File(filePath);
         mapper.writerWithDefaultPrettyPrinter().writeValue(file, new ErrorMessage(error));
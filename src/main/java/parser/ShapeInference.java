@@ -0,0 +1,80 @@
+package parser;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Infers the {rows, cols} of a node's result without evaluating it. Results are memoized per node,
+ * so an instance should only be used while the shapes of the nodes it has seen do not change
+ * (rewrites that preserve the value of a node are fine).
+ */
+class ShapeInference {
+
+    private final Map<ComputationNode, long[]> shapes = new IdentityHashMap<>();
+
+    /**
+     * {rows, cols} of the node's result, or null when it cannot be inferred.
+     */
+    long[] shapeOf(ComputationNode node) {
+        if (shapes.containsKey(node)) {
+            return shapes.get(node);
+        }
+        long[] shape = inferShape(node);
+        shapes.put(node, shape);
+        return shape;
+    }
+
+    /**
+     * Number of elements of the node's result, or 0 when its shape is unknown.
+     */
+    long sizeOf(ComputationNode node) {
+        long[] shape = shapeOf(node);
+        return (shape == null) ? 0 : shape[0] * shape[1];
+    }
+
+    private long[] inferShape(ComputationNode node) {
+        List<ComputationNode> children = node.getChildren();
+        switch (node.getNodeType()) {
+            case MATRIX: {
+                if (node.getFile() != null) {
+                    return new long[]{node.getFile().getRows(), node.getFile().getCols()};
+                }
+                if (node.getSharedMatrix() != null) {
+                    long rows = node.getSharedMatrix().rowCount();
+                    long cols = node.getSharedMatrix().columnCount();
+                    return node.isTransposed() ? new long[]{cols, rows} : new long[]{rows, cols};
+                }
+                if (node.getSparse() != null) {
+                    long rows = node.getSparse().rowCount();
+                    long cols = node.getSparse().columnCount();
+                    return node.isTransposed() ? new long[]{cols, rows} : new long[]{rows, cols};
+                }
+                double[][] matrix = node.getStoredMatrix();
+                long rows = matrix.length;
+                long cols = (matrix.length > 0) ? matrix[0].length : 0;
+                return node.isTransposed() ? new long[]{cols, rows} : new long[]{rows, cols};
+            }
+            case ADD:
+            case SUBTRACT:
+            case NEGATE:
+                return children.isEmpty() ? null : shapeOf(children.get(0));
+            case TRANSPOSE: {
+                long[] shape = children.isEmpty() ? null : shapeOf(children.get(0));
+                return (shape == null) ? null : new long[]{shape[1], shape[0]};
+            }
+            case FUSED:
+                return shapeOf(node.getFusedExpression());
+            case MULTIPLY: {
+                if (children.isEmpty()) {
+                    return null;
+                }
+                long[] first = shapeOf(children.get(0));
+                long[] last = shapeOf(children.get(children.size() - 1));
+                return (first == null || last == null) ? null : new long[]{first[0], last[1]};
+            }
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rule-based rewriter that replaces parts of a ComputationNode tree with cheaper equivalents
+ * before execution. Every NEGATE and TRANSPOSE node otherwise costs a full pass over its matrix
+ * (read and write) in a round of its own, so the rules remove or absorb those passes:
+ * <ul>
+ *   <li>T(T(A)) becomes A, and -(-A) becomes A</li>
+ *   <li>A + (-B) and (-B) + A become the fused SUBTRACT A - B; -(A - B) becomes B - A;
+ *       A - (-B) becomes A + B</li>
+ *   <li>a NEGATE above, or on an operand of, an ADD or MULTIPLY is absorbed into that node's
+ *       kernel (ComputationNode.isNegated())</li>
+ *   <li>T(A * B) becomes T(B) * T(A) when transposing the operands moves fewer bytes than
+ *       transposing the product, e.g. because T(B) or T(A) cancels</li>
+ * </ul>
+ * n-ary ADD nodes are nested left-associatively first, as the engine would, so the binary rules
+ * see them. n-ary MULTIPLY nodes are left n-ary for MatrixChainPlanner.
+ */
+public class TreeOptimizer {
+
+    private static final int BYTES_PER_ELEMENT = Double.BYTES;
+
+    private final ShapeInference shapes = new ShapeInference();
+    private final Map<String, Integer> fired = new LinkedHashMap<>();
+    private long bytesSaved = 0;
+
+    /**
+     * Rewrites the tree in place. The root object stays the root, even when the rewrite replaces it.
+     */
+    public void optimize(ComputationNode root) {
+        ComputationNode rewritten = rewrite(root);
+        if (rewritten != root) {
+            root.become(rewritten);
+        }
+    }
+
+    /**
+     * How many times each rule fired, in the order they first fired.
+     */
+    public Map<String, Integer> getRewrites() {
+        return fired;
+    }
+
+    /**
+     * Estimated bytes of memory traffic (reads plus writes) that the rewrites avoid.
+     */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    public String getReport() {
+        StringBuilder report = new StringBuilder("Rewrites:");
+        if (fired.isEmpty()) {
+            report.append(" none");
+        }
+        for (Map.Entry<String, Integer> entry : fired.entrySet()) {
+            report.append(String.format(" [%s] x%d", entry.getKey(), entry.getValue()));
+        }
+        report.append(String.format(", estimated traffic saved: %d bytes", bytesSaved));
+        return report.toString();
+    }
+
+    /**
+     * Rewrites the subtree bottom-up and returns the node that replaces it (possibly node itself).
+     */
+    private ComputationNode rewrite(ComputationNode node) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            return node;
+        }
+        if (node.getNodeType() == ComputationNodeType.ADD && node.getChildren().size() > 2) {
+            node.associativeNesting();
+        }
+        List<ComputationNode> children = new ArrayList<>();
+        for (ComputationNode child : node.getChildren()) {
+            children.add(rewrite(child));
+        }
+        node.setChildren(children);
+        return settle(node);
+    }
+
+    /**
+     * Applies rules at node until none matches.
+     */
+    private ComputationNode settle(ComputationNode node) {
+        ComputationNode current = node;
+        ComputationNode next = applyRules(current);
+        while (next != current) {
+            current = next;
+            next = applyRules(current);
+        }
+        return current;
+    }
+
+    /**
+     * Applies the first matching rule at node and returns the replacement, or node when none applies.
+     * Children of the returned node are already rewritten.
+     */
+    private ComputationNode applyRules(ComputationNode node) {
+        List<ComputationNode> children = node.getChildren();
+        switch (node.getNodeType()) {
+            case TRANSPOSE: {
+                if (children.size() != 1) {
+                    return node; // malformed, the engine reports it
+                }
+                ComputationNode child = children.get(0);
+                if (isUnary(child, ComputationNodeType.TRANSPOSE)) {
+                    record("T(T(A)) -> A", 2 * pass(child.getChildren().get(0)));
+                    return child.getChildren().get(0);
+                }
+                if (child.getNodeType() == ComputationNodeType.MULTIPLY && child.getChildren().size() == 2) {
+                    return transposeProduct(node, child);
+                }
+                return node;
+            }
+            case NEGATE: {
+                if (children.size() != 1) {
+                    return node; // malformed, the engine reports it
+                }
+                ComputationNode child = children.get(0);
+                if (isUnary(child, ComputationNodeType.NEGATE)) {
+                    record("-(-A) -> A", 2 * pass(child.getChildren().get(0)));
+                    return child.getChildren().get(0);
+                }
+                if (child.getNodeType() == ComputationNodeType.SUBTRACT) {
+                    record("-(A - B) -> B - A", pass(child));
+                    return op(ComputationNodeType.SUBTRACT, false, child.getChildren().get(1), child.getChildren().get(0));
+                }
+                if (child.getNodeType() == ComputationNodeType.ADD || child.getNodeType() == ComputationNodeType.MULTIPLY) {
+                    record("-(A op B) -> negating op kernel", pass(child));
+                    child.setNegated(!child.isNegated());
+                    return child;
+                }
+                return node;
+            }
+            case ADD: {
+                if (children.size() != 2) {
+                    return node;
+                }
+                ComputationNode a = children.get(0);
+                ComputationNode b = children.get(1);
+                boolean negA = isUnary(a, ComputationNodeType.NEGATE);
+                boolean negB = isUnary(b, ComputationNodeType.NEGATE);
+                if (negA && negB) {
+                    record("(-A) + (-B) -> negating add kernel", pass(a) + pass(b));
+                    return op(ComputationNodeType.ADD, !node.isNegated(), unwrap(a), unwrap(b));
+                }
+                if (negB) {
+                    record("A + (-B) -> A - B", pass(b));
+                    return subtract(node.isNegated(), a, unwrap(b));
+                }
+                if (negA) {
+                    record("A + (-B) -> A - B", pass(a));
+                    return subtract(node.isNegated(), b, unwrap(a));
+                }
+                return node;
+            }
+            case SUBTRACT: {
+                if (children.size() != 2) {
+                    return node;
+                }
+                ComputationNode a = children.get(0);
+                ComputationNode b = children.get(1);
+                if (isUnary(b, ComputationNodeType.NEGATE)) {
+                    record("A - (-B) -> A + B", pass(b));
+                    return op(ComputationNodeType.ADD, false, a, unwrap(b));
+                }
+                if (isUnary(a, ComputationNodeType.NEGATE)) {
+                    record("(-A) - B -> negating add kernel", pass(a));
+                    return op(ComputationNodeType.ADD, true, unwrap(a), b);
+                }
+                return node;
+            }
+            case MULTIPLY: {
+                boolean changed = false;
+                boolean negated = node.isNegated();
+                List<ComputationNode> operands = new ArrayList<>();
+                for (ComputationNode child : children) {
+                    if (isUnary(child, ComputationNodeType.NEGATE)) {
+                        record("(-A) * B -> negating multiply kernel", pass(child));
+                        operands.add(unwrap(child));
+                        negated = !negated;
+                        changed = true;
+                    }
+                    else {
+                        operands.add(child);
+                    }
+                }
+                if (!changed) {
+                    return node;
+                }
+                return op(ComputationNodeType.MULTIPLY, negated, operands.toArray(new ComputationNode[0]));
+            }
+            default:
+                return node;
+        }
+    }
+
+    /**
+     * T(A * B) -> T(B) * T(A) when that moves fewer bytes. A transpose of an operand that is itself
+     * a TRANSPOSE cancels, which also removes that operand's own pass.
+     */
+    private ComputationNode transposeProduct(ComputationNode transpose, ComputationNode product) {
+        ComputationNode a = product.getChildren().get(0);
+        ComputationNode b = product.getChildren().get(1);
+        if (shapes.shapeOf(a) == null || shapes.shapeOf(b) == null) {
+            return transpose;
+        }
+        long before = pass(product);
+        long after = transposeCost(a) + transposeCost(b);
+        if (after >= before) {
+            return transpose;
+        }
+        record("T(A * B) -> T(B) * T(A)", before - after);
+        ComputationNode tb = settle(transposeOf(b));
+        ComputationNode ta = settle(transposeOf(a));
+        return op(ComputationNodeType.MULTIPLY, product.isNegated(), tb, ta);
+    }
+
+    private long transposeCost(ComputationNode node) {
+        return isUnary(node, ComputationNodeType.TRANSPOSE) ? -pass(node) : pass(node);
+    }
+
+    private static ComputationNode transposeOf(ComputationNode node) {
+        if (isUnary(node, ComputationNodeType.TRANSPOSE)) {
+            return node.getChildren().get(0);
+        }
+        return op(ComputationNodeType.TRANSPOSE, false, node);
+    }
+
+    private static ComputationNode subtract(boolean negated, ComputationNode minuend, ComputationNode subtrahend) {
+        // -(A - B) = B - A, so a negated subtraction just swaps its operands
+        return negated
+                ? op(ComputationNodeType.SUBTRACT, false, subtrahend, minuend)
+                : op(ComputationNodeType.SUBTRACT, false, minuend, subtrahend);
+    }
+
+    /**
+     * Whether node is a well-formed unary operator of the given type.
+     */
+    private static boolean isUnary(ComputationNode node, ComputationNodeType type) {
+        return node.getNodeType() == type && node.getChildren().size() == 1;
+    }
+
+    private static ComputationNode unwrap(ComputationNode negate) {
+        return negate.getChildren().get(0);
+    }
+
+    private static ComputationNode op(ComputationNodeType type, boolean negated, ComputationNode... children) {
+        ComputationNode node = new ComputationNode(type, new ArrayList<>(List.of(children)));
+        node.setNegated(negated);
+        return node;
+    }
+
+    /**
+     * Bytes moved by one full pass over the node's result: every element read once and written once.
+     */
+    private long pass(ComputationNode node) {
+        return 2L * BYTES_PER_ELEMENT * shapes.sizeOf(node);
+    }
+
+    private void record(String rule, long saved) {
+        fired.merge(rule, 1, Integer::sum);
+        bytesSaved += saved;
+    }
+}
@@ -0,0 +1,99 @@
+package scheduling;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The idle workers of a HANDOFF executor, bucketed by fatigue tier instead of kept in a heap.
+ * A worker is filed under the fatigue it had when it went idle, which cannot change until it runs again.
+ * Tiers are quarter-octaves of fatigue, so take() returns a worker whose fatigue is within 19% of the
+ * least fatigued idle one; within a tier the longest idle goes first. Filing and taking are lock-free
+ * (a queue offer or poll, a bit in the tier mask and a permit), and only take() with no idle worker blocks.
+ * Blocked takers are served first come, first served, so submitters sharing the workers alternate.
+ */
+final class IdleWorkers {
+
+    static final int TIERS = 257; // tier 0 holds fatigue below 1, then 4 tiers per power of two up to 2^64
+
+    private final ConcurrentLinkedQueue<TiredThread>[] tiers;
+    private final AtomicLongArray nonEmpty = new AtomicLongArray((TIERS + 63) / 64); // bit t: tier t may hold a worker
+    private final Semaphore idle = new Semaphore(0, true); // one permit per filed worker, fair to waiting takers
+
+    IdleWorkers() {
+        @SuppressWarnings({"unchecked", "rawtypes"}) // no generic array creation
+        ConcurrentLinkedQueue<TiredThread>[] byTier = new ConcurrentLinkedQueue[TIERS];
+        tiers = byTier;
+        for (int t = 0; t < TIERS; t++) {
+            tiers[t] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Tier of a fatigue value: the exponent and the top two mantissa bits of the double, so tiers grow
+     * by a factor of 2^(1/4) each.
+     */
+    static int tier(double fatigue) {
+        if (!(fatigue >= 1.0)) {
+            return 0;
+        }
+        long quarterOctaves = (Double.doubleToRawLongBits(fatigue) >>> 50) - (1023L << 2);
+        return (int) Math.min(TIERS - 1, quarterOctaves + 1);
+    }
+
+    /**
+     * Files an idle worker under the given fatigue snapshot.
+     */
+    void offer(TiredThread worker, double fatigue) {
+        int t = tier(fatigue);
+        tiers[t].offer(worker);
+        long bit = 1L << t;
+        if ((nonEmpty.get(t >>> 6) & bit) == 0) {
+            nonEmpty.accumulateAndGet(t >>> 6, bit, (mask, b) -> mask | b);
+        }
+        idle.release();
+    }
+
+    /**
+     * Removes and returns an idle worker from the lowest non-empty tier, blocking until one is filed.
+     */
+    TiredThread take() throws InterruptedException {
+        idle.acquire();
+        while (true) {
+            // the permit guarantees a filed worker; a miss only means its bit is being set right now
+            TiredThread worker = pollLowest();
+            if (worker != null) {
+                return worker;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Number of idle workers.
+     */
+    int size() {
+        return idle.availablePermits();
+    }
+
+    private TiredThread pollLowest() {
+        for (int word = 0; word < nonEmpty.length(); word++) {
+            long bits = nonEmpty.get(word);
+            while (bits != 0) {
+                int t = (word << 6) + Long.numberOfTrailingZeros(bits);
+                TiredThread worker = tiers[t].poll();
+                if (worker != null) {
+                    return worker;
+                }
+                long bit = 1L << t;
+                nonEmpty.accumulateAndGet(word, ~bit, (mask, keep) -> mask & keep);
+                if (!tiers[t].isEmpty()) {
+                    // a worker was filed between the poll and the clear; its bit must stay set
+                    nonEmpty.accumulateAndGet(word, bit, (mask, b) -> mask | b);
+                }
+                bits &= bits - 1;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,17 @@
+package scheduling;
+
+/**
+ * How a TiredExecutor hands tasks to its workers.
+ * HANDOFF gives each task to the least fatigued idle worker through its single-slot queue,
+ * one task at a time.
+ * WORK_STEALING gives every worker its own deque. A whole batch is split across the deques up front,
+ * and a worker whose deque runs dry steals from the most fatigued worker that still has work.
+ * VIRTUAL starts a virtual thread per task and never blocks the submitter. The workers are not started;
+ * they are lanes, and a task waits (parked, without holding a carrier) for the least fatigued idle lane
+ * and runs under it, so at most numThreads tasks run at once and fatigue is still charged per lane.
+ */
+public enum SchedulingMode {
+    HANDOFF,
+    WORK_STEALING,
+    VIRTUAL
+}
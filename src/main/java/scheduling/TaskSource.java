@@ -0,0 +1,13 @@
+package scheduling;
+
+/**
+ * Supplies tasks to a TiredThread that is not fed through its handoff slot.
+ */
+interface TaskSource {
+
+    /**
+     * Returns the next task for worker, blocking while none is available.
+     * Returns null when the worker should exit.
+     */
+    Runnable next(TiredThread worker) throws InterruptedException;
+}
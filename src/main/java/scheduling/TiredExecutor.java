@@ -1,35 +1,423 @@
 package scheduling;
 
-import java.util.concurrent.PriorityBlockingQueue;
+import metrics.WorkerMetrics;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class TiredExecutor {
 
     private final TiredThread[] workers;
-    private final PriorityBlockingQueue<TiredThread> idleMinHeap = new PriorityBlockingQueue<>();
+    private final TiredExecutor owner; // the executor whose workers this one shares (see forJob()), or null
+    private final IdleWorkers idle; // HANDOFF and VIRTUAL: the idle workers or lanes
+    private final ThreadFactory virtualThreads; // VIRTUAL: starts the per-task threads; thread-safe, unlike the builder
     private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>(); // first task failure of the current batch
+    private final SchedulingMode mode;
+
+    // WORK_STEALING state: one deque per worker, indexed by worker id
+    private final ConcurrentLinkedDeque<Runnable>[] deques;
+    private final AtomicInteger queued; // tasks sitting in any deque; counted after the push, so it may lag the deques
+    private final AtomicLong steals;
+    private final ReentrantLock workLock;
+    private final Condition workAvailable;
+    private boolean shuttingDown = false; // guarded by workLock
+
+    // chunking: a chunk should carry at least this much work (in element operations) to amortize dispatch
+    static final double MIN_CHUNK_COST = 32_768;
+    static final int CHUNKS_PER_WORKER = 4; // keep enough chunks for load balancing
+    private volatile int lastGrain = 1;
+    private volatile int lastBatchSize = 0;
 
     public TiredExecutor(int numThreads) {
-        // TODO
-        workers = null; // placeholder
+        this(numThreads, SchedulingMode.HANDOFF);
+    }
+
+    public TiredExecutor(int numThreads, SchedulingMode mode) {
+        if (numThreads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        this.mode = mode;
+        this.owner = null;
+        this.idle = new IdleWorkers();
+        this.virtualThreads = Thread.ofVirtual().name("lane-task-", 0).factory();
+        this.queued = new AtomicInteger(0);
+        this.steals = new AtomicLong(0);
+        this.workLock = new ReentrantLock();
+        this.workAvailable = workLock.newCondition();
+        workers = new TiredThread[numThreads];
+        if (mode == SchedulingMode.WORK_STEALING) {
+            @SuppressWarnings({"unchecked", "rawtypes"}) // no generic array creation
+            ConcurrentLinkedDeque<Runnable>[] perWorker = new ConcurrentLinkedDeque[numThreads];
+            deques = perWorker;
+            for (int i = 0; i < numThreads; i++) {
+                deques[i] = new ConcurrentLinkedDeque<>();
+                workers[i] = new TiredThread(i, 0.5 + Math.random(), this::nextTask);
+            }
+        }
+        else {
+            deques = null;
+            for (int i = 0; i < numThreads; i++) {
+                // fatigue factor is drawn uniformly from [0.5, 1.5)
+                workers[i] = new TiredThread(i, 0.5 + Math.random());
+                workers[i].setIdleListener(worker -> idle.offer(worker, worker.getFatigue()));
+                idle.offer(workers[i], 0);
+            }
+        }
+        if (mode != SchedulingMode.VIRTUAL) {
+            for (TiredThread worker : workers) {
+                worker.start();
+            }
+        }
+    }
+
+    private TiredExecutor(TiredExecutor owner) {
+        this.owner = owner;
+        this.mode = owner.mode;
+        this.workers = owner.workers;
+        this.idle = owner.idle;
+        this.virtualThreads = owner.virtualThreads;
+        this.deques = owner.deques;
+        this.queued = owner.queued;
+        this.steals = owner.steals;
+        this.workLock = owner.workLock;
+        this.workAvailable = owner.workAvailable;
+    }
+
+    /**
+     * An executor for one of several concurrent jobs: it runs its tasks on this executor's workers,
+     * but awaitAll() waits only for its own tasks and rethrows only their failures, and its shutdown()
+     * only waits for them, leaving the workers to the other jobs. Jobs get workers in the order they
+     * asked for them (see IdleWorkers), so a job with a long batch cannot starve the others.
+     */
+    public TiredExecutor forJob() {
+        return new TiredExecutor((owner != null) ? owner : this);
+    }
+
+    public int getNumThreads() {
+        return workers.length;
     }
 
+    public SchedulingMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Hands the task to the least fatigued worker.
+     * In HANDOFF mode this takes the least fatigued idle worker (to within a fatigue tier, see IdleWorkers),
+     * blocking while none is idle; the worker files itself as idle again when the task finishes.
+     * In WORK_STEALING mode the task is appended to that worker's deque.
+     * In VIRTUAL mode this returns at once; the task's virtual thread does the waiting for an idle lane.
+     */
     public void submit(Runnable task) {
-        // TODO
+        if (mode == SchedulingMode.WORK_STEALING) {
+            push(leastFatigued(), tracked(task));
+            signalWork();
+            return;
+        }
+        if (mode == SchedulingMode.VIRTUAL) {
+            Runnable tracked = tracked(task);
+            virtualThreads.newThread(() -> {
+                try {
+                    idle.take().runAsLane(tracked);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }).start();
+            return;
+        }
+        TiredThread worker;
+        try {
+            worker = idle.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an idle worker", e);
+        }
+        worker.newTask(tracked(task));
     }
 
+    /**
+     * Submits the tasks and waits until all of them finish.
+     * If any task threw, the first exception is rethrown once the batch is done.
+     */
     public void submitAll(Iterable<Runnable> tasks) {
-        // TODO: submit tasks one by one and wait until all finish
+        dispatch(tasks);
+        awaitAll();
+    }
+
+    /**
+     * Submits the tasks grouped into chunks (see chunk()) and waits until all of them finish.
+     */
+    public void submitAll(List<Runnable> tasks, double costPerTask) {
+        submitAll(chunk(tasks, costPerTask));
+    }
+
+    /**
+     * Submits the tasks without waiting for them to finish; use awaitAll() to wait.
+     * In WORK_STEALING mode the batch is cut into one contiguous run per worker, the least fatigued worker
+     * getting the first run, and all deques are filled before any worker is woken.
+     * In HANDOFF mode this still blocks while no worker is idle.
+     */
+    public void dispatch(Iterable<Runnable> tasks) {
+        if (mode == SchedulingMode.WORK_STEALING) {
+            List<Runnable> batch = new ArrayList<>();
+            tasks.forEach(batch::add);
+            if (batch.isEmpty()) {
+                return;
+            }
+            TiredThread[] byFatigue = workers.clone();
+            Arrays.sort(byFatigue, Comparator.comparingDouble(TiredThread::getFatigue));
+            int runLength = (batch.size() + workers.length - 1) / workers.length;
+            for (int i = 0; i < batch.size(); i++) {
+                push(byFatigue[i / runLength], tracked(batch.get(i)));
+            }
+            signalWork();
+        }
+        else {
+            for (Runnable task : tasks) {
+                submit(task);
+            }
+        }
+    }
+
+    /**
+     * Groups consecutive tasks into chunks so that each dispatched task carries enough work.
+     * costPerTask estimates the work of one task in element operations (e.g. the row length for a
+     * row-wise add). The grain is picked by chooseGrain() and shown in the worker report.
+     */
+    public List<Runnable> chunk(List<Runnable> tasks, double costPerTask) {
+        int grain = chooseGrain(tasks.size(), costPerTask, workers.length);
+        lastGrain = grain;
+        lastBatchSize = tasks.size();
+        if (grain == 1) {
+            return tasks;
+        }
+        List<Runnable> chunks = new ArrayList<>();
+        for (int start = 0; start < tasks.size(); start += grain) {
+            List<Runnable> chunk = tasks.subList(start, Math.min(start + grain, tasks.size()));
+            chunks.add(() -> {
+                for (Runnable task : chunk) {
+                    task.run();
+                }
+            });
+        }
+        return chunks;
+    }
+
+    /**
+     * Number of consecutive tasks to run as one chunk: enough that a chunk costs at least MIN_CHUNK_COST,
+     * but never so many that there are fewer than CHUNKS_PER_WORKER chunks per worker.
+     */
+    static int chooseGrain(int taskCount, double costPerTask, int workerCount) {
+        int byCost = (int) Math.min(Integer.MAX_VALUE, Math.ceil(MIN_CHUNK_COST / Math.max(costPerTask, 1.0)));
+        int byBalance = taskCount / (workerCount * CHUNKS_PER_WORKER);
+        return Math.max(1, Math.min(byCost, byBalance));
+    }
+
+    private Runnable tracked(Runnable task) {
+        inFlight.incrementAndGet();
+        return () -> {
+            try {
+                task.run();
+            }
+            catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            }
+            finally {
+                if (inFlight.decrementAndGet() == 0) {
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Waits until every submitted task has finished.
+     * If any task threw since the last wait, the first exception is rethrown.
+     */
+    public void awaitAll() {
+        waitForInFlight();
+        RuntimeException e = failure.getAndSet(null);
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    private synchronized void waitForInFlight() {
+        while (inFlight.get() > 0) {
+            try {
+                wait();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for tasks to finish", e);
+            }
+        }
+    }
+
+    // ---- WORK_STEALING ----
+
+    /**
+     * Appends a task to the worker's deque. The caller signals the workers (see signalWork()) once it
+     * has pushed its tasks.
+     */
+    private void push(TiredThread worker, Runnable task) {
+        deques[worker.getWorkerId()].addLast(task);
+        queued.incrementAndGet();
+    }
+
+    private void signalWork() {
+        workLock.lock();
+        try {
+            workAvailable.signalAll();
+        }
+        finally {
+            workLock.unlock();
+        }
+    }
+
+    private TiredThread leastFatigued() {
+        TiredThread best = workers[0];
+        for (TiredThread worker : workers) {
+            if (worker.getFatigue() < best.getFatigue()) {
+                best = worker;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * TaskSource of the workers: own deque first (oldest task first, keeping the contiguous run in order),
+     * then a steal from the back of the most fatigued worker's deque, otherwise sleep until work is pushed.
+     */
+    private Runnable nextTask(TiredThread worker) throws InterruptedException {
+        while (true) {
+            Runnable task = deques[worker.getWorkerId()].pollFirst();
+            if (task == null) {
+                task = steal(worker);
+            }
+            if (task != null) {
+                queued.decrementAndGet();
+                return task;
+            }
+            workLock.lock();
+            try {
+                if (shuttingDown) {
+                    return null;
+                }
+                // the counter only short-cuts the scan; a push after the scan is signalled under this lock
+                if (queued.get() == 0 || !hasQueuedTask()) {
+                    workAvailable.await();
+                }
+            }
+            finally {
+                workLock.unlock();
+            }
+        }
+    }
+
+    private boolean hasQueuedTask() {
+        for (ConcurrentLinkedDeque<Runnable> deque : deques) {
+            if (!deque.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Runnable steal(TiredThread thief) {
+        TiredThread victim = null;
+        for (TiredThread worker : workers) {
+            if (worker != thief && !deques[worker.getWorkerId()].isEmpty()
+                    && (victim == null || worker.getFatigue() > victim.getFatigue())) {
+                victim = worker;
+            }
+        }
+        if (victim == null) {
+            return null;
+        }
+        Runnable task = deques[victim.getWorkerId()].pollLast();
+        if (task != null) {
+            steals.incrementAndGet();
+        }
+        return task;
     }
 
     public void shutdown() throws InterruptedException {
-        // TODO
+        if (owner != null) {
+            waitForInFlight();
+            return;
+        }
+        if (mode == SchedulingMode.WORK_STEALING) {
+            workLock.lock();
+            try {
+                shuttingDown = true;
+                workAvailable.signalAll();
+            }
+            finally {
+                workLock.unlock();
+            }
+        }
+        else if (mode == SchedulingMode.VIRTUAL) {
+            // submitted tasks still need lanes; once they are done, every lane idle again means none is running
+            waitForInFlight();
+            for (int i = 0; i < workers.length; i++) {
+                idle.take();
+            }
+            return;
+        }
+        else {
+            for (TiredThread worker : workers) {
+                worker.shutdown();
+            }
+        }
+        for (TiredThread worker : workers) {
+            worker.join();
+        }
+    }
+
+    /**
+     * The state of each worker, as in getWorkerReport().
+     */
+    public List<WorkerMetrics> getWorkerMetrics() {
+        List<WorkerMetrics> metrics = new ArrayList<>(workers.length);
+        for (TiredThread worker : workers) {
+            metrics.add(new WorkerMetrics(worker.getWorkerId(), worker.getFatigue(), worker.getTimeUsed(),
+                    worker.getTimeIdle()));
+        }
+        return metrics;
     }
 
     public synchronized String getWorkerReport() {
-        // TODO: return readable statistics for each worker
-        return null;
+        StringBuilder report = new StringBuilder();
+        List<Double> fatigues = new ArrayList<>();
+        for (TiredThread worker : workers) {
+            fatigues.add(worker.getFatigue());
+            report.append(String.format("Worker %d (%s): fatigue=%.2f, timeUsed=%.3f ms, timeIdle=%.3f ms%n",
+                    worker.getWorkerId(), worker.getName(), worker.getFatigue(),
+                    worker.getTimeUsed() / 1e6, worker.getTimeIdle() / 1e6));
+        }
+        double average = fatigues.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        double fairness = fatigues.stream().mapToDouble(f -> (f - average) * (f - average)).sum();
+        report.append(String.format("Fairness (sum of squared fatigue deviations): %.2f%n", fairness));
+        if (mode == SchedulingMode.WORK_STEALING) {
+            report.append(String.format("Steals: %d%n", steals.get()));
+        }
+        report.append(String.format("Chunk grain: %d task(s) per chunk (last batch of %d tasks)%n", lastGrain, lastBatchSize));
+        return report.toString();
     }
 }
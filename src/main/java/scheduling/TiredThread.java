@@ -4,6 +4,7 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class TiredThread extends Thread implements Comparable<TiredThread> {
 
@@ -17,6 +18,9 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
     // Single-slot handoff queue; executor will put tasks here
     private final BlockingQueue<Runnable> handoff = new ArrayBlockingQueue<>(1);
 
+    private final TaskSource taskSource; // null unless the executor runs in WORK_STEALING mode
+    private volatile Consumer<TiredThread> idleListener; // told when a task ends, once its time is counted
+
     private final AtomicBoolean busy = new AtomicBoolean(false); // Indicates if the worker is currently executing a task
 
     private final AtomicLong timeUsed = new AtomicLong(0); // Total time spent executing tasks
@@ -24,8 +28,16 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
     private final AtomicLong idleStartTime = new AtomicLong(0); // Timestamp when the worker became idle
 
     public TiredThread(int id, double fatigueFactor) {
+        this(id, fatigueFactor, null);
+    }
+
+    /**
+     * Creates a worker that pulls its tasks from source instead of the handoff slot.
+     */
+    TiredThread(int id, double fatigueFactor, TaskSource source) {
         this.id = id;
         this.fatigueFactor = fatigueFactor;
+        this.taskSource = source;
         this.idleStartTime.set(System.nanoTime());
         setName(String.format("FF=%.2f", fatigueFactor));
     }
@@ -50,6 +62,14 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
         return timeIdle.get();
     }
 
+    /**
+     * Sets the callback run on this worker after each task, once timeUsed includes the task,
+     * so getFatigue() there is the fatigue the worker keeps until its next task.
+     */
+    void setIdleListener(Consumer<TiredThread> listener) {
+        this.idleListener = listener;
+    }
+
     /**
      * Assign a task to this worker.
      * This method is non-blocking: if the worker is not ready to accept a task,
@@ -81,30 +101,18 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
 
     @Override
     public void run() {
+        if (taskSource != null) {
+            runFromSource();
+            return;
+        }
         try{
             while (alive.get()) {
                 Runnable task = handoff.take();
-                long currentTime = System.nanoTime();
-                long idleDuration = currentTime - idleStartTime.get();
-                timeIdle.addAndGet(idleDuration);
                 if (task == POISON_PILL) {
+                    timeIdle.addAndGet(System.nanoTime() - idleStartTime.get());
                     break;
                 }
-                busy.set(true);
-                long startWork = System.nanoTime();
-                try { 
-                    task.run();
-                }
-                catch (RuntimeException e) {
-                    // חשוב מאוד: תופסים שגיאות כדי שה-Thread לא ימות בגלל באג במשימה
-                    System.err.println("Worker " + id + " encountered an error: " + e.getMessage());
-                } 
-                finally {
-                    long workDuration = System.nanoTime() - startWork;
-                    timeUsed.addAndGet(workDuration);
-                    busy.set(false);
-                    idleStartTime.set(System.nanoTime());
-                }
+                execute(task);
             } 
         }
         catch (InterruptedException e) {
@@ -113,6 +121,54 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
         }
     }
 
+    /**
+     * Work-stealing loop: tasks come from the executor's deques instead of the handoff slot.
+     * The source blocks while there is no work and returns null once the executor shuts down.
+     */
+    private void runFromSource() {
+        try {
+            Runnable task;
+            while ((task = taskSource.next(this)) != null) {
+                execute(task);
+            }
+            timeIdle.addAndGet(System.nanoTime() - idleStartTime.get());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs the task on the calling thread, accounted as this worker's work: the VIRTUAL mode lends
+     * an unstarted worker to a virtual thread for one task.
+     */
+    void runAsLane(Runnable task) {
+        execute(task);
+    }
+
+    private void execute(Runnable task) {
+        long startWork = System.nanoTime();
+        timeIdle.addAndGet(startWork - idleStartTime.get());
+        busy.set(true);
+        try { 
+            task.run();
+        }
+        catch (RuntimeException e) {
+            // חשוב מאוד: תופסים שגיאות כדי שה-Thread לא ימות בגלל באג במשימה
+            System.err.println("Worker " + id + " encountered an error: " + e.getMessage());
+        } 
+        finally {
+            long workDuration = System.nanoTime() - startWork;
+            timeUsed.addAndGet(workDuration);
+            busy.set(false);
+            idleStartTime.set(System.nanoTime());
+            Consumer<TiredThread> listener = idleListener;
+            if (listener != null) {
+                listener.accept(this);
+            }
+        }
+    }
+
     @Override
     public int compareTo(TiredThread o) {
         return Double.compare(this.getFatigue(), o.getFatigue());
@@ -0,0 +1,232 @@
+package spl.lae;
+
+import metrics.MetricsSink;
+import parser.*;
+import scheduling.TiredExecutor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Evaluates many input files in one JVM, each to its own output file, on one shared TiredExecutor,
+ * so JVM startup and JIT warm-up are paid once per batch instead of once per file.
+ * Up to maxJobs jobs run at once, each with its own engine, buffer pool and executor view
+ * (see TiredExecutor.forJob()); the result cache and metrics sink of the config are shared.
+ * <p>
+ * Jobs come from a directory (every .json file in it, in name order), a manifest file, or standard input
+ * ("-"). A manifest has one job per line, "input [output]", relative to the manifest's directory; blank
+ * lines and lines starting with # are skipped. Standard input is read line by line as jobs arrive, so the
+ * batch can be kept running as a simple file-based queue, e.g. tail -f jobs.txt | java ... --batch.
+ * A job without an output path writes to the output directory, input name with .out before the extension.
+ * A failed job writes its error to its output file, as a single run does, and the batch goes on.
+ * Nothing is printed while the jobs run; each job's outcome is kept (see getResults() and getReport()).
+ */
+public class BatchRunner {
+
+    private final TiredExecutor executor;
+    private final EngineConfig config;
+    private final Path outputDirectory;
+    private final int maxJobs;
+    private InputMode inputMode = InputMode.STREAMING;
+    private boolean sparse = true;
+    private OutputMode outputMode = OutputMode.STREAMING;
+    private final Queue<JobResult> results = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The outcome of one job: its input and output files, how long it took, and its error if it failed.
+     */
+    public static final class JobResult {
+        private final Path input;
+        private final Path output;
+        private final long nanos;
+        private final String error; // null for a job that succeeded
+
+        JobResult(Path input, Path output, long nanos, String error) {
+            this.input = input;
+            this.output = output;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        public Path getInput() {
+            return input;
+        }
+
+        public Path getOutput() {
+            return output;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public boolean isSucceeded() {
+            return error == null;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s -> %s: %s (%.3f ms)", input, output,
+                    isSucceeded() ? "ok" : "failed: " + error, nanos / 1e6);
+        }
+    }
+
+    public BatchRunner(TiredExecutor executor, EngineConfig config, Path outputDirectory, int maxJobs) {
+        if (maxJobs <= 0) {
+            throw new IllegalArgumentException("Number of concurrent jobs must be positive");
+        }
+        this.executor = executor;
+        this.config = config;
+        this.outputDirectory = outputDirectory;
+        this.maxJobs = maxJobs;
+    }
+
+    public BatchRunner setInputMode(InputMode inputMode, boolean sparse) {
+        this.inputMode = inputMode;
+        this.sparse = sparse;
+        return this;
+    }
+
+    public BatchRunner setOutputMode(OutputMode outputMode) {
+        this.outputMode = outputMode;
+        return this;
+    }
+
+    /**
+     * Runs every job from source (a directory, a manifest file or "-") and returns once all of them
+     * are done. The shared executor is left running.
+     */
+    public void run(String source) throws IOException, InterruptedException {
+        Files.createDirectories(outputDirectory);
+        ExecutorService jobs = Executors.newFixedThreadPool(maxJobs);
+        try {
+            if (source.equals("-")) {
+                readManifest(new BufferedReader(new InputStreamReader(System.in)), Path.of(""), jobs);
+            }
+            else if (Files.isDirectory(Path.of(source))) {
+                List<Path> inputs;
+                try (Stream<Path> files = Files.list(Path.of(source))) {
+                    inputs = files.filter(file -> file.getFileName().toString().endsWith(".json"))
+                            .sorted().collect(Collectors.toList());
+                }
+                for (Path input : inputs) {
+                    submit(jobs, input, null);
+                }
+            }
+            else {
+                Path manifest = Path.of(source).toAbsolutePath();
+                try (BufferedReader in = Files.newBufferedReader(manifest)) {
+                    readManifest(in, manifest.getParent(), jobs);
+                }
+            }
+        }
+        finally {
+            jobs.shutdown();
+            jobs.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void readManifest(BufferedReader in, Path base, ExecutorService jobs) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] paths = line.split("\\s+");
+            if (paths.length > 2) {
+                throw new IllegalArgumentException("Manifest lines are \"input [output]\", got: " + line);
+            }
+            submit(jobs, base.resolve(paths[0]), (paths.length == 2) ? base.resolve(paths[1]) : null);
+        }
+    }
+
+    private void submit(ExecutorService jobs, Path input, Path output) {
+        Path target = (output != null) ? output : outputDirectory.resolve(outputName(input));
+        jobs.execute(() -> runJob(input, target));
+    }
+
+    /**
+     * "a.json" becomes "a.out.json", and a name without an extension gets ".out" appended.
+     */
+    static String outputName(Path input) {
+        String name = input.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return (dot <= 0) ? name + ".out" : name.substring(0, dot) + ".out" + name.substring(dot);
+    }
+
+    private void runJob(Path input, Path output) {
+        long started = System.nanoTime();
+        String error = null;
+        try {
+            ComputationNode root = new InputParser(inputMode, sparse).parse(input.toString());
+            LinearAlgebraEngine engine = new LinearAlgebraEngine(executor.forJob(), jobConfig());
+            OutputWriter.write(engine.run(root), output.toString(), outputMode);
+        }
+        catch (Exception e) {
+            error = String.valueOf(e.getMessage());
+            try {
+                OutputWriter.write(e.getMessage(), output.toString());
+            }
+            catch (IOException written) {
+                error += "; could not write the error either: " + written.getMessage();
+            }
+        }
+        results.add(new JobResult(input, output, System.nanoTime() - started, error));
+    }
+
+    /**
+     * The config of one job: a share of the buffer pool, and whole runs sent to the shared metrics sink.
+     */
+    private EngineConfig jobConfig() {
+        EngineConfig job = config.copy().setBufferPoolBytes(config.getBufferPoolBytes() / maxJobs);
+        if (config.getMetricsSink() != null) {
+            job.setMetricsSink(MetricsSink.wholeRuns(config.getMetricsSink()));
+        }
+        return job;
+    }
+
+    /**
+     * The outcome of every finished job, by input path.
+     */
+    public List<JobResult> getResults() {
+        return results.stream().sorted(Comparator.comparing(JobResult::getInput)).collect(Collectors.toList());
+    }
+
+    public int getSucceeded() {
+        return (int) results.stream().filter(JobResult::isSucceeded).count();
+    }
+
+    public int getFailed() {
+        return results.size() - getSucceeded();
+    }
+
+    /**
+     * One line per job, as JobResult.toString(), then the totals.
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        for (JobResult result : getResults()) {
+            report.append("Job ").append(result).append(System.lineSeparator());
+        }
+        report.append(String.format("Batch: %d job(s) succeeded, %d failed, at most %d at once",
+                getSucceeded(), getFailed(), maxJobs));
+        return report.toString();
+    }
+}
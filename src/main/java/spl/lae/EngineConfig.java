@@ -0,0 +1,257 @@
+package spl.lae;
+
+import memory.KernelSet;
+import memory.MatrixStorage;
+import metrics.MetricsSink;
+import scheduling.SchedulingMode;
+
+import java.nio.file.Path;
+
+/**
+ * Tuning options for LinearAlgebraEngine. The defaults are what Main uses when no flags are given.
+ */
+public class EngineConfig {
+
+    public static final int AUTO_TILE_SIZE = 0; // tile size is measured at startup
+    public static final long IN_MEMORY = 0; // no memory budget: every matrix lives on the heap
+
+    private MultiplyMode multiplyMode = MultiplyMode.TILED;
+    private int tileSize = AUTO_TILE_SIZE;
+    private KernelSet kernelSet = KernelSet.AUTO;
+    private MatrixStorage storage = MatrixStorage.PER_VECTOR;
+    private SchedulingMode schedulingMode = SchedulingMode.HANDOFF;
+    private boolean chunking = true;
+    private boolean parallelTree = true;
+    private boolean chainOrdering = true;
+    private boolean rewriting = true;
+    private boolean fusion = true;
+    private boolean commonSubexpressions = true;
+    private ResultCache resultCache = null;
+    private MetricsSink metricsSink = null;
+    private long memoryBudget = IN_MEMORY;
+    private Path scratchDirectory = Path.of(System.getProperty("java.io.tmpdir"));
+    private long bufferPoolBytes = Runtime.getRuntime().maxMemory() / 4;
+
+    public MultiplyMode getMultiplyMode() {
+        return multiplyMode;
+    }
+
+    public EngineConfig setMultiplyMode(MultiplyMode multiplyMode) {
+        this.multiplyMode = multiplyMode;
+        return this;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public EngineConfig setTileSize(int tileSize) {
+        if (tileSize < 0) {
+            throw new IllegalArgumentException("Tile size must be positive (or AUTO_TILE_SIZE)");
+        }
+        this.tileSize = tileSize;
+        return this;
+    }
+
+    public KernelSet getKernelSet() {
+        return kernelSet;
+    }
+
+    public EngineConfig setKernelSet(KernelSet kernelSet) {
+        this.kernelSet = kernelSet;
+        return this;
+    }
+
+    /**
+     * How the engine stores the operand matrices it loads: one array per vector, or one contiguous
+     * array per matrix with vectors as views into it (see memory.MatrixStorage). CONTIGUOUS copies
+     * each operand as it is loaded, so results no longer reuse the rows of their operands.
+     */
+    public MatrixStorage getStorage() {
+        return storage;
+    }
+
+    public EngineConfig setStorage(MatrixStorage storage) {
+        this.storage = storage;
+        return this;
+    }
+
+    public SchedulingMode getSchedulingMode() {
+        return schedulingMode;
+    }
+
+    public EngineConfig setSchedulingMode(SchedulingMode schedulingMode) {
+        this.schedulingMode = schedulingMode;
+        return this;
+    }
+
+    /**
+     * Whether row tasks are grouped into chunks whose size adapts to the per-row cost
+     * (see TiredExecutor.submitAll(List, double)).
+     */
+    public boolean isChunking() {
+        return chunking;
+    }
+
+    public EngineConfig setChunking(boolean chunking) {
+        this.chunking = chunking;
+        return this;
+    }
+
+    /**
+     * Whether all independent nodes of the tree are evaluated concurrently, instead of one
+     * resolvable node per round.
+     */
+    public boolean isParallelTree() {
+        return parallelTree;
+    }
+
+    public EngineConfig setParallelTree(boolean parallelTree) {
+        this.parallelTree = parallelTree;
+        return this;
+    }
+
+    /**
+     * Whether n-ary MULTIPLY nodes are parenthesized by cost (parser.MatrixChainPlanner)
+     * instead of left to right.
+     */
+    public boolean isChainOrdering() {
+        return chainOrdering;
+    }
+
+    public EngineConfig setChainOrdering(boolean chainOrdering) {
+        this.chainOrdering = chainOrdering;
+        return this;
+    }
+
+    /**
+     * Whether the tree is simplified by parser.TreeOptimizer (e.g. T(T(A)) -> A, A + (-B) -> A - B) before it runs.
+     */
+    public boolean isRewriting() {
+        return rewriting;
+    }
+
+    public EngineConfig setRewriting(boolean rewriting) {
+        this.rewriting = rewriting;
+        return this;
+    }
+
+    /**
+     * Whether chains of element-wise operations are computed in one pass each (see parser.ElementwiseFusion).
+     * Only applies in memory.
+     */
+    public boolean isFusion() {
+        return fusion;
+    }
+
+    public EngineConfig setFusion(boolean fusion) {
+        this.fusion = fusion;
+        return this;
+    }
+
+    /**
+     * Whether identical subtrees are merged and computed once (see parser.CommonSubexpressions).
+     * Only applies in memory.
+     */
+    public boolean isCommonSubexpressions() {
+        return commonSubexpressions;
+    }
+
+    public EngineConfig setCommonSubexpressions(boolean commonSubexpressions) {
+        this.commonSubexpressions = commonSubexpressions;
+        return this;
+    }
+
+    /**
+     * The cache that results are looked up in and stored to, or null (the default) for none.
+     * Only applies in memory.
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public EngineConfig setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+        return this;
+    }
+
+    /**
+     * Where the metrics of each computed node and of the run are sent, or null (the default) to not
+     * collect any. Tasks are only timed when a sink is set. Only applies in memory.
+     */
+    public MetricsSink getMetricsSink() {
+        return metricsSink;
+    }
+
+    public EngineConfig setMetricsSink(MetricsSink metricsSink) {
+        this.metricsSink = metricsSink;
+        return this;
+    }
+
+    /**
+     * Heap bytes the out-of-core mode may use for the blocks in flight, or IN_MEMORY.
+     * With a budget, every intermediate result lives in a memory-mapped scratch file
+     * (see OutOfCoreEvaluator).
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public EngineConfig setMemoryBudget(long memoryBudget) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("Memory budget must be positive (or IN_MEMORY)");
+        }
+        this.memoryBudget = memoryBudget;
+        return this;
+    }
+
+    public Path getScratchDirectory() {
+        return scratchDirectory;
+    }
+
+    public EngineConfig setScratchDirectory(Path scratchDirectory) {
+        this.scratchDirectory = scratchDirectory;
+        return this;
+    }
+
+    /**
+     * How many bytes of released result rows the engine keeps for reuse (see memory.BufferPool).
+     * 0 turns recycling off.
+     */
+    public long getBufferPoolBytes() {
+        return bufferPoolBytes;
+    }
+
+    public EngineConfig setBufferPoolBytes(long bufferPoolBytes) {
+        if (bufferPoolBytes < 0) {
+            throw new IllegalArgumentException("Buffer pool size must be positive (or 0)");
+        }
+        this.bufferPoolBytes = bufferPoolBytes;
+        return this;
+    }
+
+    /**
+     * A config with the same settings, to be changed for one engine without affecting the others.
+     * The result cache and metrics sink are shared, not copied.
+     */
+    public EngineConfig copy() {
+        EngineConfig copy = new EngineConfig();
+        copy.multiplyMode = multiplyMode;
+        copy.tileSize = tileSize;
+        copy.kernelSet = kernelSet;
+        copy.storage = storage;
+        copy.schedulingMode = schedulingMode;
+        copy.chunking = chunking;
+        copy.parallelTree = parallelTree;
+        copy.chainOrdering = chainOrdering;
+        copy.rewriting = rewriting;
+        copy.fusion = fusion;
+        copy.commonSubexpressions = commonSubexpressions;
+        copy.resultCache = resultCache;
+        copy.metricsSink = metricsSink;
+        copy.memoryBudget = memoryBudget;
+        copy.scratchDirectory = scratchDirectory;
+        copy.bufferPoolBytes = bufferPoolBytes;
+        return copy;
+    }
+}
@@ -2,52 +2,1024 @@ package spl.lae;
 
 import parser.*;
 import memory.*;
+import metrics.*;
 import scheduling.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 public class LinearAlgebraEngine {
 
     private SharedMatrix leftMatrix = new SharedMatrix();
     private SharedMatrix rightMatrix = new SharedMatrix();
     private TiredExecutor executor;
+    private final EngineConfig config;
+    private final int tileSize;
+    private final BufferPool bufferPool; // rows of intermediate results, recycled once their consumer has run
+    private final Map<ComputationNode, Fingerprint> cacheable = new IdentityHashMap<>(); // stored to the cache when resolved
+    private MetricsSink metrics = null; // set by run() from the config, in memory only
+    private final Map<ComputationNode, Integer> nodeIds = new IdentityHashMap<>(); // of the recorded nodes
+    private final LatencyHistogram dispatchLatency = new LatencyHistogram();
+    private final List<String> passReports = new ArrayList<>(); // of the passes that changed the tree
 
     public LinearAlgebraEngine(int numThreads) {
-        // TODO: create executor with given thread count
+        this(numThreads, new EngineConfig());
     }
 
+    public LinearAlgebraEngine(int numThreads, EngineConfig config) {
+        this(new TiredExecutor(numThreads, config.getSchedulingMode()), config);
+    }
+
+    /**
+     * An engine that runs on the given executor instead of creating one, e.g. a TiredExecutor.forJob()
+     * view of a pool shared by concurrent engines. run() shuts it down like its own; the scheduling mode
+     * of the config is ignored.
+     */
+    public LinearAlgebraEngine(TiredExecutor executor, EngineConfig config) {
+        this.config = config;
+        Kernels.select(config.getKernelSet()); // kernels are per JVM; the last engine created wins
+        this.executor = executor;
+        this.bufferPool = new BufferPool(config.getBufferPoolBytes());
+        if (config.getMultiplyMode() == MultiplyMode.TILED && config.getTileSize() == EngineConfig.AUTO_TILE_SIZE) {
+            this.tileSize = TiledMultiply.autoTune();
+        }
+        else {
+            this.tileSize = (config.getTileSize() > 0) ? config.getTileSize() : TiledMultiply.DEFAULT_TILE_SIZE;
+        }
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * The pool the result rows of multiplications come from. Its counters show how much of the evaluation
+     * allocated new rows and how much reused the rows of consumed intermediate results.
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Describes the kernel set the SharedVector operations are using, e.g. "simd (256-bit, 4 lanes)".
+     */
+    public String getKernelReport() {
+        return Kernels.describe();
+    }
+
+    /**
+     * The reports of the tree passes of the last run that changed the tree, in the order they ran,
+     * e.g. the rewrites TreeOptimizer applied. Empty when no pass changed anything.
+     */
+    public List<String> getPassReports() {
+        return passReports;
+    }
+
+    /**
+     * Resolves the tree until the root holds a matrix, either one node per round or,
+     * with EngineConfig.isParallelTree(), every ready node at once (see runParallel()).
+     * The tree is first simplified by TreeOptimizer and its n-ary products reordered by MatrixChainPlanner,
+     * unless those passes are disabled. With a memory budget the tree is evaluated out of core instead
+     * (see OutOfCoreEvaluator) and the root is resolved to a binary result file. In memory, identical
+     * subtrees are merged by CommonSubexpressions, results found in the configured ResultCache are reused
+     * (see useCache()), and chains of element-wise operations are fused by ElementwiseFusion.
+     * With a MetricsSink in the config, every computed node and the run as a whole are recorded to it.
+     * The executor is shut down when the computation ends, whether it succeeded or not.
+     */
     public ComputationNode run(ComputationNode computationRoot) {
-        // TODO: resolve computation tree step by step until final matrix is produced
-        return null;
+        long started = System.nanoTime();
+        long lockWaitBefore = LockWaits.total();
+        long pooledBefore = bufferPool.getAllocatedBytes();
+        passReports.clear();
+        metrics = null;
+        try {
+            if (config.isRewriting()) {
+                TreeOptimizer optimizer = new TreeOptimizer();
+                optimizer.optimize(computationRoot);
+                if (!optimizer.getRewrites().isEmpty()) {
+                    passReports.add(optimizer.getReport());
+                }
+            }
+            if (config.isChainOrdering()) {
+                MatrixChainPlanner planner = new MatrixChainPlanner();
+                planner.plan(computationRoot);
+                if (planner.getChainsPlanned() > 0) {
+                    passReports.add(planner.getReport());
+                }
+            }
+            boolean inMemory = config.getMemoryBudget() == EngineConfig.IN_MEMORY;
+            ResultCache cache = config.getResultCache();
+            metrics = inMemory ? config.getMetricsSink() : null;
+            if (metrics != null) {
+                LockWaits.enable();
+            }
+            if (inMemory && (config.isCommonSubexpressions() || cache != null)) {
+                CommonSubexpressions subexpressions = new CommonSubexpressions();
+                if (config.isCommonSubexpressions()) {
+                    subexpressions.eliminate(computationRoot);
+                    if (subexpressions.getSubtreesMerged() > 0) {
+                        passReports.add(subexpressions.getReport());
+                    }
+                }
+                if (cache != null) {
+                    useCache(computationRoot, true, subexpressions, cache);
+                }
+            }
+            if (config.isFusion() && inMemory) {
+                ElementwiseFusion fusion = new ElementwiseFusion();
+                fusion.fuse(computationRoot);
+                if (fusion.getSubtreesFused() > 0) {
+                    passReports.add(fusion.getReport());
+                }
+            }
+            if (config.getMemoryBudget() != EngineConfig.IN_MEMORY) {
+                try {
+                    new OutOfCoreEvaluator(executor, config).run(computationRoot);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException("Out-of-core evaluation failed: " + e.getMessage(), e);
+                }
+            }
+            else if (config.isParallelTree()) {
+                runParallel(computationRoot);
+            }
+            else {
+                runSequential(computationRoot);
+            }
+            if (metrics != null) {
+                metrics.runFinished(new RunMetrics(System.nanoTime() - started, nodeIds.size(), dispatchLatency,
+                        LockWaits.total() - lockWaitBefore, bufferPool.getAllocatedBytes() - pooledBefore,
+                        executor.getWorkerMetrics()));
+            }
+            return computationRoot;
+        }
+        finally {
+            if (metrics != null) {
+                LockWaits.disable();
+            }
+            try {
+                executor.shutdown();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Resolves the root and every product that the cache holds, top-down, so a hit skips its whole
+     * subtree. The others are remembered and stored to the cache once resolved (see resolved()).
+     */
+    private void useCache(ComputationNode node, boolean root, CommonSubexpressions subexpressions, ResultCache cache) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX || cacheable.containsKey(node)) {
+            return;
+        }
+        if (root || node.getNodeType() == ComputationNodeType.MULTIPLY) {
+            Fingerprint fingerprint = subexpressions.fingerprint(node);
+            if (cache.resolve(fingerprint, node)) {
+                return;
+            }
+            cacheable.put(node, fingerprint);
+        }
+        for (ComputationNode child : node.getChildren()) {
+            useCache(child, false, subexpressions, cache);
+        }
+    }
+
+    /**
+     * Called once node is resolved: stores its result to the cache if useCache() asked for it, and sends
+     * its metrics when it was recorded.
+     */
+    private void resolved(ComputationNode node, Recording recording) {
+        Fingerprint fingerprint = cacheable.remove(node);
+        if (fingerprint != null) {
+            config.getResultCache().put(fingerprint, node);
+        }
+        if (recording != null) {
+            metrics.nodeResolved(recording.recorder.finish(recording.id, recording.type, recording.inputs,
+                    executor.getNumThreads(), rows(node), columns(node), recording.flops, recording.bytesMoved));
+        }
+    }
+
+    private void runSequential(ComputationNode computationRoot) {
+        ComputationNode node = computationRoot.findResolvable();
+        while (node != null) {
+            if (node.getChildren().size() > 2 && node.getNodeType() != ComputationNodeType.FUSED) {
+                node.associativeNesting();
+            }
+            else {
+                loadAndCompute(node);
+            }
+            node = computationRoot.findResolvable();
+        }
     }
 
     public void loadAndCompute(ComputationNode node) {
-        // TODO: load operand matrices
-        // TODO: create compute tasks & submit tasks to executor
+        // fresh matrices: the result may keep the left one (see ComputationNode.resolveShared())
+        leftMatrix = newMatrix();
+        rightMatrix = newMatrix();
+        Recording recording = startRecording(node);
+        PreparedNode prepared = prepare(node, leftMatrix, rightMatrix);
+        if (recording != null) {
+            recording.planned(node);
+        }
+        if (!prepared.tasks.isEmpty()) { // a TRANSPOSE has no tasks
+            List<Runnable> tasks = config.isChunking() ? executor.chunk(prepared.tasks, prepared.costPerTask)
+                    : prepared.tasks;
+            executor.submitAll((recording != null) ? recording.recorder.wrap(tasks) : tasks);
+        }
+        prepared.resolve(node, bufferPool);
+        resolved(node, recording);
+    }
+
+    // ---- metrics ----
+
+    /**
+     * A node being recorded for the metrics sink: its recorder, and what is known of it before it is resolved.
+     */
+    private final class Recording {
+        final NodeRecorder recorder = new NodeRecorder(dispatchLatency);
+        final int id;
+        final String type;
+        final List<Integer> inputs = new ArrayList<>();
+        double flops = 0;
+        long bytesMoved = 0;
+
+        Recording(ComputationNode node) {
+            this.id = nodeIds.size();
+            this.type = node.getNodeType().name();
+            nodeIds.put(node, id);
+        }
+
+        /**
+         * Called once the node's tasks exist, i.e. its operands are known to be valid.
+         */
+        void planned(ComputationNode node) {
+            recorder.planned();
+            for (ComputationNode child : node.getChildren()) {
+                Integer input = nodeIds.get(child);
+                if (input != null) { // computed in this run, not an input matrix
+                    inputs.add(input);
+                }
+            }
+            estimate(node);
+        }
+
+        /**
+         * Element operations (a multiply-add counts as two) and bytes read and written by a straightforward
+         * kernel for the node, from the shapes. Sparse operands are counted as dense.
+         */
+        private void estimate(ComputationNode node) {
+            List<ComputationNode> children = node.getChildren();
+            switch (node.getNodeType()) {
+                case MULTIPLY: {
+                    double m = rows(children.get(0));
+                    double k = columns(children.get(0));
+                    double n = columns(children.get(1));
+                    flops = 2 * m * k * n;
+                    bytesMoved = (long) ((m * k + k * n + m * n) * Double.BYTES);
+                    break;
+                }
+                case ADD:
+                case SUBTRACT:
+                case NEGATE: {
+                    double elements = (double) rows(children.get(0)) * columns(children.get(0));
+                    flops = elements;
+                    bytesMoved = (long) ((children.size() + 1) * elements * Double.BYTES);
+                    break;
+                }
+                case FUSED: {
+                    int[] shape = fusedShape(node.getFusedExpression());
+                    double elements = (double) shape[0] * shape[1];
+                    flops = Math.max(1, children.size() - 1) * elements;
+                    bytesMoved = (long) ((children.size() + 1) * elements * Double.BYTES);
+                    break;
+                }
+                default: // a TRANSPOSE moves no data
+                    break;
+            }
+        }
+    }
+
+    private Recording startRecording(ComputationNode node) {
+        return (metrics != null) ? new Recording(node) : null;
+    }
+
+    // ---- whole-tree evaluation ----
+
+    /**
+     * A node waiting for its children (pendingChildren > 0) or for its own tasks (remainingTasks > 0).
+     * pendingChildren is only touched by the thread running runParallel().
+     */
+    private static final class PendingNode {
+        final ComputationNode node;
+        final List<PendingNode> parents = new ArrayList<>(1); // more than one for a merged subtree
+        int pendingChildren = 0;
+        final AtomicInteger remainingTasks = new AtomicInteger();
+        volatile boolean failed = false;
+        PreparedNode prepared;
+        Recording recording;
+
+        PendingNode(ComputationNode node) {
+            this.node = node;
+        }
+    }
+
+    /**
+     * Evaluates every node whose operands are ready at the same time. Each node counts its unresolved
+     * children; when a node's last task finishes it is reported back to this thread, which resolves it
+     * and starts its parent as soon as the parent's counter drops to zero. The tree is never rescanned,
+     * and independent subtrees share the executor instead of waiting on each other's barriers.
+     */
+    private void runParallel(ComputationNode root) {
+        nestAll(root);
+        if (root.getNodeType() == ComputationNodeType.MATRIX) {
+            return;
+        }
+        BlockingQueue<PendingNode> finished = new LinkedBlockingQueue<>();
+        List<PendingNode> ready = new ArrayList<>();
+        PendingNode pendingRoot = plan(root, ready, new IdentityHashMap<>());
+        for (PendingNode pending : ready) {
+            start(pending, finished);
+        }
+        while (true) {
+            PendingNode done;
+            try {
+                done = finished.take();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while evaluating the computation tree", e);
+            }
+            if (done.failed) {
+                executor.awaitAll(); // rethrows the task's exception once the in-flight tasks drain
+                throw new IllegalStateException("A task of " + done.node.getNodeType() + " failed");
+            }
+            done.prepared.resolve(done.node, bufferPool);
+            done.prepared = null;
+            resolved(done.node, done.recording);
+            if (done == pendingRoot) {
+                return;
+            }
+            for (PendingNode parent : done.parents) {
+                parent.pendingChildren--;
+                if (parent.pendingChildren == 0) {
+                    start(parent, finished);
+                }
+            }
+        }
+    }
+
+    static void nestAll(ComputationNode node) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            return;
+        }
+        node.associativeNesting();
+        for (ComputationNode child : node.getChildren()) {
+            nestAll(child);
+        }
+    }
+
+    /**
+     * Creates the PendingNode of node and of each unresolved node below it, once per node even where the
+     * tree is a DAG (see CommonSubexpressions), and adds the ones without pending children to ready.
+     */
+    private static PendingNode plan(ComputationNode node, List<PendingNode> ready,
+                                    Map<ComputationNode, PendingNode> planned) {
+        PendingNode pending = new PendingNode(node);
+        planned.put(node, pending);
+        for (ComputationNode child : node.getChildren()) {
+            if (child.getNodeType() != ComputationNodeType.MATRIX) {
+                pending.pendingChildren++;
+                PendingNode pendingChild = planned.get(child);
+                if (pendingChild == null) {
+                    pendingChild = plan(child, ready, planned);
+                }
+                pendingChild.parents.add(pending);
+            }
+        }
+        if (pending.pendingChildren == 0) {
+            ready.add(pending);
+        }
+        return pending;
+    }
+
+    private void start(PendingNode pending, BlockingQueue<PendingNode> finished) {
+        pending.recording = startRecording(pending.node);
+        pending.prepared = prepare(pending.node, newMatrix(), newMatrix());
+        if (pending.recording != null) {
+            pending.recording.planned(pending.node);
+        }
+        List<Runnable> tasks = pending.prepared.tasks;
+        if (tasks.isEmpty()) {
+            finished.add(pending);
+            return;
+        }
+        if (config.isChunking()) {
+            tasks = executor.chunk(tasks, pending.prepared.costPerTask);
+        }
+        if (pending.recording != null) {
+            tasks = pending.recording.recorder.wrap(tasks);
+        }
+        pending.remainingTasks.set(tasks.size());
+        List<Runnable> tracked = new ArrayList<>(tasks.size());
+        for (Runnable task : tasks) {
+            tracked.add(() -> {
+                try {
+                    task.run();
+                }
+                catch (RuntimeException e) {
+                    pending.failed = true;
+                    throw e;
+                }
+                finally {
+                    if (pending.remainingTasks.decrementAndGet() == 0) {
+                        finished.add(pending);
+                    }
+                }
+            });
+        }
+        executor.dispatch(tracked);
+    }
+
+    // ---- planning of a single node ----
+
+    /**
+     * The tasks of one node and where its result can be read once they have all run: result, or
+     * sparseResult for a sparse one, or sharedResult for rows that stay in the SharedMatrix they were
+     * computed in. With transposedResult the result is stored transposed (see ComputationNode.resolveTransposed()).
+     * The rows of the consumed operands are given back to the buffer pool after the node is resolved and
+     * was their last reader (see ComputationNode.removeReader()); the pool only takes rows it handed out itself.
+     */
+    private static final class PreparedNode {
+        final List<Runnable> tasks;
+        final double costPerTask; // element operations per task, used to pick the chunk grain
+        final Supplier<double[][]> result;
+        final Supplier<SparseMatrix> sparseResult;
+        final SharedMatrix sharedResult;
+        final boolean transposedResult;
+        final List<ComputationNode> consumed = new ArrayList<>(2);
+        Runnable cleanup = null;
+
+        PreparedNode(List<Runnable> tasks, double costPerTask, Supplier<double[][]> result) {
+            this(tasks, costPerTask, result, false);
+        }
+
+        PreparedNode(List<Runnable> tasks, double costPerTask, Supplier<double[][]> result, boolean transposedResult) {
+            this(tasks, costPerTask, result, null, null, transposedResult);
+        }
+
+        private PreparedNode(List<Runnable> tasks, double costPerTask, Supplier<double[][]> result,
+                             Supplier<SparseMatrix> sparseResult, SharedMatrix sharedResult, boolean transposedResult) {
+            this.tasks = tasks;
+            this.costPerTask = costPerTask;
+            this.result = result;
+            this.sparseResult = sparseResult;
+            this.sharedResult = sharedResult;
+            this.transposedResult = transposedResult;
+        }
+
+        static PreparedNode of(SparseKernels.Job job, boolean transposedResult) {
+            return job.isSparse()
+                    ? new PreparedNode(job.getTasks(), job.getCostPerTask(), null, job::getSparse, null, transposedResult)
+                    : new PreparedNode(job.getTasks(), job.getCostPerTask(), job::getDense, null, null, transposedResult);
+        }
+
+        static PreparedNode shared(List<Runnable> tasks, double costPerTask, SharedMatrix result, boolean transposedResult) {
+            return new PreparedNode(tasks, costPerTask, null, null, result, transposedResult);
+        }
+
+        /**
+         * Marks an operand's rows as free to reuse once the result has been read. Only for operands
+         * that the result does not share rows with.
+         */
+        PreparedNode consumes(ComputationNode operand) {
+            consumed.add(operand);
+            return this;
+        }
+
+        /**
+         * Runs cleanup after the node is resolved, e.g. to give scratch buffers back to the pool.
+         */
+        PreparedNode afterwards(Runnable cleanup) {
+            this.cleanup = cleanup;
+            return this;
+        }
+
+        void resolve(ComputationNode node, BufferPool pool) {
+            List<ComputationNode> operands = node.getChildren();
+            if (sparseResult != null) {
+                node.resolveSparse(sparseResult.get(), transposedResult);
+            }
+            else if (sharedResult != null) {
+                node.resolveShared(sharedResult, transposedResult);
+            }
+            else if (transposedResult) {
+                node.resolveTransposed(result.get());
+            }
+            else {
+                node.resolve(result.get());
+            }
+            for (ComputationNode operand : operands) {
+                if (operand.removeReader() && consumed.contains(operand)) {
+                    pool.releaseRows(operand.getStoredMatrix());
+                }
+            }
+            if (cleanup != null) {
+                cleanup.run();
+            }
+        }
+    }
+
+    /**
+     * Validates the node's operands, loads them into left (and right) and creates its tasks.
+     * A node marked negated by TreeOptimizer negates each row (or tile) inside the same task.
+     * TRANSPOSE moves no data: its result is the operand's matrix marked as transposed, and each
+     * consumer reads it in whichever layout suits its kernel, copying only when it has to.
+     * Results computed in place stay in their SharedMatrix, and an operand that still holds one is
+     * worked on directly instead of being loaded again (see ComputationNode.getSharedMatrix()).
+     * Nodes with a sparse operand are handed to prepareSparse(), and FUSED nodes to prepareFused().
+     */
+    private PreparedNode prepare(ComputationNode node, SharedMatrix left, SharedMatrix right) {
+        if (node.getNodeType() == ComputationNodeType.FUSED) {
+            return prepareFused(node);
+        }
+        List<ComputationNode> children = node.getChildren();
+        for (ComputationNode child : children) {
+            if (child.getSparse() != null) {
+                return prepareSparse(node);
+            }
+        }
+        switch (node.getNodeType()) {
+            case ADD:
+            case SUBTRACT: {
+                requireOperands(node, 2);
+                ComputationNode a = children.get(0);
+                ComputationNode b = children.get(1);
+                if (rows(a) != rows(b) || columns(a) != columns(b)) {
+                    throw new IllegalArgumentException("Illegal operation: dimensions mismatch");
+                }
+                // T(A) + T(B) = T(A + B): the stored matrices are added as they are and the sum stays
+                // transposed. With mixed layouts the transposed operand is materialized.
+                boolean transposed = a.isTransposed() && b.isTransposed();
+                SharedMatrix sum = writable(a, left, transposed);
+                SharedMatrix other = transposed ? stored(b, right) : value(b, right);
+                List<Runnable> tasks = (node.getNodeType() == ComputationNodeType.SUBTRACT)
+                        ? createSubtractTasks(sum, other)
+                        : createAddTasks(sum, other, node.isNegated());
+                // the sum is computed into the rows of A, which become the result
+                return PreparedNode.shared(tasks, sum.columnCount(), sum, transposed).consumes(b);
+            }
+            case MULTIPLY: {
+                requireOperands(node, 2);
+                ComputationNode a = children.get(0);
+                ComputationNode b = children.get(1);
+                if (columns(a) != rows(b)) {
+                    throw new IllegalArgumentException("Illegal operation: dimensions mismatch");
+                }
+                if (config.getMultiplyMode() == MultiplyMode.TILED) {
+                    // packing reads a column-major view with a strided copy, so transposes cost nothing extra
+                    TiledMultiply product = new TiledMultiply(frozen(load(left, a)), frozen(load(right, b)), tileSize,
+                            node.isNegated(), bufferPool);
+                    return new PreparedNode(product.createTileTasks(), (double) tileSize * tileSize * columns(a),
+                            product::getResult).consumes(a).consumes(b).afterwards(product::release);
+                }
+                // vecMatMul replaces the rows of A, so A's own rows are taken out to be recycled afterwards
+                left.loadRowMajor(a.getMatrix());
+                if (b.isTransposed()) {
+                    // A * T(B): the rows of the stored B are the columns of T(B), wrapped as column vectors,
+                    // and element (i, j) is the dot product of row i of A and column j
+                    right.loadColumnMajor(b.getStoredMatrix());
+                    left.freeze();
+                    right.freeze();
+                    double[][] product = new double[rows(a)][];
+                    for (int i = 0; i < product.length; i++) {
+                        product[i] = bufferPool.acquire(columns(b));
+                    }
+                    return new PreparedNode(createRowDotTasks(left, right, product, node.isNegated()),
+                            (double) columns(a) * columns(b), () -> product).consumes(a).consumes(b);
+                }
+                // every row of A is replaced by a pooled row holding its product
+                return PreparedNode.shared(createMultiplyTasks(left, frozen(value(b, right)), node.isNegated(), bufferPool),
+                        (double) columns(a) * columns(b), left, false).consumes(a).consumes(b);
+            }
+            case NEGATE: {
+                requireOperands(node, 1);
+                ComputationNode a = children.get(0);
+                // element-wise, so a transposed operand is negated as stored and stays transposed
+                SharedMatrix negated = writable(a, left, true);
+                return PreparedNode.shared(createNegateTasks(negated), negated.columnCount(), negated, a.isTransposed());
+            }
+            case TRANSPOSE: {
+                requireOperands(node, 1);
+                ComputationNode a = children.get(0);
+                if (a.isShared()) {
+                    // the result would share a's rows, and could be overwritten by its reader
+                    return PreparedNode.shared(List.of(), 0, writable(a, left, true), !a.isTransposed());
+                }
+                if (a.getSharedMatrix() != null) {
+                    return PreparedNode.shared(List.of(), 0, a.getSharedMatrix(), !a.isTransposed());
+                }
+                double[][] stored = a.getStoredMatrix();
+                return new PreparedNode(List.of(), 0, () -> stored, !a.isTransposed());
+            }
+            default:
+                throw new IllegalArgumentException("Cannot compute node of type " + node.getNodeType());
+        }
+    }
+
+    /**
+     * Like prepare(), for a node with at least one sparse operand (see SparseKernels). Negations are folded
+     * into the kernels' signs, and each kernel decides from the estimated fill whether its result is sparse.
+     * A transposed sparse operand stays transposed when the kernel can use it as stored (element-wise
+     * operations on operands that are all transposed, and TRANSPOSE itself), and is converted otherwise.
+     */
+    private PreparedNode prepareSparse(ComputationNode node) {
+        List<ComputationNode> children = node.getChildren();
+        double sign = node.isNegated() ? -1 : 1;
+        switch (node.getNodeType()) {
+            case ADD:
+            case SUBTRACT: {
+                requireOperands(node, 2);
+                ComputationNode a = children.get(0);
+                ComputationNode b = children.get(1);
+                if (rows(a) != rows(b) || columns(a) != columns(b)) {
+                    throw new IllegalArgumentException("Illegal operation: dimensions mismatch");
+                }
+                double signB = (node.getNodeType() == ComputationNodeType.SUBTRACT) ? -sign : sign;
+                boolean transposed = a.isTransposed() && b.isTransposed();
+                if (a.getSparse() != null && b.getSparse() != null) {
+                    SparseMatrix sa = transposed ? a.getSparse() : sparseValue(a);
+                    SparseMatrix sb = transposed ? b.getSparse() : sparseValue(b);
+                    return PreparedNode.of(SparseKernels.add(sa, sign, sb, signB), transposed);
+                }
+                if (a.getSparse() != null) {
+                    SparseMatrix sa = transposed ? a.getSparse() : sparseValue(a);
+                    double[][] db = transposed ? b.getStoredMatrix() : b.getMatrix();
+                    return PreparedNode.of(SparseKernels.add(db, signB, sa, sign), transposed);
+                }
+                double[][] da = transposed ? a.getStoredMatrix() : a.getMatrix();
+                SparseMatrix sb = transposed ? b.getSparse() : sparseValue(b);
+                return PreparedNode.of(SparseKernels.add(da, sign, sb, signB), transposed);
+            }
+            case MULTIPLY: {
+                requireOperands(node, 2);
+                ComputationNode a = children.get(0);
+                ComputationNode b = children.get(1);
+                if (columns(a) != rows(b)) {
+                    throw new IllegalArgumentException("Illegal operation: dimensions mismatch");
+                }
+                if (a.getSparse() != null && b.getSparse() != null) {
+                    return PreparedNode.of(SparseKernels.multiply(sparseValue(a), sparseValue(b), sign), false);
+                }
+                if (a.getSparse() != null) {
+                    return PreparedNode.of(SparseKernels.multiply(sparseValue(a), b.getMatrix(), sign), false);
+                }
+                return PreparedNode.of(SparseKernels.multiply(a.getMatrix(), sparseValue(b), sign), false);
+            }
+            case NEGATE: {
+                requireOperands(node, 1);
+                ComputationNode a = children.get(0);
+                return PreparedNode.of(SparseKernels.scale(a.getSparse(), -1), a.isTransposed());
+            }
+            case TRANSPOSE: {
+                requireOperands(node, 1);
+                ComputationNode a = children.get(0);
+                SparseMatrix stored = a.getSparse();
+                return new PreparedNode(List.of(), 0, null, () -> stored, null, !a.isTransposed());
+            }
+            default:
+                throw new IllegalArgumentException("Cannot compute node of type " + node.getNodeType());
+        }
+    }
+
+    /**
+     * A FUSED node (see ElementwiseFusion): its expression becomes one ElementwiseSum over the inputs'
+     * stored matrices, sparse or dense, computed into pooled rows in a single pass. The result is stored
+     * transposed when most inputs would be read transposed otherwise, so that most are read along their rows.
+     */
+    private PreparedNode prepareFused(ComputationNode node) {
+        ComputationNode expression = node.getFusedExpression();
+        int[] shape = fusedShape(expression);
+        boolean transposed = transposedReads(expression, false) > 0;
+        ElementwiseSum sum = fusedSum(expression, transposed, 1.0);
+        int rows = transposed ? shape[1] : shape[0];
+        int columns = transposed ? shape[0] : shape[1];
+        double[][] result = new double[rows][];
+        for (int i = 0; i < rows; i++) {
+            result[i] = bufferPool.acquire(columns);
+        }
+        PreparedNode prepared = new PreparedNode(sum.createRowTasks(result), (double) columns * sum.termCount(),
+                () -> result, transposed);
+        for (ComputationNode input : node.getChildren()) {
+            if (input.getSparse() == null) {
+                prepared.consumes(input);
+            }
+        }
+        return prepared;
+    }
+
+    /**
+     * The value's shape of an element-wise subtree, validated like the separate operations would be.
+     */
+    private static int[] fusedShape(ComputationNode node) {
+        List<ComputationNode> children = node.getChildren();
+        switch (node.getNodeType()) {
+            case ADD:
+            case SUBTRACT: {
+                if (node.getNodeType() == ComputationNodeType.SUBTRACT || children.size() < 2) {
+                    requireOperands(node, 2);
+                }
+                int[] shape = fusedShape(children.get(0));
+                for (int i = 1; i < children.size(); i++) {
+                    int[] other = fusedShape(children.get(i));
+                    if (shape[0] != other[0] || shape[1] != other[1]) {
+                        throw new IllegalArgumentException("Illegal operation: dimensions mismatch");
+                    }
+                }
+                return shape;
+            }
+            case NEGATE:
+                requireOperands(node, 1);
+                return fusedShape(children.get(0));
+            case TRANSPOSE: {
+                requireOperands(node, 1);
+                int[] shape = fusedShape(children.get(0));
+                return new int[]{shape[1], shape[0]};
+            }
+            default:
+                return new int[]{rows(node), columns(node)};
+        }
+    }
+
+    /**
+     * Inputs read transposed minus inputs read as stored, when the value of node is read transposed or not.
+     */
+    private static int transposedReads(ComputationNode node, boolean transposed) {
+        switch (node.getNodeType()) {
+            case ADD:
+            case SUBTRACT:
+            case NEGATE: {
+                int reads = 0;
+                for (ComputationNode child : node.getChildren()) {
+                    reads += transposedReads(child, transposed);
+                }
+                return reads;
+            }
+            case TRANSPOSE:
+                return transposedReads(node.getChildren().get(0), !transposed);
+            default:
+                return (transposed != node.isTransposed()) ? 1 : -1;
+        }
+    }
+
+    /**
+     * sign * node, or sign * T(node) when transposed, as a sum of the inputs. Negations become signs and
+     * transposes become the inputs' read order; every operand of an addition is a nested sum, which
+     * ElementwiseSum inlines wherever that keeps the order of the additions.
+     */
+    private static ElementwiseSum fusedSum(ComputationNode node, boolean transposed, double sign) {
+        if (node.isNegated()) {
+            sign = -sign;
+        }
+        List<ComputationNode> children = node.getChildren();
+        switch (node.getNodeType()) {
+            case ADD:
+            case SUBTRACT: {
+                ElementwiseSum sum = new ElementwiseSum();
+                for (int i = 0; i < children.size(); i++) {
+                    boolean subtracted = i > 0 && node.getNodeType() == ComputationNodeType.SUBTRACT;
+                    sum.add(fusedSum(children.get(i), transposed, subtracted ? -sign : sign));
+                }
+                return sum;
+            }
+            case NEGATE:
+                return fusedSum(children.get(0), transposed, -sign);
+            case TRANSPOSE:
+                return fusedSum(children.get(0), !transposed, sign);
+            default: {
+                boolean readTransposed = transposed != node.isTransposed();
+                SparseMatrix sparse = node.getSparse();
+                return (sparse != null) ? new ElementwiseSum().add(sparse, readTransposed, sign)
+                        : new ElementwiseSum().add(node.getStoredMatrix(), readTransposed, sign);
+            }
+        }
+    }
+
+    /**
+     * The sparse operand's value, converting a transposed one to CSR.
+     */
+    private static SparseMatrix sparseValue(ComputationNode operand) {
+        return operand.isTransposed() ? operand.getSparse().transpose() : operand.getSparse();
+    }
+
+    /**
+     * An empty operand matrix with the configured storage (see EngineConfig.getStorage()).
+     */
+    private SharedMatrix newMatrix() {
+        return new SharedMatrix(config.getStorage());
+    }
+
+    /**
+     * The operand's value as a SharedMatrix: its own one when it has one and is not transposed, and
+     * otherwise target, loaded with the value. A transposed operand is wrapped column-major over its
+     * stored matrix, which is the same values without a copy.
+     */
+    private static SharedMatrix load(SharedMatrix target, ComputationNode operand) {
+        if (operand.isTransposed()) {
+            target.loadColumnMajor(operand.getStoredMatrix());
+            return target;
+        }
+        return stored(operand, target);
+    }
+
+    /**
+     * The operand's stored rows: its own SharedMatrix if it has one, otherwise target loaded row-major.
+     */
+    private static SharedMatrix stored(ComputationNode operand, SharedMatrix target) {
+        if (operand.getSharedMatrix() != null) {
+            return operand.getSharedMatrix();
+        }
+        target.loadRowMajor(operand.getStoredMatrix());
+        return target;
+    }
+
+    /**
+     * stored() (or value() without asStored) for an operand whose rows the kernel overwrites. The rows of
+     * a shared operand (see ComputationNode.isShared()) are copied into pooled rows first.
+     */
+    private SharedMatrix writable(ComputationNode operand, SharedMatrix target, boolean asStored) {
+        if (!operand.isShared()) {
+            return asStored ? stored(operand, target) : value(operand, target);
+        }
+        double[][] source = asStored ? operand.getStoredMatrix() : operand.getMatrix();
+        double[][] copy = new double[source.length][];
+        for (int i = 0; i < source.length; i++) {
+            copy[i] = bufferPool.acquire(source[i].length);
+            System.arraycopy(source[i], 0, copy[i], 0, source[i].length);
+        }
+        target.loadRowMajor(copy);
+        return target;
+    }
+
+    /**
+     * The operand's value, row-major: like stored(), but a transposed operand is materialized into target.
+     */
+    private static SharedMatrix value(ComputationNode operand, SharedMatrix target) {
+        if (operand.isTransposed()) {
+            target.loadRowMajor(operand.getMatrix());
+            return target;
+        }
+        return stored(operand, target);
+    }
+
+    /**
+     * Freezes an operand that no task writes, so the workers read its rows without locking (see
+     * SharedMatrix.freeze()), and returns it.
+     */
+    private static SharedMatrix frozen(SharedMatrix operand) {
+        operand.freeze();
+        return operand;
+    }
+
+    private static int rows(ComputationNode operand) {
+        return operand.isTransposed() ? storedColumns(operand) : storedRows(operand);
+    }
+
+    private static int columns(ComputationNode operand) {
+        return operand.isTransposed() ? storedRows(operand) : storedColumns(operand);
+    }
+
+    // sparse and shared operands are measured without converting them
+    private static int storedRows(ComputationNode operand) {
+        if (operand.getSharedMatrix() != null) {
+            return operand.getSharedMatrix().rowCount();
+        }
+        SparseMatrix sparse = operand.getSparse();
+        return (sparse != null) ? sparse.rowCount() : operand.getStoredMatrix().length;
+    }
+
+    private static int storedColumns(ComputationNode operand) {
+        if (operand.getSharedMatrix() != null) {
+            return operand.getSharedMatrix().columnCount();
+        }
+        SparseMatrix sparse = operand.getSparse();
+        return (sparse != null) ? sparse.columnCount() : width(operand.getStoredMatrix());
+    }
+
+    private static int width(double[][] matrix) {
+        return (matrix.length > 0) ? matrix[0].length : 0;
+    }
+
+    private static void requireOperands(ComputationNode node, int count) {
+        if (node.getChildren().size() != count) {
+            throw new IllegalArgumentException("Operator " + node.getNodeType() + " expects " + count
+                    + " operand(s) but got " + node.getChildren().size());
+        }
     }
 
     public List<Runnable> createAddTasks() {
-        // TODO: return tasks that perform row-wise addition
-        return null;
+        return createAddTasks(leftMatrix, rightMatrix, false);
     }
 
     public List<Runnable> createMultiplyTasks() {
-        // TODO: return tasks that perform row × matrix multiplication
-        return null;
+        return createMultiplyTasks(leftMatrix, rightMatrix, false, null);
     }
 
     public List<Runnable> createNegateTasks() {
-        // TODO: return tasks that negate rows
-        return null;
+        return createNegateTasks(leftMatrix);
     }
 
     public List<Runnable> createTransposeTasks() {
-        // TODO: return tasks that transpose rows
-        return null;
+        return createTransposeTasks(leftMatrix);
+    }
+
+    private static List<Runnable> createAddTasks(SharedMatrix left, SharedMatrix right, boolean negate) {
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < left.length(); i++) {
+            SharedVector row = left.get(i);
+            SharedVector other = right.get(i);
+            tasks.add(() -> {
+                row.add(other);
+                if (negate) {
+                    row.negate(); // the row is still in cache
+                }
+            });
+        }
+        return tasks;
+    }
+
+    private static List<Runnable> createSubtractTasks(SharedMatrix left, SharedMatrix right) {
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < left.length(); i++) {
+            SharedVector row = left.get(i);
+            SharedVector other = right.get(i);
+            tasks.add(() -> row.subtract(other));
+        }
+        return tasks;
+    }
+
+    private static List<Runnable> createMultiplyTasks(SharedMatrix left, SharedMatrix right, boolean negate,
+                                                      BufferPool pool) {
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < left.length(); i++) {
+            SharedVector row = left.get(i);
+            tasks.add(() -> {
+                row.vecMatMul(right, pool);
+                if (negate) {
+                    row.negate();
+                }
+            });
+        }
+        return tasks;
+    }
+
+    /**
+     * Row i of result becomes the dot products of row i of left with every column vector of right.
+     */
+    private static List<Runnable> createRowDotTasks(SharedMatrix left, SharedMatrix right, double[][] result,
+                                                    boolean negate) {
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < left.length(); i++) {
+            SharedVector row = left.get(i);
+            double[] out = result[i];
+            tasks.add(() -> {
+                for (int j = 0; j < out.length; j++) {
+                    double value = row.dot(right.get(j));
+                    out[j] = negate ? -value : value;
+                }
+            });
+        }
+        return tasks;
+    }
+
+    private static List<Runnable> createNegateTasks(SharedMatrix left) {
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < left.length(); i++) {
+            SharedVector row = left.get(i);
+            tasks.add(row::negate);
+        }
+        return tasks;
+    }
+
+    private static List<Runnable> createTransposeTasks(SharedMatrix left) {
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < left.length(); i++) {
+            SharedVector row = left.get(i);
+            tasks.add(row::transpose);
+        }
+        return tasks;
     }
 
     public String getWorkerReport() {
-        // TODO: return summary of worker activity
-        return null;
+        return executor.getWorkerReport();
     }
 }
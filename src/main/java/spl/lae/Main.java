@@ -1,10 +1,275 @@
 package spl.lae;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
+import memory.KernelSet;
+import memory.Kernels;
+import memory.MatrixStorage;
+import metrics.*;
 import parser.*;
+import scheduling.SchedulingMode;
+import scheduling.TiredExecutor;
 
 public class Main {
+
+    private static final String USAGE = "Usage: java -jar lga.jar <numThreads> <inputPath> <outputPath>"
+            + " [--multiply=rows|tiled] [--tile=<size>|auto] [--kernels=auto|scalar|simd] [--show-kernels]"
+            + " [--storage=per-vector|contiguous]"
+            + " [--scheduler=handoff|work-stealing|virtual] [--chunking=on|off]"
+            + " [--parallel-tree=on|off] [--chain-order=on|off] [--rewrite=on|off] [--fuse=on|off] [--cse=on|off]"
+            + " [--input=streaming|tree] [--sparse=on|off] [--output=streaming|compact|pretty|binary]"
+            + " [--memory-budget=<bytes>[k|m|g]] [--scratch-dir=<path>]"
+            + " [--buffer-pool=<bytes>[k|m|g]] [--show-allocations] [--result-cache=<bytes>[k|m|g]]"
+            + " [--metrics=<file>.json|<file>.csv] [--metrics-jfr] [--show-metrics] [--show-passes] [--show-cache]"
+            + "\nBatch mode: java -jar lga.jar <numThreads> <inputDir>|<manifest>|- <outputDir> --batch [--jobs=<n>] ..."
+            + "\nSIMD kernels need: java --add-modules jdk.incubator.vector -jar ...";
+
     public static void main(String[] args) throws IOException {
-      // TODO: main
+        if (args.length < 3) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        String outputPath = args[2];
+        Options options = new Options(); // filled in as the flags are read, so a bad flag still sees --batch before it
+        EngineConfig config = new EngineConfig();
+        boolean batchFailed = false;
+        try {
+            int numThreads = Integer.parseInt(args[0]);
+            parseOptions(args, config, options);
+            if (!options.metricsSinks.isEmpty()) {
+                config.setMetricsSink(MetricsSink.all(options.metricsSinks));
+            }
+            if (options.batch) {
+                runBatch(numThreads, config, options, args[1], Path.of(outputPath));
+                return;
+            }
+            ComputationNode root = new InputParser(options.inputMode, options.sparse).parse(args[1]);
+            LinearAlgebraEngine engine = new LinearAlgebraEngine(numThreads, config);
+            if (options.showKernels) {
+                System.out.println("Active kernels: " + engine.getKernelReport());
+            }
+            ComputationNode result = engine.run(root);
+            OutputWriter.write(result, outputPath, options.outputMode);
+            System.out.println(engine.getWorkerReport());
+            if (options.showAllocations) {
+                System.out.println(engine.getBufferPool().getReport());
+            }
+            if (options.metricsRegistry != null) {
+                System.out.println(options.metricsRegistry.getReport());
+            }
+            if (options.showPasses) {
+                engine.getPassReports().forEach(System.out::println);
+            }
+            if (options.showCache && config.getResultCache() != null) {
+                System.out.println(config.getResultCache().getReport());
+            }
+        }
+        catch (Exception e) {
+            if (options.batch) { // the output path is a directory
+                System.err.println(e.getMessage());
+                batchFailed = true;
+            }
+            else {
+                OutputWriter.write(e.getMessage(), outputPath);
+            }
+        }
+        finally {
+            closeMetrics(config); // whatever was recorded before a failure is still flushed
+        }
+        if (batchFailed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the jobs from source on one executor shared by all of them (see BatchRunner).
+     * Each job's result or error goes to its own output file.
+     */
+    private static void runBatch(int numThreads, EngineConfig config, Options options, String source,
+                                 Path outputDirectory) throws IOException, InterruptedException {
+        TiredExecutor executor = new TiredExecutor(numThreads, config.getSchedulingMode());
+        try {
+            int jobs = (options.jobs > 0) ? options.jobs : numThreads;
+            BatchRunner batch = new BatchRunner(executor, config, outputDirectory, jobs)
+                    .setInputMode(options.inputMode, options.sparse)
+                    .setOutputMode(options.outputMode);
+            if (options.showKernels) {
+                Kernels.select(config.getKernelSet()); // as every job's engine will
+                System.out.println("Active kernels: " + Kernels.describe());
+            }
+            batch.run(source);
+            System.out.println(executor.getWorkerReport());
+            System.out.println(batch.getReport());
+            if (options.showCache && config.getResultCache() != null) {
+                System.out.println(config.getResultCache().getReport());
+            }
+            if (options.metricsRegistry != null) {
+                System.out.println(options.metricsRegistry.getReport());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void closeMetrics(EngineConfig config) {
+        if (config.getMetricsSink() != null) {
+            try {
+                config.getMetricsSink().close();
+            }
+            catch (IOException e) {
+                System.err.println("Could not write the metrics: " + e.getMessage()); // the result or error is written
+            }
+        }
+    }
+
+    /**
+     * The flags that configure Main itself rather than the engine.
+     */
+    private static final class Options {
+        boolean showKernels = false;
+        boolean showAllocations = false;
+        boolean showPasses = false;
+        boolean showCache = false;
+        InputMode inputMode = InputMode.STREAMING;
+        boolean sparse = true;
+        OutputMode outputMode = OutputMode.STREAMING;
+        List<MetricsSink> metricsSinks = new ArrayList<>();
+        MetricsRegistry metricsRegistry = null; // for --show-metrics
+        boolean batch = false;
+        int jobs = 0; // concurrent jobs in batch mode; 0 for one per thread
+    }
+
+    /**
+     * Reads the optional --key=value (or bare --key) flags that follow the three positional arguments
+     * into config, and the ones Main handles itself into options.
+     */
+    private static void parseOptions(String[] args, EngineConfig config, Options options) {
+        for (int i = 3; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option: " + arg + "\n" + USAGE);
+            }
+            int eq = arg.indexOf('=');
+            String key = (eq < 0) ? arg.substring(2) : arg.substring(2, eq);
+            String value = (eq < 0) ? "" : arg.substring(eq + 1);
+            switch (key) {
+                case "multiply":
+                    config.setMultiplyMode(enumValue(MultiplyMode.class, value));
+                    break;
+                case "tile":
+                    config.setTileSize(value.equals("auto") ? EngineConfig.AUTO_TILE_SIZE : Integer.parseInt(value));
+                    break;
+                case "kernels":
+                    config.setKernelSet(enumValue(KernelSet.class, value));
+                    break;
+                case "storage":
+                    config.setStorage(enumValue(MatrixStorage.class, value));
+                    break;
+                case "scheduler":
+                    config.setSchedulingMode(enumValue(SchedulingMode.class, value));
+                    break;
+                case "chunking":
+                    config.setChunking(onOff(key, value));
+                    break;
+                case "parallel-tree":
+                    config.setParallelTree(onOff(key, value));
+                    break;
+                case "chain-order":
+                    config.setChainOrdering(onOff(key, value));
+                    break;
+                case "rewrite":
+                    config.setRewriting(onOff(key, value));
+                    break;
+                case "fuse":
+                    config.setFusion(onOff(key, value));
+                    break;
+                case "cse":
+                    config.setCommonSubexpressions(onOff(key, value));
+                    break;
+                case "result-cache":
+                    config.setResultCache(new ResultCache(bytes(key, value)));
+                    break;
+                case "memory-budget":
+                    config.setMemoryBudget(bytes(key, value));
+                    break;
+                case "scratch-dir":
+                    config.setScratchDirectory(Path.of(value));
+                    break;
+                case "buffer-pool":
+                    config.setBufferPoolBytes(bytes(key, value));
+                    break;
+                case "input":
+                    options.inputMode = enumValue(InputMode.class, value);
+                    break;
+                case "sparse":
+                    options.sparse = onOff(key, value);
+                    break;
+                case "output":
+                    options.outputMode = enumValue(OutputMode.class, value);
+                    break;
+                case "show-kernels":
+                    options.showKernels = true;
+                    break;
+                case "show-allocations":
+                    options.showAllocations = true;
+                    break;
+                case "show-passes":
+                    options.showPasses = true;
+                    break;
+                case "show-cache":
+                    options.showCache = true;
+                    break;
+                case "metrics":
+                    options.metricsSinks.add(FileMetricsSink.forPath(Path.of(value)));
+                    break;
+                case "metrics-jfr":
+                    options.metricsSinks.add(new JfrMetricsSink());
+                    break;
+                case "batch":
+                    options.batch = true;
+                    break;
+                case "jobs":
+                    options.jobs = Integer.parseInt(value);
+                    break;
+                case "show-metrics":
+                    options.metricsRegistry = new MetricsRegistry();
+                    options.metricsSinks.add(options.metricsRegistry);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg + "\n" + USAGE);
+            }
+        }
+    }
+
+    private static boolean onOff(String key, String value) {
+        if (!value.equals("on") && !value.equals("off")) {
+            throw new IllegalArgumentException("--" + key + " expects on or off, got: " + value);
+        }
+        return value.equals("on");
+    }
+
+    /**
+     * Parses a size such as 512m or 2g (binary units) into bytes.
+     */
+    private static long bytes(String key, String value) {
+        String lower = value.toLowerCase();
+        int shift = lower.endsWith("k") ? 10 : lower.endsWith("m") ? 20 : lower.endsWith("g") ? 30 : 0;
+        String digits = (shift == 0) ? lower : lower.substring(0, lower.length() - 1);
+        try {
+            return Math.multiplyExact(Long.parseLong(digits), 1L << shift);
+        }
+        catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("--" + key + " expects a size such as 512m, got: " + value);
+        }
+    }
+
+    /**
+     * Maps a flag value such as "work-stealing" to the enum constant WORK_STEALING.
+     */
+    private static <E extends Enum<E>> E enumValue(Class<E> type, String value) {
+        return Enum.valueOf(type, value.toUpperCase().replace('-', '_'));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,11 @@
+package spl.lae;
+
+/**
+ * How the engine plans a matrix product.
+ * ROWS runs one task per left row, each calling SharedVector.vecMatMul against the whole right matrix.
+ * TILED splits the result into cache-sized blocks, one task each (see memory.TiledMultiply).
+ */
+public enum MultiplyMode {
+    ROWS,
+    TILED
+}
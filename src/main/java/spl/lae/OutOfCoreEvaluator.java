@@ -0,0 +1,170 @@
+package spl.lae;
+
+import memory.PagedKernels;
+import memory.PagedMatrix;
+import parser.BinaryMatrixFile;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import scheduling.TiredExecutor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Evaluates a tree without keeping any intermediate matrix on the heap. Every operand and result is a
+ * PagedMatrix in a memory-mapped file, and each operation runs as block tasks on the executor
+ * (see memory.PagedKernels), with the block edge chosen so that the blocks of all workers together stay
+ * within EngineConfig.getMemoryBudget(). The root is resolved to a binary result file
+ * (ComputationNode.resolveToFile()), which OutputWriter streams without loading it.
+ * Operands given as {"file": ...} binary files are read in place; operands given inline in the JSON
+ * are already on the heap and are spilled to scratch files first.
+ */
+class OutOfCoreEvaluator {
+
+    private final TiredExecutor executor;
+    private final Path scratchDirectory;
+    private final int block;
+
+    OutOfCoreEvaluator(TiredExecutor executor, EngineConfig config) {
+        this.executor = executor;
+        this.scratchDirectory = config.getScratchDirectory();
+        this.block = PagedKernels.blockSizeFor(config.getMemoryBudget(), executor.getNumThreads());
+    }
+
+    int getBlockSize() {
+        return block;
+    }
+
+    void run(ComputationNode root) throws IOException {
+        LinearAlgebraEngine.nestAll(root);
+        if (root.getNodeType() == ComputationNodeType.MATRIX) {
+            return;
+        }
+        Path resultPath = Files.createTempFile(scratchDirectory, "lga-result", ".bin");
+        resultPath.toFile().deleteOnExit();
+        evaluate(root, resultPath).close();
+        root.resolveToFile(BinaryMatrixFile.open(resultPath));
+    }
+
+    /**
+     * Evaluates node into a new PagedMatrix: a scratch file, or the binary file at target when it is not null.
+     * The caller closes the result; operands are closed (and scratch operands deleted) once they are used.
+     */
+    private PagedMatrix evaluate(ComputationNode node, Path target) throws IOException {
+        List<ComputationNode> children = node.getChildren();
+        switch (node.getNodeType()) {
+            case MATRIX:
+                return leaf(node);
+            case ADD:
+            case SUBTRACT: {
+                requireOperands(node, 2);
+                try (PagedMatrix a = evaluate(children.get(0), null); PagedMatrix b = evaluate(children.get(1), null)) {
+                    if (a.rowCount() != b.rowCount() || a.columnCount() != b.columnCount()) {
+                        throw new IllegalArgumentException("Illegal operation: dimensions mismatch");
+                    }
+                    PagedMatrix out = allocate(a.rowCount(), a.columnCount(), target);
+                    run(PagedKernels.createAddTasks(a, b, out,
+                            node.getNodeType() == ComputationNodeType.SUBTRACT, node.isNegated(), block), out);
+                    return out;
+                }
+            }
+            case MULTIPLY: {
+                requireOperands(node, 2);
+                try (PagedMatrix a = evaluate(children.get(0), null); PagedMatrix b = evaluate(children.get(1), null)) {
+                    if (a.columnCount() != b.rowCount()) {
+                        throw new IllegalArgumentException("Illegal operation: dimensions mismatch");
+                    }
+                    PagedMatrix out = allocate(a.rowCount(), b.columnCount(), target);
+                    run(PagedKernels.createMultiplyTasks(a, b, out, node.isNegated(), block), out);
+                    return out;
+                }
+            }
+            case NEGATE: {
+                requireOperands(node, 1);
+                try (PagedMatrix a = evaluate(children.get(0), null)) {
+                    PagedMatrix out = allocate(a.rowCount(), a.columnCount(), target);
+                    run(PagedKernels.createNegateTasks(a, out, block), out);
+                    return out;
+                }
+            }
+            case TRANSPOSE: {
+                requireOperands(node, 1);
+                try (PagedMatrix a = evaluate(children.get(0), null)) {
+                    return transpose(a, target);
+                }
+            }
+            default:
+                throw new IllegalArgumentException("Cannot compute node of type " + node.getNodeType());
+        }
+    }
+
+    /**
+     * A leaf as a PagedMatrix of its value. Row-major binary files are opened in place (and never deleted);
+     * everything else is first copied or transposed into a scratch file.
+     */
+    private PagedMatrix leaf(ComputationNode node) throws IOException {
+        BinaryMatrixFile file = node.getFile();
+        if (file != null) {
+            if (!file.isColumnMajor()) {
+                return PagedMatrix.open(file.getPath(), BinaryMatrixFile.HEADER_BYTES, file.getRows(), file.getCols());
+            }
+            // a column-major file is a row-major file of the transpose
+            try (PagedMatrix stored = PagedMatrix.open(file.getPath(), BinaryMatrixFile.HEADER_BYTES,
+                    file.getCols(), file.getRows())) {
+                return transpose(stored, null);
+            }
+        }
+        double[][] stored = node.getStoredMatrix();
+        int width = (stored.length > 0) ? stored[0].length : 0;
+        PagedMatrix spilled = PagedMatrix.createScratch(scratchDirectory, stored.length, width);
+        for (int i = 0; i < stored.length; i++) {
+            if (stored[i].length != width) {
+                spilled.close();
+                throw new IllegalArgumentException("Inconsistent row sizes in matrix.");
+            }
+            spilled.writeBlock(i, 1, 0, width, stored[i]);
+        }
+        if (!node.isTransposed()) {
+            return spilled;
+        }
+        try (PagedMatrix transposed = spilled) { // holds the transpose of the node's value
+            return transpose(transposed, null);
+        }
+    }
+
+    private PagedMatrix transpose(PagedMatrix a, Path target) throws IOException {
+        PagedMatrix out = allocate(a.columnCount(), a.rowCount(), target);
+        run(PagedKernels.createTransposeTasks(a, out, block), out);
+        return out;
+    }
+
+    private PagedMatrix allocate(int rows, int cols, Path target) throws IOException {
+        if (target == null) {
+            return PagedMatrix.createScratch(scratchDirectory, rows, cols);
+        }
+        BinaryMatrixFile.create(target, rows, cols);
+        return PagedMatrix.openWritable(target, BinaryMatrixFile.HEADER_BYTES, rows, cols);
+    }
+
+    /**
+     * Runs the block tasks that fill out; out is closed if one of them fails.
+     */
+    private void run(List<Runnable> tasks, PagedMatrix out) throws IOException {
+        try {
+            executor.submitAll(tasks);
+        }
+        catch (RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    private static void requireOperands(ComputationNode node, int count) {
+        if (node.getChildren().size() != count) {
+            throw new IllegalArgumentException("Operator " + node.getNodeType() + " expects " + count
+                    + " operand(s) but got " + node.getChildren().size());
+        }
+    }
+}
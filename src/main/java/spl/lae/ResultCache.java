@@ -0,0 +1,128 @@
+package spl.lae;
+
+import parser.ComputationNode;
+import parser.Fingerprint;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded LRU cache of computed results, keyed by the Fingerprint of the subtree that produced them,
+ * so a result from one run is reused by any later run in the same process that contains the same subtree.
+ * Engines share it through EngineConfig.setResultCache(). Entries are private copies, kept up to maxBytes
+ * in total, and the least recently used ones are evicted first. A hit hands out a copy as well, so neither
+ * the engine nor whoever gets the result can change what later hits see.
+ */
+public final class ResultCache {
+
+    private static final class Entry {
+        final double[][] stored;
+        final boolean transposed;
+        final long bytes;
+
+        Entry(double[][] stored, boolean transposed, long bytes) {
+            this.stored = stored;
+            this.transposed = transposed;
+            this.bytes = bytes;
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<Fingerprint, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public ResultCache(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Cache size must be positive (or 0)");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Resolves node to a copy of the cached result of fingerprint and returns true, or returns false on a miss.
+     */
+    public boolean resolve(Fingerprint fingerprint, ComputationNode node) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(fingerprint);
+            if (entry == null) {
+                misses++;
+                return false;
+            }
+            hits++;
+        }
+        double[][] rows = copy(entry.stored);
+        if (entry.transposed) {
+            node.resolveTransposed(rows);
+        }
+        else {
+            node.resolve(rows);
+        }
+        return true;
+    }
+
+    /**
+     * Stores a copy of the dense result of node, a resolved MATRIX node, under fingerprint, evicting
+     * older entries as needed. Sparse results and results larger than the cache are not stored.
+     */
+    public void put(Fingerprint fingerprint, ComputationNode node) {
+        if (node.getSparse() != null) {
+            return;
+        }
+        double[][] stored = node.getStoredMatrix();
+        int cols = (stored.length > 0) ? stored[0].length : 0;
+        long size = (long) stored.length * cols * Double.BYTES;
+        if (size > maxBytes) {
+            return;
+        }
+        double[][] copy = copy(stored);
+        synchronized (this) {
+            Entry previous = entries.put(fingerprint, new Entry(copy, node.isTransposed(), size));
+            bytes += size - ((previous == null) ? 0 : previous.bytes);
+            Iterator<Map.Entry<Fingerprint, Entry>> eldest = entries.entrySet().iterator();
+            while (bytes > maxBytes) {
+                Entry evicted = eldest.next().getValue();
+                eldest.remove();
+                bytes -= evicted.bytes;
+                evictions++;
+            }
+        }
+    }
+
+    private static double[][] copy(double[][] rows) {
+        double[][] copy = new double[rows.length][];
+        for (int i = 0; i < rows.length; i++) {
+            copy[i] = rows[i].clone();
+        }
+        return copy;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized String getReport() {
+        return String.format("Result cache: %d hit(s), %d miss(es), %d entries (%d bytes), %d evicted",
+                hits, misses, entries.size(), bytes, evictions);
+    }
+}
@@ -0,0 +1,79 @@
+package memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferPoolTest {
+
+    @Test
+    public void testReleasedBufferIsReusedZeroed() {
+        BufferPool pool = new BufferPool(1 << 20);
+        double[] first = pool.acquire(8);
+        first[3] = 7;
+
+        assertTrue(pool.release(first));
+        double[] second = pool.acquire(8);
+
+        assertSame(first, second);
+        assertArrayEquals(new double[8], second);
+        assertEquals(1, pool.getAllocations());
+        assertEquals(1, pool.getReuses());
+        assertNotSame(second, pool.acquire(16)); // another size class
+        assertEquals(2, pool.getAllocations());
+    }
+
+    @Test
+    public void testForeignAndDoubleReleasesAreIgnored() {
+        BufferPool pool = new BufferPool(1 << 20);
+        double[] own = pool.acquire(4);
+
+        assertFalse(pool.release(new double[4]));
+        assertTrue(pool.release(own));
+        assertFalse(pool.release(own));
+        assertEquals(1, pool.getReleases());
+        assertEquals(4 * Double.BYTES, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void testUnreleasedBufferIsNotHeldByThePool() throws InterruptedException {
+        BufferPool pool = new BufferPool(1 << 20);
+        WeakReference<double[]> escaped = new WeakReference<>(pool.acquire(1 << 16));
+
+        for (int attempt = 0; attempt < 20 && escaped.get() != null; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertNull(escaped.get());
+        assertEquals(1, pool.getAllocations());
+    }
+
+    @Test
+    public void testRetentionLimit() {
+        BufferPool pool = new BufferPool(10 * Double.BYTES);
+        double[] a = pool.acquire(8);
+        double[] b = pool.acquire(8);
+
+        pool.release(a);
+        pool.release(b); // would exceed the limit
+
+        assertEquals(1, pool.getDropped());
+        assertEquals(8 * Double.BYTES, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void testPooledVecMatMul() {
+        BufferPool pool = new BufferPool(1 << 20);
+        SharedMatrix matrix = new SharedMatrix(new double[][]{{1, 2}, {3, 4}});
+        SharedVector row = new SharedVector(new double[]{1, 1}, VectorOrientation.ROW_MAJOR);
+
+        row.vecMatMul(matrix, pool);
+
+        assertEquals(4, row.get(0));
+        assertEquals(6, row.get(1));
+        assertEquals(1, pool.getAllocations());
+    }
+}
@@ -0,0 +1,60 @@
+package memory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KernelsTest {
+
+    @AfterEach
+    public void restoreDefault() {
+        Kernels.select(KernelSet.AUTO);
+    }
+
+    @Test
+    public void testSimdMatchesScalar() {
+        assertTrue(Kernels.isSimdAvailable(), "tests run with --add-modules jdk.incubator.vector");
+        // odd length so both the vector loop and the scalar tail are exercised
+        double[] a = new double[37];
+        double[] b = new double[37];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = i * 0.5 - 3;
+            b[i] = 7 - i * 0.25;
+        }
+        VectorKernels scalar = new ScalarKernels();
+        VectorKernels simd = new SimdKernels();
+
+        double[] scalarSum = a.clone();
+        double[] simdSum = a.clone();
+        scalar.add(scalarSum, 1, b, 2, 35);
+        simd.add(simdSum, 1, b, 2, 35);
+        assertArrayEquals(scalarSum, simdSum);
+
+        scalar.subtract(scalarSum, 0, b, 0, 30);
+        simd.subtract(simdSum, 0, b, 0, 30);
+        assertArrayEquals(scalarSum, simdSum);
+
+        scalar.negate(scalarSum, 0, 37);
+        simd.negate(simdSum, 0, 37);
+        assertArrayEquals(scalarSum, simdSum);
+
+        scalar.axpy(1.5, a, 0, scalarSum, 0, 37);
+        simd.axpy(1.5, a, 0, simdSum, 0, 37);
+        assertArrayEquals(scalarSum, simdSum);
+
+        assertEquals(scalar.dot(a, 0, b, 0, 37), simd.dot(a, 0, b, 0, 37), 1e-9);
+    }
+
+    @Test
+    public void testSelect() {
+        assertEquals(KernelSet.SCALAR, Kernels.select(KernelSet.SCALAR));
+        assertEquals("scalar", Kernels.describe());
+
+        SharedVector v1 = new SharedVector(new double[]{1.0, 2.0}, VectorOrientation.ROW_MAJOR);
+        v1.add(new SharedVector(new double[]{3.0, 4.0}, VectorOrientation.ROW_MAJOR));
+        assertEquals(6.0, v1.get(1), 0.001);
+
+        assertEquals(KernelSet.SIMD, Kernels.select(KernelSet.AUTO));
+        assertTrue(Kernels.describe().startsWith("simd"));
+    }
+}
@@ -0,0 +1,69 @@
+package memory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PagedMatrixTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testBlockRoundTrip() throws Exception {
+        try (PagedMatrix matrix = PagedMatrix.createScratch(dir, 4, 5)) {
+            matrix.writeBlock(1, 2, 2, 3, new double[]{1, 2, 3, 4, 5, 6});
+
+            double[] block = new double[3 * 4];
+            matrix.readBlock(0, 3, 1, 4, block);
+
+            assertArrayEquals(new double[]{0, 0, 0, 0, 0, 1, 2, 3, 0, 4, 5, 6}, block);
+        }
+    }
+
+    @Test
+    public void testScratchFileIsDeletedOnClose() throws Exception {
+        PagedMatrix matrix = PagedMatrix.createScratch(dir, 2, 2);
+        Path file = matrix.getPath();
+        assertEquals(4 * Double.BYTES, Files.size(file));
+
+        matrix.close();
+
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void testBlockedTasksMatchDirectResult() throws Exception {
+        double[] left = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12}; // 3 x 4
+        double[] right = {1, 0, -1, 2, 0, 1, 3, -2, 1, 1, 0, 4}; // 4 x 3
+        try (PagedMatrix a = PagedMatrix.createScratch(dir, 3, 4);
+             PagedMatrix b = PagedMatrix.createScratch(dir, 4, 3);
+             PagedMatrix product = PagedMatrix.createScratch(dir, 3, 3);
+             PagedMatrix transposed = PagedMatrix.createScratch(dir, 4, 3)) {
+            a.writeBlock(0, 3, 0, 4, left);
+            b.writeBlock(0, 4, 0, 3, right);
+
+            // a block edge of 2 splits every dimension unevenly
+            PagedKernels.createMultiplyTasks(a, b, product, true, 2).forEach(Runnable::run);
+            PagedKernels.createTransposeTasks(a, transposed, 2).forEach(Runnable::run);
+
+            double[] result = new double[9];
+            product.readBlock(0, 3, 0, 3, result);
+            assertArrayEquals(new double[]{-18, 6, -20, -46, 14, -40, -74, 22, -60}, result);
+            double[] t = new double[12];
+            transposed.readBlock(0, 4, 0, 3, t);
+            assertArrayEquals(new double[]{1, 5, 9, 2, 6, 10, 3, 7, 11, 4, 8, 12}, t);
+        }
+    }
+
+    @Test
+    public void testBlockSizeStaysWithinBudget() {
+        int block = PagedKernels.blockSizeFor(1 << 20, 4);
+        assertTrue(4L * 3 * block * block * Double.BYTES <= 1 << 20);
+        assertEquals(1, PagedKernels.blockSizeFor(1, 4));
+    }
+}
@@ -0,0 +1,165 @@
+package memory;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SharedMatrixTest {
+
+    @Test
+    public void testContiguousRowMajorRoundTrip() {
+        double[][] data = {
+            {1.0, 2.0, 3.0},
+            {4.0, 5.0, 6.0}
+        };
+        SharedMatrix matrix = new SharedMatrix(data, MatrixStorage.CONTIGUOUS);
+
+        assertEquals(2, matrix.length());
+        assertEquals(3, matrix.get(1).length());
+        assertEquals(6.0, matrix.get(1).get(2), 0.001);
+        assertArrayEquals(data, matrix.readRowMajor());
+    }
+
+    @Test
+    public void testContiguousLoadCopiesInput() {
+        double[][] data = {{1.0, 2.0}, {3.0, 4.0}};
+        SharedMatrix matrix = new SharedMatrix(data, MatrixStorage.CONTIGUOUS);
+
+        matrix.get(0).negate();
+
+        // the views own a copy, so the caller's array is untouched
+        assertEquals(1.0, data[0][0], 0.001);
+        assertEquals(-1.0, matrix.get(0).get(0), 0.001);
+        assertEquals(3.0, matrix.get(1).get(0), 0.001);
+    }
+
+    @Test
+    public void testContiguousColumnMajorReadsTransposed() {
+        // in column-major order every inner array is a column
+        double[][] columns = {
+            {1.0, 2.0, 3.0},
+            {4.0, 5.0, 6.0}
+        };
+        SharedMatrix matrix = new SharedMatrix(MatrixStorage.CONTIGUOUS);
+        matrix.loadColumnMajor(columns);
+
+        double[][] expected = {
+            {1.0, 4.0},
+            {2.0, 5.0},
+            {3.0, 6.0}
+        };
+        assertEquals(VectorOrientation.COLUMN_MAJOR, matrix.getOrientation());
+        assertArrayEquals(expected, matrix.readRowMajor());
+    }
+
+    @Test
+    public void testContiguousViewOutOfBounds() {
+        SharedMatrix matrix = new SharedMatrix(new double[][]{{1.0, 2.0}, {3.0, 4.0}}, MatrixStorage.CONTIGUOUS);
+
+        // a view must not read into the neighbouring row
+        assertThrows(IndexOutOfBoundsException.class, () -> matrix.get(0).get(2));
+    }
+
+    @Test
+    public void testContiguousVecMatMulChangingWidth() {
+        SharedMatrix left = new SharedMatrix(new double[][]{{1.0, 2.0}, {3.0, 4.0}}, MatrixStorage.CONTIGUOUS);
+        SharedMatrix right = new SharedMatrix(new double[][]{{1.0, 0.0, 2.0}, {0.0, 1.0, 3.0}});
+
+        for (int i = 0; i < left.length(); i++) {
+            left.get(i).vecMatMul(right);
+        }
+
+        double[][] expected = {
+            {1.0, 2.0, 8.0},
+            {3.0, 4.0, 18.0}
+        };
+        assertArrayEquals(expected, left.readRowMajor());
+    }
+
+    @Test
+    public void testTakeRowMajorHandsOverRowsOrCopies() {
+        double[][] data = {{1.0, 2.0}, {3.0, 4.0}};
+        SharedMatrix perVector = new SharedMatrix(data);
+        SharedMatrix contiguous = new SharedMatrix(data, MatrixStorage.CONTIGUOUS);
+
+        double[][] taken = perVector.takeRowMajor();
+        double[][] copied = contiguous.takeRowMajor();
+
+        assertSame(data[0], taken[0]);
+        assertNotSame(data[0], copied[0]);
+        assertArrayEquals(data, copied);
+        assertEquals(0, perVector.length());
+        assertEquals(0, contiguous.length());
+    }
+
+    @Test
+    public void testContiguousInconsistentRows() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new SharedMatrix(new double[][]{{1.0, 2.0}, {3.0}}, MatrixStorage.CONTIGUOUS);
+        });
+    }
+
+    @Test
+    public void testReadWaitsForWriterOnlyOnConflict() throws InterruptedException {
+        SharedMatrix matrix = new SharedMatrix(new double[][]{{1.0, 2.0}, {3.0, 4.0}});
+
+        // no writer: even with another reader holding a read lock, the read goes through
+        matrix.get(0).readLock();
+        try {
+            assertTimeoutPreemptively(java.time.Duration.ofSeconds(2), () -> {
+                assertArrayEquals(new double[]{1.0, 2.0}, matrix.readRowMajor()[0], 0.001);
+            });
+        }
+        finally {
+            matrix.get(0).readUnlock();
+        }
+
+        java.util.concurrent.CountDownLatch locked = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.atomic.AtomicBoolean released = new java.util.concurrent.atomic.AtomicBoolean(false);
+        Thread writer = new Thread(() -> {
+            matrix.get(1).writeLock();
+            locked.countDown();
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                matrix.get(1).writeUnlock();
+            }
+        });
+        double[][][] read = new double[1][][];
+        boolean[] readAfterRelease = new boolean[1];
+        Thread reader = new Thread(() -> {
+            read[0] = matrix.readRowMajor(); // no optimistic read while write-locked: waits on the read locks
+            readAfterRelease[0] = released.get();
+        });
+        writer.start();
+        locked.await();
+        reader.start();
+        while (reader.getState() != Thread.State.WAITING) { // parked on row 1's lock
+            Thread.onSpinWait();
+        }
+        released.set(true);
+        release.countDown();
+        writer.join();
+        reader.join();
+
+        assertTrue(readAfterRelease[0]);
+        assertArrayEquals(new double[]{3.0, 4.0}, read[0][1], 0.001);
+    }
+
+    @Test
+    public void testFrozenMatrixReadsAndRejectsWrites() {
+        SharedMatrix matrix = new SharedMatrix(new double[][]{{1.0, 2.0}, {3.0, 4.0}}, MatrixStorage.CONTIGUOUS);
+        matrix.freeze();
+
+        assertArrayEquals(new double[]{3.0, 4.0}, matrix.readRowMajor()[1], 0.001);
+        assertThrows(IllegalStateException.class, () -> matrix.get(0).negate());
+
+        matrix.loadRowMajor(new double[][]{{5.0}}); // new content, new vectors
+        matrix.get(0).negate();
+        assertEquals(-5.0, matrix.get(0).get(0), 0.001);
+    }
+}
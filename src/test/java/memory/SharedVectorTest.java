@@ -82,6 +82,18 @@ public class SharedVectorTest {
         });
     }
 
+    @Test
+    public void testDotReleasesLocks() {
+        SharedVector vRow = new SharedVector(new double[]{1.0, 2.0}, VectorOrientation.ROW_MAJOR);
+        SharedVector vCol = new SharedVector(new double[]{3.0, 4.0}, VectorOrientation.COLUMN_MAJOR);
+
+        vRow.dot(vCol);
+
+        // a leaked read lock would make the write lock below wait forever
+        assertTimeoutPreemptively(java.time.Duration.ofSeconds(2), () -> vRow.negate());
+        assertEquals(-1.0, vRow.get(0), 0.001);
+    }
+
     @Test
     public void testVecMatMulSuccess() {
         // Arrange
@@ -130,4 +142,66 @@ public class SharedVectorTest {
             v.vecMatMul(matrix);
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFrozenVectorIsReadOnly() {
+        SharedVector row = new SharedVector(new double[]{1.0, 2.0}, VectorOrientation.ROW_MAJOR);
+        SharedVector col = new SharedVector(new double[]{3.0, 4.0}, VectorOrientation.COLUMN_MAJOR);
+        col.freeze();
+
+        assertEquals(11.0, row.dot(col), 0.001);
+        assertEquals(4.0, col.get(1), 0.001);
+        assertThrows(IllegalStateException.class, col::negate);
+        assertTrue(col.isFrozen());
+        assertFalse(row.isFrozen());
+    }
+
+    @Test
+    public void testAddToItself() {
+        SharedVector v = new SharedVector(new double[]{1.0, 2.0}, VectorOrientation.ROW_MAJOR);
+
+        // the locks are not reentrant, so reading itself under its own write lock must not lock twice
+        assertTimeoutPreemptively(java.time.Duration.ofSeconds(2), () -> v.add(v));
+
+        assertEquals(4.0, v.get(1), 0.001);
+    }
+
+    @Test
+    public void testLockWaitsAreTimedOnlyWhenEnabled() throws InterruptedException {
+        assertEquals(0, contendedReadWait());
+
+        metrics.LockWaits.enable();
+        try {
+            assertTrue(contendedReadWait() > 0);
+        }
+        finally {
+            metrics.LockWaits.disable();
+        }
+    }
+
+    /**
+     * Nanoseconds recorded for a reader that blocks on a write-locked vector until the writer lets go.
+     */
+    private static long contendedReadWait() throws InterruptedException {
+        SharedVector v = new SharedVector(new double[]{1.0}, VectorOrientation.ROW_MAJOR);
+        long[] waited = new long[1];
+        Thread reader = new Thread(() -> {
+            long before = metrics.LockWaits.currentThread();
+            v.readLock();
+            v.readUnlock();
+            waited[0] = metrics.LockWaits.currentThread() - before;
+        });
+        v.writeLock();
+        try {
+            reader.start();
+            while (reader.getState() != Thread.State.WAITING) { // parked on the lock
+                Thread.onSpinWait();
+            }
+        }
+        finally {
+            v.writeUnlock();
+        }
+        reader.join();
+        return waited[0];
+    }
+}
@@ -0,0 +1,88 @@
+package memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SparseMatrixTest {
+
+    private static final double[][] A = {{0, 2, 0}, {0, 0, 0}, {3, 0, -1}};
+    private static final double[][] B = {{1, 0, 0}, {0, 0, 4}, {-3, 0, 1}};
+
+    @Test
+    public void testDenseRoundTripAndTranspose() {
+        SparseMatrix a = SparseMatrix.fromDense(A);
+
+        assertEquals(3, a.nonZeroCount());
+        assertArrayEquals(new int[]{0, 1, 1, 3}, a.rowStart);
+        assertArrayEquals(A, a.toDense());
+        assertArrayEquals(new double[][]{{0, 0, 3}, {2, 0, 0}, {0, 0, -1}}, a.transpose().toDense());
+        Iterator<double[]> rows = a.denseRows();
+        assertArrayEquals(A[0], rows.next());
+        assertArrayEquals(A[1], rows.next());
+        assertArrayEquals(A[2], rows.next());
+        assertFalse(rows.hasNext());
+    }
+
+    @Test
+    public void testPrefersSparse() {
+        assertFalse(SparseMatrix.prefersSparse(new double[2][2])); // too small to pay off
+        double[][] large = new double[64][64];
+        large[3][7] = 1;
+        assertTrue(SparseMatrix.prefersSparse(large));
+        for (double[] row : large) {
+            Arrays.fill(row, 0, 16, 1.0);
+        }
+        assertFalse(SparseMatrix.prefersSparse(large));
+    }
+
+    @Test
+    public void testKernelsMatchDense() {
+        SparseMatrix a = SparseMatrix.fromDense(A);
+        SparseMatrix b = SparseMatrix.fromDense(B);
+
+        SparseKernels.Job difference = run(SparseKernels.add(a, 1, b, -1));
+        assertArrayEquals(new double[][]{{-1, 2, 0}, {0, 0, -4}, {6, 0, -2}}, dense(difference));
+        assertArrayEquals(new double[][]{{-1, 2, 0}, {0, 0, -4}, {6, 0, -2}}, dense(run(SparseKernels.add(A, 1, b, -1))));
+        assertArrayEquals(new double[][]{{0, -2, 0}, {0, 0, 0}, {-3, 0, 1}}, dense(run(SparseKernels.scale(a, -1))));
+
+        double[][] ab = {{0, 0, 8}, {0, 0, 0}, {6, 0, -1}};
+        assertArrayEquals(ab, dense(run(SparseKernels.multiply(a, b, 1))));
+        assertArrayEquals(ab, dense(run(SparseKernels.multiply(a, B, 1))));
+        assertArrayEquals(ab, dense(run(SparseKernels.multiply(A, b, 1))));
+    }
+
+    @Test
+    public void testCancellationIsDropped() {
+        double[][] large = new double[40][40];
+        large[5][5] = 2;
+        large[6][1] = 1;
+        SparseMatrix a = SparseMatrix.fromDense(large);
+
+        SparseKernels.Job zero = run(SparseKernels.add(a, 1, a, -1));
+
+        assertTrue(zero.isSparse());
+        assertEquals(0, zero.getSparse().nonZeroCount());
+    }
+
+    @Test
+    public void testDimensionMismatch() {
+        SparseMatrix a = SparseMatrix.fromDense(A);
+        SparseMatrix wide = SparseMatrix.fromDense(new double[][]{{1, 0, 0, 0}});
+
+        assertThrows(IllegalArgumentException.class, () -> SparseKernels.add(a, 1, wide, 1));
+        assertThrows(IllegalArgumentException.class, () -> SparseKernels.multiply(a, wide, 1));
+    }
+
+    private static SparseKernels.Job run(SparseKernels.Job job) {
+        job.getTasks().forEach(Runnable::run);
+        return job;
+    }
+
+    private static double[][] dense(SparseKernels.Job job) {
+        return job.isSparse() ? job.getSparse().toDense() : job.getDense();
+    }
+}
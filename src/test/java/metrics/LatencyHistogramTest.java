@@ -0,0 +1,34 @@
+package metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPowerOfTwoBuckets() {
+        assertEquals(0, LatencyHistogram.bucket(0));
+        assertEquals(0, LatencyHistogram.bucket(1));
+        assertEquals(1, LatencyHistogram.bucket(3));
+        assertEquals(10, LatencyHistogram.bucket(1024));
+        assertEquals(10, LatencyHistogram.bucket(2047));
+        assertEquals(62, LatencyHistogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testQuantileUpperBound() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.quantileUpperBound(0.5));
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1500); // [1024, 2048)
+        }
+        histogram.record(1_000_000); // [2^19, 2^20)
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(2048, histogram.quantileUpperBound(0.5));
+        assertEquals(2048, histogram.quantileUpperBound(0.99));
+        assertEquals(1 << 20, histogram.quantileUpperBound(1.0));
+        assertEquals("[1us, 2us): 99, [524us, 1ms): 1", histogram.toString());
+    }
+}
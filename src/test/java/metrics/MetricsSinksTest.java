@@ -0,0 +1,86 @@
+package metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsSinksTest {
+
+    private static NodeMetrics node(int id, List<Integer> inputs, long busy) {
+        return new NodeMetrics(id, "ADD", inputs, 4, 2, 10, 10, busy / 2, busy, 100, 50, 0, 10_000, 2400, 800);
+    }
+
+    private static RunMetrics run() {
+        LatencyHistogram latency = new LatencyHistogram();
+        latency.record(1500);
+        return new RunMetrics(5000, 2, latency, 0, 1600, List.of(new WorkerMetrics(0, 1.5, 1000, 4000)));
+    }
+
+    @Test
+    public void testFileSinks(@TempDir Path dir) throws Exception {
+        Path json = dir.resolve("metrics.json");
+        Path csv = dir.resolve("metrics.csv");
+        MetricsSink sink = MetricsSink.all(List.of(FileMetricsSink.forPath(json), FileMetricsSink.forPath(csv)));
+        sink.nodeResolved(node(0, List.of(), 1000));
+        sink.nodeResolved(node(1, List.of(0), 3000));
+        sink.runFinished(run());
+        sink.close();
+
+        JsonNode runs = new ObjectMapper().readTree(json.toFile());
+        assertEquals(1, runs.size());
+        assertEquals(1, runs.get(0).get("dispatchLatencyBuckets").get("1024").asLong());
+        assertEquals(3000, runs.get(0).get("nodeMetrics").get(1).get("busyNanos").asLong());
+        assertEquals("COMPUTE", runs.get(0).get("nodeMetrics").get(1).get("bound").asText());
+
+        List<String> lines = Files.readAllLines(csv);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).startsWith("run,id,type,inputs,"));
+        assertTrue(lines.get(2).startsWith("0,1,ADD,\"[0]\",4,"));
+    }
+
+    @Test
+    public void testRegistryAddsUpSubtrees() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.nodeResolved(node(0, List.of(), 1000));
+        registry.nodeResolved(node(1, List.of(0), 2000));
+        registry.nodeResolved(node(2, List.of(0, 1), 4000)); // 0 is read twice but counted once
+        registry.runFinished(run());
+
+        assertEquals(7000, registry.getSubtreeBusyNanos(2));
+        assertEquals(3, registry.getNodes().size());
+        assertTrue(registry.getReport().startsWith("Metrics: 2 node(s)"));
+    }
+
+    @Test
+    public void testJfrEvents(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("run.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("lga.Node");
+            recording.enable("lga.Run");
+            recording.start();
+            JfrMetricsSink sink = new JfrMetricsSink();
+            sink.nodeResolved(node(7, List.of(), 1000));
+            sink.runFinished(run());
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        RecordedEvent node = events.stream().filter(e -> e.getEventType().getName().equals("lga.Node"))
+                .findFirst().orElseThrow();
+        assertEquals(7, node.getInt("id"));
+        assertEquals("ADD", node.getString("type"));
+        assertEquals(1000, node.getDuration("busy").toNanos());
+        assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("lga.Run")));
+    }
+}
@@ -0,0 +1,70 @@
+package parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryMatrixFileTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        double[][] matrix = {{1.5, -2, Double.MIN_VALUE}, {Math.PI, 0, -0.0}};
+        Path file = dir.resolve("m.bin");
+
+        BinaryMatrixFile.write(new ComputationNode(matrix), file);
+        ComputationNode read = BinaryMatrixFile.read(file);
+
+        assertEquals(BinaryMatrixFile.HEADER_BYTES + 6 * Double.BYTES, Files.size(file));
+        assertFalse(read.isTransposed());
+        assertArrayEquals(matrix, read.getMatrix());
+    }
+
+    @Test
+    public void testTransposedNodeIsWrittenColumnMajor() throws Exception {
+        double[][] stored = {{1, 2, 3}, {4, 5, 6}};
+        ComputationNode node = new ComputationNode(new double[][]{{0}});
+        node.resolveTransposed(stored);
+        Path file = dir.resolve("t.bin");
+
+        BinaryMatrixFile.write(node, file);
+        ComputationNode read = BinaryMatrixFile.read(file);
+
+        assertTrue(read.isTransposed());
+        assertArrayEquals(new double[][]{{1, 4}, {2, 5}, {3, 6}}, read.getMatrix());
+    }
+
+    @Test
+    public void testRejectsForeignAndTruncatedFiles() throws Exception {
+        Path foreign = dir.resolve("foreign.bin");
+        Files.write(foreign, new byte[32]);
+        assertThrows(IOException.class, () -> BinaryMatrixFile.read(foreign));
+
+        Path truncated = dir.resolve("truncated.bin");
+        BinaryMatrixFile.write(new ComputationNode(new double[][]{{1, 2}}), truncated);
+        byte[] bytes = Files.readAllBytes(truncated);
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IOException.class, () -> BinaryMatrixFile.read(truncated));
+    }
+
+    @Test
+    public void testJsonReferencesBinaryOperand() throws Exception {
+        BinaryMatrixFile.write(new ComputationNode(new double[][]{{1, 2}, {3, 4}}), dir.resolve("a.bin"));
+        Path json = dir.resolve("input.json");
+        Files.writeString(json, "{\"operator\": \"+\", \"operands\": [{\"file\": \"a.bin\"}, [[10, 20], [30, 40]]]}");
+
+        for (InputMode mode : InputMode.values()) {
+            ComputationNode root = new InputParser(mode).parse(json.toString());
+            ComputationNode operand = root.getChildren().get(0);
+            assertArrayEquals(new double[][]{{1, 2}, {3, 4}}, operand.getMatrix(), mode.toString());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package parser;
+
+import memory.SparseMatrix;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CommonSubexpressionsTest {
+
+    private static ComputationNode leaf(double[][] matrix) {
+        return new ComputationNode(matrix);
+    }
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(List.of(children)));
+    }
+
+    @Test
+    public void testDuplicatesAreMergedByContent() {
+        double[][] x = {{1, 2}, {3, 4}};
+        double[][] w = {{0, 1}, {1, 0}};
+        // X*W + T(X*W), every leaf a separate copy
+        ComputationNode first = op(ComputationNodeType.MULTIPLY, leaf(x), leaf(w));
+        ComputationNode transposed = op(ComputationNodeType.TRANSPOSE,
+                op(ComputationNodeType.MULTIPLY, leaf(x.clone()), leaf(new double[][]{{0, 1}, {1, 0}})));
+        ComputationNode root = op(ComputationNodeType.ADD, first, transposed);
+
+        CommonSubexpressions subexpressions = new CommonSubexpressions();
+        subexpressions.eliminate(root);
+
+        assertSame(first, transposed.getChildren().get(0));
+        assertTrue(first.isShared());
+        assertFalse(first.getChildren().get(0).isShared());
+        assertEquals(1, subexpressions.getSubtreesMerged());
+        assertEquals(3, subexpressions.getNodesRemoved());
+    }
+
+    @Test
+    public void testFingerprints() {
+        CommonSubexpressions subexpressions = new CommonSubexpressions();
+        double[][] a = {{1, 0}, {0, 0}};
+        Fingerprint dense = subexpressions.fingerprint(leaf(a));
+
+        assertEquals(dense, new CommonSubexpressions().fingerprint(leaf(new double[][]{{1, 0}, {0, 0}})));
+        assertEquals(dense, subexpressions.fingerprint(new ComputationNode(SparseMatrix.fromDense(a))));
+        assertNotEquals(dense, subexpressions.fingerprint(leaf(new double[][]{{1, 0}, {0, -0.0}})));
+        ComputationNode negated = op(ComputationNodeType.MULTIPLY, leaf(a), leaf(a));
+        negated.setNegated(true);
+        assertNotEquals(subexpressions.fingerprint(op(ComputationNodeType.MULTIPLY, leaf(a), leaf(a))),
+                subexpressions.fingerprint(negated));
+        assertNotEquals(subexpressions.fingerprint(op(ComputationNodeType.ADD, leaf(a), leaf(a))),
+                subexpressions.fingerprint(op(ComputationNodeType.MULTIPLY, leaf(a), leaf(a))));
+    }
+}
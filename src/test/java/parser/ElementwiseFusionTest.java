@@ -0,0 +1,54 @@
+package parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ElementwiseFusionTest {
+
+    private static ComputationNode leaf(int rows, int cols) {
+        return new ComputationNode(new double[rows][cols]);
+    }
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(List.of(children)));
+    }
+
+    @Test
+    public void testChainBecomesOneNode() {
+        ComputationNode a = leaf(2, 3);
+        ComputationNode b = leaf(2, 3);
+        ComputationNode c = leaf(3, 2);
+        ComputationNode root = op(ComputationNodeType.SUBTRACT,
+                op(ComputationNodeType.NEGATE, a), op(ComputationNodeType.TRANSPOSE, op(ComputationNodeType.ADD, c, c)));
+        ComputationNode product = op(ComputationNodeType.MULTIPLY, root, b); // dimensions are not checked here
+
+        ElementwiseFusion fusion = new ElementwiseFusion();
+        fusion.fuse(product);
+
+        assertEquals(ComputationNodeType.FUSED, root.getNodeType());
+        assertEquals(List.of(a, c, c), root.getChildren());
+        assertEquals(ComputationNodeType.SUBTRACT, root.getFusedExpression().getNodeType());
+        assertArrayEquals(new long[]{2, 3}, new ShapeInference().shapeOf(root));
+        assertEquals(1, fusion.getSubtreesFused());
+        assertEquals(3, fusion.getOperationsFused());
+        assertSame(b, product.getChildren().get(1));
+    }
+
+    @Test
+    public void testSingleOperationsAndProductsAreNotFused() {
+        ComputationNode sum = op(ComputationNodeType.ADD, leaf(2, 2), op(ComputationNodeType.TRANSPOSE, leaf(2, 2)));
+        ComputationNode root = op(ComputationNodeType.NEGATE,
+                op(ComputationNodeType.MULTIPLY, sum, op(ComputationNodeType.NEGATE, leaf(2, 2))));
+
+        ElementwiseFusion fusion = new ElementwiseFusion();
+        fusion.fuse(root);
+
+        assertEquals(ComputationNodeType.NEGATE, root.getNodeType());
+        assertEquals(ComputationNodeType.ADD, sum.getNodeType());
+        assertEquals(0, fusion.getSubtreesFused());
+    }
+}
@@ -0,0 +1,79 @@
+package parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InputParserTest {
+
+    @TempDir
+    Path dir;
+
+    private String write(String json) throws IOException {
+        Path file = Files.createTempFile(dir, "input", ".json");
+        Files.writeString(file, json);
+        return file.toString();
+    }
+
+    private static void assertSameTree(ComputationNode expected, ComputationNode actual) {
+        assertEquals(expected.getNodeType(), actual.getNodeType());
+        if (expected.getNodeType() == ComputationNodeType.MATRIX) {
+            assertArrayEquals(expected.getMatrix(), actual.getMatrix());
+            return;
+        }
+        assertEquals(expected.getChildren().size(), actual.getChildren().size());
+        for (int i = 0; i < expected.getChildren().size(); i++) {
+            assertSameTree(expected.getChildren().get(i), actual.getChildren().get(i));
+        }
+    }
+
+    @Test
+    public void testStreamingMatchesTree() throws Exception {
+        // operands before operator, an unknown field, a wide first row and mixed number forms
+        StringBuilder wide = new StringBuilder("[");
+        for (int j = 0; j < 40; j++) {
+            wide.append(j == 0 ? "" : ",").append(j * 0.5);
+        }
+        wide.append("]");
+        String path = write("{\"operands\": [[" + wide + "," + wide + "],"
+                + " {\"operator\": \"T\", \"comment\": {\"x\": [1]}, \"operands\": [[[1, -2e3, 3.25], [4, 5, 6]]]}],"
+                + " \"operator\": \"+\"}");
+
+        assertSameTree(new InputParser(InputMode.TREE).parse(path), new InputParser(InputMode.STREAMING).parse(path));
+    }
+
+    @Test
+    public void testStreamingRejectsWhatTreeRejects() throws Exception {
+        String[] inputs = {
+                "[[1, 2], [3]]",
+                "[[1, 2], [3, 4, 5]]",
+                "[1, 2]",
+                "[]",
+                "[[1], 2]",
+                "{\"operator\": \"+\"}",
+                "{\"operator\": \"%\", \"operands\": [[[1]]]}",
+        };
+        for (String input : inputs) {
+            String path = write(input);
+            Exception tree = assertThrows(Exception.class, () -> new InputParser(InputMode.TREE).parse(path), input);
+            Exception streaming = assertThrows(Exception.class, () -> new InputParser(InputMode.STREAMING).parse(path), input);
+            assertEquals(tree.getClass(), streaming.getClass(), input);
+        }
+    }
+
+    @Test
+    public void testStreamingErrorOffset() throws Exception {
+        String path = write("[[1, 2],\n [3, 4, 5]]");
+
+        ParseException e = assertThrows(ParseException.class, () -> new InputParser(InputMode.STREAMING).parse(path));
+
+        assertEquals("Inconsistent row sizes in matrix.", e.getMessage());
+        assertEquals(17, e.getErrorOffset()); // the 5
+    }
+}
@@ -0,0 +1,65 @@
+package parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MatrixChainPlannerTest {
+
+    private static ComputationNode leaf(int rows, int cols) {
+        return new ComputationNode(new double[rows][cols]);
+    }
+
+    private static ComputationNode multiply(ComputationNode... operands) {
+        return new ComputationNode(ComputationNodeType.MULTIPLY, new ArrayList<>(List.of(operands)));
+    }
+
+    @Test
+    public void testTallSkinnyChainIsNestedRight() {
+        // (100x1) * (1x100) * (100x1): A * (B * C) costs 200 multiply-adds, (A * B) * C costs 20000
+        ComputationNode a = leaf(100, 1);
+        ComputationNode b = leaf(1, 100);
+        ComputationNode c = leaf(100, 1);
+        ComputationNode root = multiply(a, b, c);
+
+        MatrixChainPlanner planner = new MatrixChainPlanner();
+        planner.plan(root);
+
+        assertEquals(2, root.getChildren().size());
+        assertSame(a, root.getChildren().get(0));
+        ComputationNode right = root.getChildren().get(1);
+        assertEquals(ComputationNodeType.MULTIPLY, right.getNodeType());
+        assertSame(b, right.getChildren().get(0));
+        assertSame(c, right.getChildren().get(1));
+        assertEquals(1, planner.getChainsReordered());
+        assertEquals(40_000, planner.getLeftAssociativeFlops(), 0.001);
+        assertEquals(400, planner.getPlannedFlops(), 0.001);
+    }
+
+    @Test
+    public void testShapesOfNestedOperands() {
+        // T(1x100) is 100x1, so the chain has the same shape as above
+        ComputationNode transposed = new ComputationNode(ComputationNodeType.TRANSPOSE, new ArrayList<>(List.of(leaf(1, 100))));
+        ComputationNode root = multiply(transposed, leaf(1, 100), leaf(100, 1));
+
+        MatrixChainPlanner planner = new MatrixChainPlanner();
+        planner.plan(root);
+
+        assertSame(transposed, root.getChildren().get(0));
+        assertEquals(1, planner.getChainsReordered());
+    }
+
+    @Test
+    public void testMismatchedChainIsLeftAlone() {
+        ComputationNode root = multiply(leaf(2, 3), leaf(4, 5), leaf(5, 6));
+
+        MatrixChainPlanner planner = new MatrixChainPlanner();
+        planner.plan(root);
+
+        assertEquals(3, root.getChildren().size());
+        assertEquals(0, planner.getChainsPlanned());
+    }
+}
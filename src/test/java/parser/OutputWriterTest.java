@@ -0,0 +1,60 @@
+package parser;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutputWriterTest {
+
+    @TempDir
+    Path dir;
+
+    private static double[][] randomMatrix(int rows, int cols) {
+        Random random = new Random(7);
+        double[][] matrix = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                matrix[i][j] = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 10);
+            }
+        }
+        return matrix;
+    }
+
+    @Test
+    public void testStreamingMatchesPrettyByteForByte() throws Exception {
+        double[][] matrix = randomMatrix(7, 5);
+        Path pretty = dir.resolve("pretty.json");
+        Path streaming = dir.resolve("streaming.json");
+
+        OutputWriter.write(new ComputationNode(matrix), pretty.toString(), OutputMode.PRETTY);
+        OutputWriter.write(new ComputationNode(matrix), streaming.toString(), OutputMode.STREAMING);
+
+        assertEquals(Files.readString(pretty), Files.readString(streaming));
+    }
+
+    @Test
+    public void testCompactTransposedNodeRoundTrips() throws Exception {
+        double[][] stored = randomMatrix(3, 4);
+        ComputationNode node = new ComputationNode(new double[][]{{0}});
+        node.resolveTransposed(stored);
+        Path compact = dir.resolve("compact.json");
+
+        OutputWriter.write(node, compact.toString(), OutputMode.COMPACT);
+
+        String text = Files.readString(compact);
+        assertFalse(text.contains(" ") || text.contains("\n"));
+        double[][] read = new ObjectMapper().treeToValue(new ObjectMapper().readTree(text).get("result"), double[][].class);
+        assertEquals(4, read.length);
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 4; j++) {
+                assertEquals(stored[i][j], read[j][i]); // exact: the double writer round-trips
+            }
+        }
+    }
+}
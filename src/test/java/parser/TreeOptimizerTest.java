@@ -0,0 +1,91 @@
+package parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TreeOptimizerTest {
+
+    private static ComputationNode leaf(int rows, int cols) {
+        return new ComputationNode(new double[rows][cols]);
+    }
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(List.of(children)));
+    }
+
+    @Test
+    public void testDoubleTransposeCancels() {
+        double[][] matrix = new double[2][3];
+        ComputationNode root = op(ComputationNodeType.TRANSPOSE,
+                op(ComputationNodeType.TRANSPOSE, new ComputationNode(matrix)));
+
+        TreeOptimizer optimizer = new TreeOptimizer();
+        optimizer.optimize(root);
+
+        assertEquals(ComputationNodeType.MATRIX, root.getNodeType());
+        assertSame(matrix, root.getMatrix());
+        // two passes of 6 elements, 16 bytes each
+        assertEquals(2 * 6 * 16, optimizer.getBytesSaved());
+        assertEquals(1, optimizer.getRewrites().get("T(T(A)) -> A"));
+    }
+
+    @Test
+    public void testAddOfNegationBecomesSubtract() {
+        ComputationNode a = leaf(2, 2);
+        ComputationNode b = leaf(2, 2);
+        ComputationNode root = op(ComputationNodeType.ADD, op(ComputationNodeType.NEGATE, b), a);
+
+        new TreeOptimizer().optimize(root);
+
+        assertEquals(ComputationNodeType.SUBTRACT, root.getNodeType());
+        assertSame(a, root.getChildren().get(0));
+        assertSame(b, root.getChildren().get(1));
+    }
+
+    @Test
+    public void testNegationIsAbsorbedByMultiply() {
+        ComputationNode a = leaf(2, 3);
+        ComputationNode b = leaf(3, 2);
+        ComputationNode root = op(ComputationNodeType.NEGATE,
+                op(ComputationNodeType.MULTIPLY, op(ComputationNodeType.NEGATE, op(ComputationNodeType.NEGATE, a)), b));
+
+        new TreeOptimizer().optimize(root);
+
+        assertEquals(ComputationNodeType.MULTIPLY, root.getNodeType());
+        assertTrue(root.isNegated());
+        assertSame(a, root.getChildren().get(0));
+        assertSame(b, root.getChildren().get(1));
+    }
+
+    @Test
+    public void testTransposedProductIsDistributedWhenCheaper() {
+        // T(T(A) * B): transposing A * B's operands lets T(T(A)) cancel
+        ComputationNode a = leaf(50, 50);
+        ComputationNode b = leaf(50, 2);
+        ComputationNode root = op(ComputationNodeType.TRANSPOSE,
+                op(ComputationNodeType.MULTIPLY, op(ComputationNodeType.TRANSPOSE, a), b));
+
+        new TreeOptimizer().optimize(root);
+
+        assertEquals(ComputationNodeType.MULTIPLY, root.getNodeType());
+        ComputationNode first = root.getChildren().get(0);
+        assertEquals(ComputationNodeType.TRANSPOSE, first.getNodeType());
+        assertSame(b, first.getChildren().get(0));
+        assertSame(a, root.getChildren().get(1));
+    }
+
+    @Test
+    public void testNothingToRewrite() {
+        ComputationNode root = op(ComputationNodeType.MULTIPLY, leaf(2, 2), leaf(2, 2));
+
+        TreeOptimizer optimizer = new TreeOptimizer();
+        optimizer.optimize(root);
+
+        assertTrue(optimizer.getRewrites().isEmpty());
+        assertEquals("Rewrites: none, estimated traffic saved: 0 bytes", optimizer.getReport());
+    }
+}
@@ -0,0 +1,62 @@
+package scheduling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdleWorkersTest {
+
+    @Test
+    public void testQuarterOctaveTiers() {
+        assertEquals(0, IdleWorkers.tier(0));
+        assertEquals(0, IdleWorkers.tier(0.99));
+        assertEquals(1, IdleWorkers.tier(1.0));
+        assertEquals(2, IdleWorkers.tier(1.25));
+        assertEquals(5, IdleWorkers.tier(2.0));
+        assertEquals(5, IdleWorkers.tier(2.4));
+        assertEquals(IdleWorkers.TIERS - 1, IdleWorkers.tier(Double.MAX_VALUE));
+        assertEquals(0, IdleWorkers.tier(Double.NaN));
+    }
+
+    @Test
+    public void testTakesLeastFatiguedTierFirst() throws InterruptedException {
+        IdleWorkers idle = new IdleWorkers();
+        TiredThread tired = new TiredThread(0, 1.0);
+        TiredThread fresh = new TiredThread(1, 1.0);
+        TiredThread alsoFresh = new TiredThread(2, 1.0);
+        idle.offer(tired, 5e9);
+        idle.offer(fresh, 1000);
+        idle.offer(alsoFresh, 1010); // same tier as fresh: filed later, taken later
+
+        assertEquals(3, idle.size());
+        assertSame(fresh, idle.take());
+        assertSame(alsoFresh, idle.take());
+        assertSame(tired, idle.take());
+        assertEquals(0, idle.size());
+    }
+
+    @Test
+    public void testTakeBlocksUntilOffer() throws InterruptedException {
+        IdleWorkers idle = new IdleWorkers();
+        TiredThread worker = new TiredThread(0, 1.0);
+        AtomicReference<TiredThread> taken = new AtomicReference<>();
+        Thread taker = new Thread(() -> {
+            try {
+                taken.set(idle.take());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        taker.start();
+        Thread.sleep(20);
+        assertNull(taken.get());
+
+        idle.offer(worker, 1e6);
+        taker.join(5000);
+
+        assertSame(worker, taken.get());
+    }
+}
@@ -0,0 +1,168 @@
+package scheduling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TiredExecutorTest {
+
+    private static List<Runnable> countingTasks(AtomicInteger counter, int count) {
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tasks.add(counter::incrementAndGet);
+        }
+        return tasks;
+    }
+
+    @Test
+    public void testSubmitAllRunsEveryTask() throws InterruptedException {
+        for (SchedulingMode mode : SchedulingMode.values()) {
+            TiredExecutor executor = new TiredExecutor(4, mode);
+            AtomicInteger counter = new AtomicInteger();
+
+            executor.submitAll(countingTasks(counter, 1000));
+            executor.submitAll(countingTasks(counter, 3));
+
+            assertEquals(1003, counter.get(), mode.toString());
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testTaskFailureIsRethrown() throws InterruptedException {
+        for (SchedulingMode mode : SchedulingMode.values()) {
+            TiredExecutor executor = new TiredExecutor(2, mode);
+            List<Runnable> tasks = new ArrayList<>();
+            tasks.add(() -> {});
+            tasks.add(() -> { throw new IllegalArgumentException("boom"); });
+
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> executor.submitAll(tasks));
+
+            assertEquals("boom", e.getMessage());
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testWorkStealingSubmitThenSubmitAll() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(4, SchedulingMode.WORK_STEALING);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            tasks.add(() -> {
+                try {
+                    Thread.sleep(2);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        // single submits pile up on the least fatigued worker's deque; the others steal from it
+        AtomicInteger counter = new AtomicInteger();
+        for (Runnable task : countingTasks(counter, 50)) {
+            executor.submit(task);
+        }
+        executor.submitAll(tasks);
+
+        assertEquals(50, counter.get());
+        String report = executor.getWorkerReport();
+        assertTrue(report.contains("Worker 3"));
+        assertTrue(report.contains("Steals:"));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testChooseGrain() {
+        // cheap tasks are grouped, but every worker still gets several chunks
+        assertEquals(250, TiredExecutor.chooseGrain(10_000, 10, 10));
+        assertEquals(33, TiredExecutor.chooseGrain(100_000, 1000, 4));
+        // expensive tasks are never grouped
+        assertEquals(1, TiredExecutor.chooseGrain(10_000, 1_000_000, 4));
+        assertEquals(1, TiredExecutor.chooseGrain(3, 1, 4));
+    }
+
+    @Test
+    public void testChunkedSubmitAll() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(2);
+        AtomicInteger counter = new AtomicInteger();
+
+        executor.submitAll(countingTasks(counter, 1001), 1);
+
+        assertEquals(1001, counter.get());
+        assertTrue(executor.getWorkerReport().contains("Chunk grain: 125"));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testConcurrentSubmittersInHandoffMode() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(3);
+        AtomicInteger counter = new AtomicInteger();
+        List<Thread> submitters = new ArrayList<>();
+        for (int s = 0; s < 4; s++) {
+            submitters.add(new Thread(() -> {
+                for (Runnable task : countingTasks(counter, 2000)) {
+                    executor.submit(task);
+                }
+            }));
+        }
+        submitters.forEach(Thread::start);
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+        executor.awaitAll();
+
+        assertEquals(8000, counter.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testVirtualModeBoundsParallelismByLanes() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(2, SchedulingMode.VIRTUAL);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            tasks.add(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(1);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            });
+        }
+
+        executor.dispatch(tasks); // returns before the tasks run: they wait for lanes on their own threads
+        executor.awaitAll();
+
+        assertTrue(peak.get() <= 2, "peak " + peak.get());
+        assertTrue(executor.getWorkerMetrics().stream().allMatch(w -> w.getTimeUsedNanos() > 0));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testJobViewsTrackTheirOwnTasks() throws InterruptedException {
+        for (SchedulingMode mode : SchedulingMode.values()) {
+            TiredExecutor executor = new TiredExecutor(2, mode);
+            TiredExecutor failing = executor.forJob();
+            TiredExecutor healthy = executor.forJob();
+            AtomicInteger counter = new AtomicInteger();
+            List<Runnable> tasks = new ArrayList<>(countingTasks(counter, 100));
+            tasks.add(() -> { throw new IllegalStateException("job failure"); });
+
+            assertThrows(IllegalStateException.class, () -> failing.submitAll(tasks), mode.toString());
+            healthy.submitAll(countingTasks(counter, 100)); // does not see the other job's failure
+            healthy.shutdown(); // leaves the shared workers running
+            executor.submitAll(countingTasks(counter, 10));
+
+            assertEquals(210, counter.get(), mode.toString());
+            executor.shutdown();
+        }
+    }
+}
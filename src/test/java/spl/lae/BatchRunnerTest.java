@@ -0,0 +1,76 @@
+package spl.lae;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import metrics.MetricsRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import scheduling.TiredExecutor;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchRunnerTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static String sum(int a, int b) {
+        return "{\"operator\": \"+\", \"operands\": [[[" + a + ", 1], [2, 3]], [[" + b + ", 1], [2, 3]]]}";
+    }
+
+    @Test
+    public void testDirectoryOfJobsOnOneExecutor(@TempDir Path dir) throws Exception {
+        Path inputs = Files.createDirectory(dir.resolve("in"));
+        for (int i = 0; i < 8; i++) {
+            Files.writeString(inputs.resolve("job" + i + ".json"), sum(i, 10));
+        }
+        Files.writeString(inputs.resolve("bad.json"), "{\"operator\": \"+\", \"operands\": [[[1, 2]], [[1], [2]]]}");
+        Files.writeString(inputs.resolve("notes.txt"), "not a job");
+        MetricsRegistry registry = new MetricsRegistry();
+        TiredExecutor executor = new TiredExecutor(3);
+
+        BatchRunner batch = new BatchRunner(executor, new EngineConfig().setMetricsSink(registry), dir.resolve("out"), 4);
+        batch.run(inputs.toString());
+        executor.shutdown();
+
+        assertEquals(8, batch.getSucceeded());
+        assertEquals(1, batch.getFailed());
+        BatchRunner.JobResult bad = batch.getResults().get(0); // results are sorted by input: bad.json first
+        assertFalse(bad.isSucceeded());
+        assertTrue(bad.getError().contains("dimensions mismatch"));
+        assertTrue(batch.getReport().endsWith("Batch: 8 job(s) succeeded, 1 failed, at most 4 at once"));
+        assertEquals(8, registry.getRunCount()); // the failed job never finished a run
+        for (int i = 0; i < 8; i++) {
+            JsonNode result = mapper.readTree(dir.resolve("out").resolve("job" + i + ".out.json").toFile()).get("result");
+            assertEquals(i + 10, result.get(0).get(0).asDouble());
+            assertEquals(6, result.get(1).get(1).asDouble());
+        }
+        JsonNode error = mapper.readTree(dir.resolve("out").resolve("bad.out.json").toFile());
+        assertTrue(error.get("error").asText().contains("dimensions mismatch"));
+        assertFalse(Files.exists(dir.resolve("out").resolve("notes.out.txt")));
+    }
+
+    @Test
+    public void testManifestPathsAreRelativeToIt(@TempDir Path dir) throws Exception {
+        Files.writeString(dir.resolve("a.json"), sum(1, 1));
+        Files.writeString(dir.resolve("b.json"), sum(2, 2));
+        Files.writeString(dir.resolve("jobs.txt"), "# first job keeps the default output\na.json\n\nb.json custom.json\n");
+        TiredExecutor executor = new TiredExecutor(2);
+
+        BatchRunner batch = new BatchRunner(executor, new EngineConfig(), dir.resolve("out"), 2);
+        batch.run(dir.resolve("jobs.txt").toString());
+        executor.shutdown();
+
+        assertEquals(2, batch.getSucceeded());
+        assertTrue(Files.exists(dir.resolve("out").resolve("a.out.json")));
+        assertEquals(4, mapper.readTree(dir.resolve("custom.json").toFile()).get("result").get(0).get(0).asDouble());
+    }
+
+    @Test
+    public void testOutputName() {
+        assertEquals("a.out.json", BatchRunner.outputName(Path.of("dir", "a.json")));
+        assertEquals("matrix.out", BatchRunner.outputName(Path.of("matrix")));
+    }
+}
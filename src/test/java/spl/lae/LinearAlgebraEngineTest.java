@@ -0,0 +1,613 @@
+package spl.lae;
+
+import memory.BufferPool;
+import memory.MatrixStorage;
+import memory.SparseMatrix;
+import metrics.MetricsRegistry;
+import metrics.NodeMetrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import parser.BinaryMatrixFile;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LinearAlgebraEngineTest {
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(List.of(children)));
+    }
+
+    private static ComputationNode leaf(double[][] matrix) {
+        return new ComputationNode(matrix);
+    }
+
+    @Test
+    public void testAddNegateTranspose() {
+        double[][] a = {{1, 2, 3}, {4, 5, 6}};
+        double[][] b = {{1, 1, 1}, {2, 2, 2}};
+        ComputationNode root = op(ComputationNodeType.TRANSPOSE,
+                op(ComputationNodeType.NEGATE, op(ComputationNodeType.ADD, leaf(a), leaf(b))));
+
+        double[][] result = new LinearAlgebraEngine(2).run(root).getMatrix();
+
+        double[][] expected = {{-2, -6}, {-3, -7}, {-4, -8}};
+        assertArrayEquals(expected, result);
+    }
+
+    @Test
+    public void testNaryAddIsNested() {
+        ComputationNode root = op(ComputationNodeType.ADD,
+                leaf(new double[][]{{1}}), leaf(new double[][]{{2}}), leaf(new double[][]{{3}}), leaf(new double[][]{{4}}));
+
+        double[][] result = new LinearAlgebraEngine(3).run(root).getMatrix();
+
+        assertEquals(10.0, result[0][0], 0.001);
+    }
+
+    @Test
+    public void testTiledMultiplyMatchesRowMultiply() {
+        Random random = new Random(7);
+        double[][] a = randomMatrix(random, 37, 53);
+        double[][] b = randomMatrix(random, 53, 29);
+
+        double[][] rows = new LinearAlgebraEngine(4, new EngineConfig().setMultiplyMode(MultiplyMode.ROWS))
+                .run(op(ComputationNodeType.MULTIPLY, leaf(copy(a)), leaf(copy(b)))).getMatrix();
+        double[][] tiled = new LinearAlgebraEngine(4, new EngineConfig().setMultiplyMode(MultiplyMode.TILED).setTileSize(8))
+                .run(op(ComputationNodeType.MULTIPLY, leaf(copy(a)), leaf(copy(b)))).getMatrix();
+
+        assertEquals(37, tiled.length);
+        assertEquals(29, tiled[0].length);
+        for (int i = 0; i < rows.length; i++) {
+            assertArrayEquals(rows[i], tiled[i], 1e-9);
+        }
+    }
+
+    @Test
+    public void testParallelTreeMatchesSequential() {
+        Random random = new Random(11);
+        double[][][] leaves = new double[8][][];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = randomMatrix(random, 12, 12);
+        }
+        double[][] sequential = new LinearAlgebraEngine(3, new EngineConfig().setParallelTree(false))
+                .run(wideTree(leaves)).getMatrix();
+        double[][] parallel = new LinearAlgebraEngine(3, new EngineConfig().setParallelTree(true))
+                .run(wideTree(leaves)).getMatrix();
+
+        for (int i = 0; i < sequential.length; i++) {
+            assertArrayEquals(sequential[i], parallel[i], 1e-9);
+        }
+    }
+
+    /**
+     * (L0 * L1 + -(L2)) + T(L3 * L4) + (L5 + L6 + L7): several independent subtrees of different depth.
+     */
+    private static ComputationNode wideTree(double[][][] leaves) {
+        ComputationNode[] l = new ComputationNode[leaves.length];
+        for (int i = 0; i < leaves.length; i++) {
+            l[i] = leaf(copy(leaves[i]));
+        }
+        return op(ComputationNodeType.ADD,
+                op(ComputationNodeType.ADD, op(ComputationNodeType.MULTIPLY, l[0], l[1]), op(ComputationNodeType.NEGATE, l[2])),
+                op(ComputationNodeType.TRANSPOSE, op(ComputationNodeType.MULTIPLY, l[3], l[4])),
+                op(ComputationNodeType.ADD, l[5], l[6], l[7]));
+    }
+
+    @Test
+    public void testContiguousStorageMatchesPerVector() {
+        Random random = new Random(15);
+        double[][][] leaves = new double[8][][];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = randomMatrix(random, 12, 12);
+        }
+        EngineConfig[] configs = {
+                new EngineConfig().setMultiplyMode(MultiplyMode.ROWS).setParallelTree(false),
+                new EngineConfig().setMultiplyMode(MultiplyMode.TILED).setTileSize(4),
+                new EngineConfig().setFusion(false).setCommonSubexpressions(false).setRewriting(false),
+        };
+        for (EngineConfig config : configs) {
+            double[][] perVector = new LinearAlgebraEngine(3, config.copy().setStorage(MatrixStorage.PER_VECTOR))
+                    .run(wideTree(leaves)).getMatrix();
+            double[][] contiguous = new LinearAlgebraEngine(3, config.copy().setStorage(MatrixStorage.CONTIGUOUS))
+                    .run(wideTree(leaves)).getMatrix();
+
+            for (int i = 0; i < perVector.length; i++) {
+                assertArrayEquals(perVector[i], contiguous[i], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testChainOrderingKeepsResult() {
+        Random random = new Random(3);
+        double[][] a = randomMatrix(random, 30, 2);
+        double[][] b = randomMatrix(random, 2, 30);
+        double[][] c = randomMatrix(random, 30, 3);
+        double[][] d = randomMatrix(random, 3, 5);
+
+        LinearAlgebraEngine planning = new LinearAlgebraEngine(2, new EngineConfig().setChainOrdering(true));
+        double[][] ordered = planning
+                .run(op(ComputationNodeType.MULTIPLY, leaf(copy(a)), leaf(copy(b)), leaf(copy(c)), leaf(copy(d)))).getMatrix();
+        assertTrue(planning.getPassReports().stream().anyMatch(r -> r.startsWith("Matrix-chain ordering: 1 of 1")));
+        double[][] leftToRight = new LinearAlgebraEngine(2, new EngineConfig().setChainOrdering(false))
+                .run(op(ComputationNodeType.MULTIPLY, leaf(copy(a)), leaf(copy(b)), leaf(copy(c)), leaf(copy(d)))).getMatrix();
+
+        for (int i = 0; i < ordered.length; i++) {
+            assertArrayEquals(leftToRight[i], ordered[i], 1e-6);
+        }
+    }
+
+    @Test
+    public void testRewritingKeepsResult() {
+        Random random = new Random(4);
+        double[][] a = randomMatrix(random, 9, 6);
+        double[][] b = randomMatrix(random, 9, 6);
+        double[][] c = randomMatrix(random, 6, 7);
+
+        EngineConfig[] configs = {
+                new EngineConfig().setMultiplyMode(MultiplyMode.TILED).setTileSize(4),
+                new EngineConfig().setMultiplyMode(MultiplyMode.ROWS).setParallelTree(false),
+        };
+        for (EngineConfig config : configs) {
+            LinearAlgebraEngine rewriting = new LinearAlgebraEngine(2, config.setRewriting(true));
+            double[][] rewritten = rewriting.run(rewritableTree(a, b, c)).getMatrix();
+            LinearAlgebraEngine notRewriting = new LinearAlgebraEngine(2, config.setRewriting(false));
+            double[][] plain = notRewriting.run(rewritableTree(a, b, c)).getMatrix();
+            assertTrue(rewriting.getPassReports().get(0).startsWith("Rewrites:"));
+            assertTrue(notRewriting.getPassReports().stream().noneMatch(r -> r.startsWith("Rewrites:")));
+            for (int i = 0; i < plain.length; i++) {
+                assertArrayEquals(plain[i], rewritten[i], 1e-9);
+            }
+        }
+    }
+
+    /**
+     * -( (A + -B) * C ) + T(T( -(A * C) + -(B * C) )), which exercises every TreeOptimizer rule.
+     */
+    private static ComputationNode rewritableTree(double[][] a, double[][] b, double[][] c) {
+        ComputationNode difference = op(ComputationNodeType.ADD, leaf(copy(a)),
+                op(ComputationNodeType.NEGATE, leaf(copy(b))));
+        ComputationNode negatedProduct = op(ComputationNodeType.NEGATE,
+                op(ComputationNodeType.MULTIPLY, difference, leaf(copy(c))));
+        ComputationNode negatedSum = op(ComputationNodeType.ADD,
+                op(ComputationNodeType.NEGATE, op(ComputationNodeType.MULTIPLY, leaf(copy(a)), leaf(copy(c)))),
+                op(ComputationNodeType.NEGATE, op(ComputationNodeType.MULTIPLY, leaf(copy(b)), leaf(copy(c)))));
+        ComputationNode doubleTranspose = op(ComputationNodeType.TRANSPOSE,
+                op(ComputationNodeType.TRANSPOSE, negatedSum));
+        return op(ComputationNodeType.ADD, negatedProduct, doubleTranspose);
+    }
+
+    @Test
+    public void testTransposeViewsInEveryLayout() {
+        Random random = new Random(5);
+        double[][] a = randomMatrix(random, 5, 3);
+        double[][] b = randomMatrix(random, 5, 3);
+        double[][] c = randomMatrix(random, 3, 5);
+        double[][] at = transpose(a);
+
+        for (MultiplyMode mode : MultiplyMode.values()) {
+            EngineConfig config = new EngineConfig().setMultiplyMode(mode).setTileSize(2).setRewriting(false);
+            // T(A) + T(B) stays a transposed view, T(A) + C needs the view materialized
+            ComputationNode sumOfViews = new LinearAlgebraEngine(2, config).run(op(ComputationNodeType.ADD,
+                    op(ComputationNodeType.TRANSPOSE, leaf(copy(a))), op(ComputationNodeType.TRANSPOSE, leaf(copy(b)))));
+            assertTrue(sumOfViews.isTransposed());
+            assertMatrixEquals(transpose(sum(a, b)), sumOfViews.getMatrix());
+            assertMatrixEquals(sum(at, c), new LinearAlgebraEngine(2, config).run(op(ComputationNodeType.ADD,
+                    op(ComputationNodeType.TRANSPOSE, leaf(copy(a))), leaf(copy(c)))).getMatrix());
+            // C * T(C) and T(A) * A, the transposed operand on either side
+            assertMatrixEquals(product(c, transpose(c)), new LinearAlgebraEngine(2, config).run(op(ComputationNodeType.MULTIPLY,
+                    leaf(copy(c)), op(ComputationNodeType.TRANSPOSE, leaf(copy(c))))).getMatrix());
+            assertMatrixEquals(product(at, a), new LinearAlgebraEngine(2, config).run(op(ComputationNodeType.MULTIPLY,
+                    op(ComputationNodeType.TRANSPOSE, leaf(copy(a))), leaf(copy(a)))).getMatrix());
+            // negating a view keeps it a view
+            ComputationNode negatedView = new LinearAlgebraEngine(2, config).run(op(ComputationNodeType.NEGATE,
+                    op(ComputationNodeType.TRANSPOSE, leaf(copy(a)))));
+            assertTrue(negatedView.isTransposed());
+            double[][] negatedAt = negatedView.getMatrix();
+            for (int i = 0; i < at.length; i++) {
+                for (int j = 0; j < at[0].length; j++) {
+                    assertEquals(-at[i][j], negatedAt[i][j], 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOutOfCoreMatchesInMemory(@TempDir Path dir) throws Exception {
+        Random random = new Random(6);
+        double[][] a = randomMatrix(random, 13, 7);
+        double[][] b = randomMatrix(random, 7, 13);
+        double[][] c = randomMatrix(random, 13, 13);
+        // c is given as a column-major binary file, i.e. stored as its transpose
+        ComputationNode transposedC = new ComputationNode(new double[][]{{0}});
+        transposedC.resolveTransposed(transpose(c));
+        BinaryMatrixFile.write(transposedC, dir.resolve("c.bin"));
+
+        // -(A * B) + T(C) - C, with C read from the file
+        ComputationNode outOfCore = new LinearAlgebraEngine(3, new EngineConfig()
+                .setMemoryBudget(3 * 3 * 8 * 3 * 4).setScratchDirectory(dir)) // blocks of 4 x 4
+                .run(op(ComputationNodeType.ADD,
+                        op(ComputationNodeType.NEGATE, op(ComputationNodeType.MULTIPLY, leaf(copy(a)), leaf(copy(b)))),
+                        op(ComputationNodeType.TRANSPOSE, leaf(copy(c))),
+                        op(ComputationNodeType.NEGATE, BinaryMatrixFile.read(dir.resolve("c.bin")))));
+
+        assertNotNull(outOfCore.getFile());
+        double[][] ab = product(a, b);
+        double[][] expected = new double[13][13];
+        for (int i = 0; i < 13; i++) {
+            for (int j = 0; j < 13; j++) {
+                expected[i][j] = -ab[i][j] + c[j][i] - c[i][j];
+            }
+        }
+        assertMatrixEquals(expected, outOfCore.getMatrix());
+        try (var files = Files.list(dir)) {
+            assertEquals(2, files.count()); // c.bin and the result; every scratch panel was deleted
+        }
+    }
+
+    @Test
+    public void testSparseOperandsMatchDense() {
+        Random random = new Random(7);
+        double[][] a = sparseMatrix(random, 40, 30);
+        double[][] b = sparseMatrix(random, 30, 40);
+        double[][] c = randomMatrix(random, 40, 40);
+        double[][] d = sparseMatrix(random, 40, 40);
+
+        for (boolean parallelTree : new boolean[]{false, true}) {
+            EngineConfig config = new EngineConfig().setParallelTree(parallelTree).setRewriting(false);
+            // -(A * B) + T(D) - C * D: sparse * sparse, sparse + dense, dense * sparse and a transposed sparse view
+            ComputationNode root = op(ComputationNodeType.ADD,
+                    op(ComputationNodeType.NEGATE, op(ComputationNodeType.MULTIPLY, sparseLeaf(a), sparseLeaf(b))),
+                    op(ComputationNodeType.TRANSPOSE, sparseLeaf(d)),
+                    op(ComputationNodeType.NEGATE, op(ComputationNodeType.MULTIPLY, leaf(copy(c)), sparseLeaf(d))));
+            ComputationNode result = new LinearAlgebraEngine(3, config).run(root);
+
+            double[][] ab = product(a, b);
+            double[][] cd = product(c, d);
+            double[][] expected = new double[40][40];
+            for (int i = 0; i < 40; i++) {
+                for (int j = 0; j < 40; j++) {
+                    expected[i][j] = -ab[i][j] + d[j][i] - cd[i][j];
+                }
+            }
+            assertMatrixEquals(expected, result.getMatrix());
+        }
+
+        // T(A) + T(A) stays sparse and transposed
+        ComputationNode doubled = new LinearAlgebraEngine(2).run(op(ComputationNodeType.ADD,
+                op(ComputationNodeType.TRANSPOSE, sparseLeaf(a)), op(ComputationNodeType.TRANSPOSE, sparseLeaf(a))));
+        assertNotNull(doubled.getSparse());
+        assertTrue(doubled.isTransposed());
+        assertMatrixEquals(transpose(sum(a, a)), doubled.getMatrix());
+    }
+
+    @Test
+    public void testChainReusesIntermediateRows() {
+        Random random = new Random(8);
+        double[][][] leaves = new double[8][][];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = randomMatrix(random, 16, 16);
+        }
+        double[][] expected = leaves[0];
+        for (int i = 1; i < leaves.length; i++) {
+            expected = product(expected, leaves[i]);
+        }
+
+        for (MultiplyMode mode : MultiplyMode.values()) {
+            ComputationNode[] operands = new ComputationNode[leaves.length];
+            for (int i = 0; i < leaves.length; i++) {
+                operands[i] = leaf(copy(leaves[i]));
+            }
+            LinearAlgebraEngine engine = new LinearAlgebraEngine(2, new EngineConfig().setMultiplyMode(mode)
+                    .setTileSize(4).setChainOrdering(false).setParallelTree(false));
+
+            assertMatrixEquals(expected, engine.run(op(ComputationNodeType.MULTIPLY, operands)).getMatrix());
+            // seven products, but after the first two only recycled rows are needed
+            BufferPool pool = engine.getBufferPool();
+            assertTrue(pool.getReuses() > 0, pool.getReport());
+            assertTrue(pool.getAllocations() < 2 * pool.getReuses(), pool.getReport());
+        }
+    }
+
+    @Test
+    public void testResultsMoveBetweenNodesByReference() {
+        Random random = new Random(9);
+        double[][] a = randomMatrix(random, 6, 4);
+        double[][] b = randomMatrix(random, 6, 4);
+        double[][] c = randomMatrix(random, 4, 6);
+
+        for (boolean parallelTree : new boolean[]{false, true}) {
+            double[][] rowsOfA = copy(a);
+            // -(A + B) + T(C): every step works on the rows of A, T(C) is only a view
+            ComputationNode result = new LinearAlgebraEngine(2, new EngineConfig().setParallelTree(parallelTree)
+                    .setRewriting(false).setFusion(false)).run(op(ComputationNodeType.ADD,
+                    op(ComputationNodeType.NEGATE, op(ComputationNodeType.ADD, leaf(rowsOfA), leaf(copy(b)))),
+                    op(ComputationNodeType.TRANSPOSE, leaf(copy(c)))));
+
+            assertNotNull(result.getSharedMatrix());
+            double[][] value = result.getMatrix();
+            assertSame(rowsOfA[0], value[0]); // never copied
+            assertNull(result.getSharedMatrix());
+            double[][] expected = new double[6][4];
+            for (int i = 0; i < 6; i++) {
+                for (int j = 0; j < 4; j++) {
+                    expected[i][j] = -(a[i][j] + b[i][j]) + c[j][i];
+                }
+            }
+            assertMatrixEquals(expected, value);
+        }
+    }
+
+    @Test
+    public void testFusedChainsMatchUnfused() {
+        Random random = new Random(10);
+        double[][] a = randomMatrix(random, 12, 9);
+        double[][] b = randomMatrix(random, 12, 9);
+        double[][] c = randomMatrix(random, 9, 12);
+        double[][] d = sparseMatrix(random, 40, 40);
+        double[][] e = randomMatrix(random, 40, 40);
+
+        for (boolean parallelTree : new boolean[]{false, true}) {
+            double[][][] results = new double[2][][];
+            double[][][] sparseResults = new double[2][][];
+            for (int fused = 0; fused < 2; fused++) {
+                EngineConfig config = new EngineConfig().setParallelTree(parallelTree).setFusion(fused == 1);
+                // T(-(A + B) + T(C) - A) + C, with a nested sum that is not the first operand
+                LinearAlgebraEngine engine = new LinearAlgebraEngine(2, config);
+                results[fused] = engine.run(op(ComputationNodeType.ADD,
+                        op(ComputationNodeType.TRANSPOSE, op(ComputationNodeType.SUBTRACT,
+                                op(ComputationNodeType.ADD,
+                                        op(ComputationNodeType.NEGATE,
+                                                op(ComputationNodeType.ADD, leaf(copy(a)), leaf(copy(b)))),
+                                        op(ComputationNodeType.TRANSPOSE, leaf(copy(c)))),
+                                leaf(copy(a)))),
+                        op(ComputationNodeType.SUBTRACT, leaf(copy(c)),
+                                op(ComputationNodeType.ADD, leaf(copy(c)), leaf(copy(c)))))).getMatrix();
+                assertEquals(fused == 1,
+                        engine.getPassReports().stream().anyMatch(r -> r.startsWith("Element-wise fusion:")));
+                // E - T(D) + D * E: a sparse input and a product as inputs
+                sparseResults[fused] = new LinearAlgebraEngine(2, config).run(op(ComputationNodeType.ADD,
+                        op(ComputationNodeType.SUBTRACT, leaf(copy(e)), op(ComputationNodeType.TRANSPOSE, sparseLeaf(d))),
+                        op(ComputationNodeType.MULTIPLY, sparseLeaf(d), leaf(copy(e))))).getMatrix();
+            }
+            assertArrayEquals(results[0], results[1]); // same operations in the same order
+            assertMatrixEquals(sparseResults[0], sparseResults[1]);
+        }
+    }
+
+    @Test
+    public void testFusedDimensionMismatch() {
+        ComputationNode root = op(ComputationNodeType.ADD, leaf(new double[2][2]),
+                op(ComputationNodeType.NEGATE, leaf(new double[2][3])), leaf(new double[2][2]));
+
+        Exception e = assertThrows(IllegalArgumentException.class, () -> new LinearAlgebraEngine(2).run(root));
+        assertEquals("Illegal operation: dimensions mismatch", e.getMessage());
+    }
+
+    /**
+     * -(X*W) + (X*W + X*W) - T(T(X*W)) + X + X, with every repeated subtree written out separately.
+     * Merged, X*W has four readers, two of which would work on its rows in place.
+     */
+    private static ComputationNode repeatedSubtrees(double[][] x, double[][] w) {
+        return op(ComputationNodeType.ADD,
+                op(ComputationNodeType.SUBTRACT,
+                        op(ComputationNodeType.ADD,
+                                op(ComputationNodeType.NEGATE, op(ComputationNodeType.MULTIPLY, leaf(copy(x)), leaf(copy(w)))),
+                                op(ComputationNodeType.ADD,
+                                        op(ComputationNodeType.MULTIPLY, leaf(copy(x)), leaf(copy(w))),
+                                        op(ComputationNodeType.MULTIPLY, leaf(copy(x)), leaf(copy(w))))),
+                        op(ComputationNodeType.TRANSPOSE, op(ComputationNodeType.TRANSPOSE,
+                                op(ComputationNodeType.MULTIPLY, leaf(copy(x)), leaf(copy(w)))))),
+                op(ComputationNodeType.ADD, leaf(copy(x)), leaf(copy(x))));
+    }
+
+    @Test
+    public void testMergedSubtreesMatchUnmerged() {
+        Random random = new Random(11);
+        double[][] x = randomMatrix(random, 8, 8);
+        double[][] w = randomMatrix(random, 8, 8);
+
+        for (MultiplyMode mode : MultiplyMode.values()) {
+            for (boolean parallelTree : new boolean[]{false, true}) {
+                EngineConfig config = new EngineConfig().setMultiplyMode(mode).setTileSize(4)
+                        .setParallelTree(parallelTree).setRewriting(false);
+                double[][] plain = new LinearAlgebraEngine(2, config.setCommonSubexpressions(false))
+                        .run(repeatedSubtrees(x, w)).getMatrix();
+                LinearAlgebraEngine merging = new LinearAlgebraEngine(2, config.setCommonSubexpressions(true));
+                double[][] merged = merging.run(repeatedSubtrees(x, w)).getMatrix();
+                assertMatrixEquals(plain, merged);
+                assertTrue(merging.getPassReports().stream().anyMatch(r -> r.startsWith("Common subexpressions:")));
+            }
+        }
+    }
+
+    @Test
+    public void testResultCacheAcrossRuns() {
+        Random random = new Random(12);
+        double[][] x = randomMatrix(random, 8, 8);
+        double[][] w = randomMatrix(random, 8, 8);
+        ResultCache cache = new ResultCache(1 << 20);
+        EngineConfig config = new EngineConfig().setResultCache(cache);
+
+        double[][] first = new LinearAlgebraEngine(2, config).run(repeatedSubtrees(x, w)).getMatrix();
+        assertEquals(0, cache.getHits());
+        assertEquals(3, cache.size()); // the root, X*W and -(X*W), a negated product after rewriting
+
+        // the same product under another root
+        ComputationNode other = new LinearAlgebraEngine(2, config).run(op(ComputationNodeType.NEGATE,
+                op(ComputationNodeType.MULTIPLY, leaf(copy(x)), leaf(copy(w)))));
+        assertEquals(1, cache.getHits());
+        double[][] expected = product(x, w);
+        for (double[] row : expected) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = -row[j];
+            }
+        }
+        assertMatrixEquals(expected, other.getMatrix());
+
+        ComputationNode again = new LinearAlgebraEngine(2, config).run(repeatedSubtrees(x, w));
+        assertEquals(2, cache.getHits());
+        assertArrayEquals(first, again.getMatrix());
+
+        // room for one entry: each result evicts the one before, and the root is stored last
+        ResultCache small = new ResultCache(8 * 8 * Double.BYTES);
+        new LinearAlgebraEngine(2, new EngineConfig().setResultCache(small)).run(repeatedSubtrees(x, w));
+        assertEquals(1, small.size());
+        assertEquals(2, small.getEvictions());
+        assertArrayEquals(first, new LinearAlgebraEngine(2, new EngineConfig().setResultCache(small))
+                .run(repeatedSubtrees(x, w)).getMatrix());
+        assertEquals(1, small.getHits());
+    }
+
+    @Test
+    public void testCacheHitsAreNotAliased() {
+        Random random = new Random(14);
+        double[][] x = randomMatrix(random, 8, 8);
+        double[][] w = randomMatrix(random, 8, 8);
+        EngineConfig config = new EngineConfig().setResultCache(new ResultCache(1 << 20));
+
+        double[][] first = new LinearAlgebraEngine(2, config).run(repeatedSubtrees(x, w)).getMatrix();
+        double[][] expected = copy(first);
+        double[][] hit = new LinearAlgebraEngine(2, config).run(repeatedSubtrees(x, w)).getMatrix();
+        hit[0][0] += 1000; // a caller writing to its result, or feeding it back in as a leaf
+        first[1][1] += 1000;
+        double[][] again = new LinearAlgebraEngine(2, config).run(repeatedSubtrees(x, w)).getMatrix();
+
+        assertArrayEquals(expected, again);
+        assertNotSame(hit, again);
+    }
+
+    @Test
+    public void testMetricsRecordEveryComputedNode() {
+        Random random = new Random(13);
+        double[][] a = randomMatrix(random, 8, 8);
+        double[][] b = randomMatrix(random, 8, 8);
+
+        for (boolean parallelTree : new boolean[]{false, true}) {
+            MetricsRegistry registry = new MetricsRegistry();
+            EngineConfig config = new EngineConfig().setParallelTree(parallelTree).setMetricsSink(registry);
+            // A * B + T(B * A): the sum reads a product and a transposed product, both computed here
+            new LinearAlgebraEngine(2, config).run(op(ComputationNodeType.ADD,
+                    op(ComputationNodeType.MULTIPLY, leaf(copy(a)), leaf(copy(b))),
+                    op(ComputationNodeType.TRANSPOSE, op(ComputationNodeType.MULTIPLY, leaf(copy(b)), leaf(copy(a)))
+                    ))).getMatrix();
+
+            List<NodeMetrics> nodes = registry.getNodes();
+            assertEquals(4, nodes.size());
+            assertEquals(4, registry.getRun().getNodes());
+            NodeMetrics root = nodes.get(3);
+            assertEquals("ADD", root.getType());
+            assertEquals(2, root.getInputs().size());
+            assertEquals(8, root.getRows());
+            NodeMetrics product = nodes.stream().filter(n -> n.getType().equals("MULTIPLY")).findFirst().orElseThrow();
+            assertEquals(2.0 * 8 * 8 * 8, product.getFlops());
+            assertTrue(product.getTasks() > 0);
+            assertTrue(product.getBusyNanos() > 0);
+            assertTrue(registry.getSubtreeBusyNanos(root.getId()) >= product.getBusyNanos());
+            assertEquals(registry.getRun().getDispatchLatency().getCount(),
+                    nodes.stream().mapToLong(NodeMetrics::getTasks).sum());
+        }
+    }
+
+    @Test
+    public void testMultiplyDimensionMismatch() {
+        ComputationNode root = op(ComputationNodeType.MULTIPLY,
+                leaf(new double[][]{{1, 2}}), leaf(new double[][]{{1, 2}}));
+
+        assertThrows(IllegalArgumentException.class, () -> new LinearAlgebraEngine(2).run(root));
+    }
+
+    @Test
+    public void testParallelTreeDimensionMismatchInSubtree() {
+        ComputationNode root = op(ComputationNodeType.ADD,
+                op(ComputationNodeType.NEGATE, leaf(new double[][]{{1, 2}})),
+                op(ComputationNodeType.MULTIPLY, leaf(new double[][]{{1, 2}}), leaf(new double[][]{{1, 2}})));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new LinearAlgebraEngine(2, new EngineConfig().setParallelTree(true)).run(root));
+    }
+
+    private static double[][] randomMatrix(Random random, int rows, int cols) {
+        double[][] matrix = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                matrix[i][j] = random.nextInt(21) - 10;
+            }
+        }
+        return matrix;
+    }
+
+    private static ComputationNode sparseLeaf(double[][] matrix) {
+        return new ComputationNode(SparseMatrix.fromDense(matrix));
+    }
+
+    /**
+     * About 2% non-zeros, sparse enough for SparseMatrix.prefersSparse().
+     */
+    private static double[][] sparseMatrix(Random random, int rows, int cols) {
+        double[][] matrix = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (random.nextInt(50) == 0) {
+                    matrix[i][j] = random.nextInt(21) - 10;
+                }
+            }
+        }
+        return matrix;
+    }
+
+    private static double[][] transpose(double[][] matrix) {
+        double[][] result = new double[matrix[0].length][matrix.length];
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = 0; j < matrix[0].length; j++) {
+                result[j][i] = matrix[i][j];
+            }
+        }
+        return result;
+    }
+
+    private static double[][] sum(double[][] a, double[][] b) {
+        double[][] result = new double[a.length][a[0].length];
+        for (int i = 0; i < a.length; i++) {
+            for (int j = 0; j < a[0].length; j++) {
+                result[i][j] = a[i][j] + b[i][j];
+            }
+        }
+        return result;
+    }
+
+    private static double[][] product(double[][] a, double[][] b) {
+        double[][] result = new double[a.length][b[0].length];
+        for (int i = 0; i < a.length; i++) {
+            for (int k = 0; k < b.length; k++) {
+                for (int j = 0; j < b[0].length; j++) {
+                    result[i][j] += a[i][k] * b[k][j];
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void assertMatrixEquals(double[][] expected, double[][] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], actual[i], 1e-9);
+        }
+    }
+
+    private static double[][] copy(double[][] matrix) {
+        double[][] result = new double[matrix.length][];
+        for (int i = 0; i < matrix.length; i++) {
+            result[i] = matrix[i].clone();
+        }
+        return result;
+    }
+}